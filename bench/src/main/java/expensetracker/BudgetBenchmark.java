@@ -0,0 +1,72 @@
+package expensetracker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Budget rules on a loaded 1M-row model. edit is the aggregates side of adding one expense
+ * to a random month and category and removing it again (what every model mutation does to
+ * the totals), with the rules listening, so comparing rules = 0 with the larger counts
+ * gives what the rules add to each edit; the rest of a model edit does not depend on the
+ * rules. compile is Budgets... being saved: the rules compiled and checked against the
+ * current totals. The generated rules are a mix of every-month and one-month limits, per
+ * category and for all categories, set within 20% of a real month's total, so the limits
+ * sit where ordinary edits cross them now and then.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BudgetBenchmark {
+    @Param({"0", "1000", "10000"})
+    int rules;
+
+    private ExpenseTableModel model;
+    private BudgetRules budgets;
+    private List<BudgetRules.Rule> ruleList;
+    private int[] months;
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        model = SyntheticLedger.model(SyntheticLedger.generate(1_000_000, 42));
+        ExpenseAggregates totals = model.aggregates();
+        months = totals.activeMonths();
+        ruleList = new ArrayList<>(rules);
+        SplittableRandom r = new SplittableRandom(11);
+        for (int i = 0; i < rules; i++) {
+            int m = months[r.nextInt(months.length)];
+            String cat = r.nextInt(5) == 0 ? null : SyntheticLedger.CATEGORIES[r.nextInt(SyntheticLedger.CATEGORIES.length)];
+            ExpenseAggregates.Bucket b = totals.month(m);
+            long near = cat == null ? b.total : b.total(model.findCategory(cat));
+            ruleList.add(new BudgetRules.Rule(cat, r.nextBoolean() ? m : -1, near * (80 + r.nextInt(41)) / 100));
+        }
+        budgets = new BudgetRules(model::categoryName);
+        budgets.setRules(ruleList, totals);
+        totals.setListener(budgets);
+    }
+
+    @Benchmark
+    public int edit() {
+        int m = months[random.nextInt(months.length)];
+        int day = LedgerFormat.firstDayOfMonth(m) + random.nextInt(28);
+        int cat = random.nextInt(SyntheticLedger.CATEGORIES.length);
+        long amount = 50 + random.nextInt(500_000); // as SyntheticLedger draws them
+        ExpenseAggregates totals = model.aggregates();
+        totals.add(day, cat, amount);
+        totals.remove(day, cat, amount);
+        return budgets.activeCount();
+    }
+
+    @Benchmark
+    public int compile() {
+        budgets.setRules(ruleList, model.aggregates());
+        return budgets.activeCount();
+    }
+}
@@ -0,0 +1,155 @@
+package expensetracker;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * EDT-side work against a loaded model. The refreshTotals benchmarks make the same model
+ * calls as the summary panel (minus the labels), monthFilter is what picking a month in the
+ * filter combo costs, search is the same for the search box (prefix words and a reference
+ * number), getValueAtPage reads one screenful of cells at a random scroll position, as
+ * a repaint does, and trends is the data behind one paint of the trends chart at a random
+ * zoom (from a few weeks up to the whole ledger). snapshotThenEdit is what an export or
+ * report pays to get a frozen view, plus the chunk copy the next edit then makes.
+ * queryByMonth and queryFiltered run the query dialog's engine over a snapshot: every row
+ * grouped by month with exact percentiles, and a narrow filter (two categories, an amount
+ * range and description text) grouped by weekday. duplicateCheck is the check the add
+ * dialog and import make per new row, and findDuplicates the bulk pass over a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ModelBenchmark {
+    private static final int PAGE_ROWS = 20;
+    private static final int CHART_BARS = 80; // a 240 px chart at 3 px per bar
+    private static final String[] QUERIES = {"gro", "coffee", "movie ni", "taxi 12345"};
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private ExpenseTableModel model;
+    private IndexedRowSorter sorter;
+    private int[] months;
+    private ExpenseColumns.Snapshot frozen;
+    private int next;
+    private final SplittableRandom random = new SplittableRandom(7);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        model = SyntheticLedger.model(SyntheticLedger.generate(rows, 42));
+        sorter = new IndexedRowSorter(model);
+        months = model.aggregates().activeMonths();
+        frozen = model.snapshot();
+        model.duplicatesOf(model.expenseAt(0)); // builds the index
+    }
+
+    private int nextMonth() {
+        next = (next + 1) % months.length;
+        return months[next];
+    }
+
+    @Benchmark
+    public Map<String, Long> categoryTotals() {
+        return model.categoryTotals();
+    }
+
+    @Benchmark
+    public long refreshTotalsMonth() {
+        return sum(model.aggregates().month(nextMonth()));
+    }
+
+    @Benchmark
+    public long refreshTotalsRange() {
+        int m = nextMonth();
+        // a range that is not month aligned goes through the date index
+        return sum(model.totalsBetween(LedgerFormat.firstDayOfMonth(m) + 10, LedgerFormat.firstDayOfMonth(m + 1) + 9));
+    }
+
+    @Benchmark
+    public int monthFilter() {
+        int m = nextMonth();
+        sorter.setDayRange(LedgerFormat.firstDayOfMonth(m), LedgerFormat.firstDayOfMonth(m + 1) - 1);
+        return sorter.getViewRowCount();
+    }
+
+    @Benchmark
+    public int search() {
+        next = (next + 1) % QUERIES.length;
+        sorter.setQuery(QUERIES[next]);
+        return sorter.getViewRowCount();
+    }
+
+    @Benchmark
+    public void getValueAtPage(Blackhole bh) {
+        int top = random.nextInt(rows - PAGE_ROWS);
+        for (int r = top; r < top + PAGE_ROWS; r++) {
+            for (int c = 0; c < model.getColumnCount(); c++) bh.consume(model.getValueAt(r, c));
+        }
+    }
+
+    @Benchmark
+    public long[] trends() {
+        Rollups r = model.rollups();
+        int span = r.lastDay() - r.firstDay();
+        int days = 14 + random.nextInt(span - 13), from = r.firstDay() + random.nextInt(span - days + 1);
+        Rollups.Level level = Rollups.Level.forSpan(from, from + days, CHART_BARS);
+        return r.series(level, level.bucket(from), level.bucket(from + days), random.nextInt(6) - 1);
+    }
+
+    @Benchmark
+    public long snapshotThenEdit() {
+        ExpenseColumns.Snapshot s = model.snapshot();
+        BitSet one = new BitSet();
+        one.set(random.nextInt(rows));
+        model.reassignCategory(one, SyntheticLedger.CATEGORIES[random.nextInt(SyntheticLedger.CATEGORIES.length)]);
+        return s.version;
+    }
+
+    @Benchmark
+    public ExpenseQuery.Result queryByMonth() {
+        ExpenseQuery q = new ExpenseQuery();
+        q.groupBy = ExpenseQuery.GroupBy.MONTH;
+        q.percentiles = true;
+        return q.run(frozen, Collections.emptyList(), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public ExpenseQuery.Result queryFiltered() {
+        ExpenseQuery q = new ExpenseQuery();
+        q.categories = Set.of("Food", "Travel");
+        q.minAmount = 10_000;
+        q.maxAmount = 200_000;
+        q.text = "Coffee";
+        q.groupBy = ExpenseQuery.GroupBy.WEEKDAY;
+        return q.run(frozen, Collections.emptyList(), ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public int duplicateCheck() {
+        Expense e = model.expenseAt(random.nextInt(rows));
+        e.day += random.nextInt(5) - 2;
+        return model.duplicatesOf(e);
+    }
+
+    @Benchmark
+    public DuplicateIndex.Found findDuplicates() {
+        return DuplicateIndex.find(frozen);
+    }
+
+    private long sum(ExpenseAggregates.Bucket b) {
+        long s = 0;
+        for (int c = 0; c < b.categorySlots(); c++) s += b.total(c);
+        return s;
+    }
+}
@@ -0,0 +1,100 @@
+package expensetracker;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Start-up and save paths. {@code load} is what the UI's loadFromCSV runs on the writer
+ * thread (journal recovery of the recent months streamed into a fresh table model, the rest
+ * counted from partition summaries), and {@code readPartition} is paging in one older month.
+ * The read benchmarks isolate the two file formats, and the write benchmarks cover
+ * compaction and Export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PersistenceBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private Path dir;
+    private Path ledger;
+    private Path partition;
+    private Path snapshot;
+    private Path csv;
+    private Path scratch;
+    private List<Expense> data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("expense-bench");
+        snapshot = dir.resolve("expenses.bin");
+        csv = dir.resolve("export.csv");
+        scratch = dir.resolve("scratch");
+        data = SyntheticLedger.generate(rows, 42);
+        BinarySnapshot.write(snapshot, data);
+        SyntheticLedger.writeCsv(csv, data);
+        // a ledger directory whose single-file snapshot is split into partitions once, here
+        ledger = Files.createDirectory(dir.resolve("ledger"));
+        Files.copy(snapshot, ledger.resolve(ExpenseJournal.SNAPSHOT_FILE));
+        ExpenseJournal journal = ExpenseJournal.inDirectory(ledger, ExpenseJournal.SyncMode.NONE);
+        journal.recover(batch -> { }, summary -> { });
+        journal.close();
+        try (Stream<Path> files = Files.list(ledger.resolve(ExpenseJournal.PARTITION_DIR))) {
+            partition = files.sorted().findFirst().orElseThrow();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public ExpenseTableModel load() throws IOException {
+        // partitions and an empty journal: the normal cold start
+        ExpenseJournal journal = ExpenseJournal.inDirectory(ledger, ExpenseJournal.SyncMode.NONE);
+        ExpenseTableModel model = new ExpenseTableModel();
+        journal.recover(model::appendLoaded, model::addColdMonth);
+        journal.close();
+        return model;
+    }
+
+    @Benchmark
+    public void readPartition(Blackhole bh) throws IOException {
+        BinarySnapshot.read(partition, true, bh::consume);
+    }
+
+    @Benchmark
+    public void readSnapshot(Blackhole bh) throws IOException {
+        BinarySnapshot.read(snapshot, true, bh::consume);
+    }
+
+    @Benchmark
+    public void readCsv(Blackhole bh) throws IOException {
+        CsvLoader.read(csv, true, bh::consume);
+    }
+
+    @Benchmark
+    public void saveSnapshot() throws IOException {
+        BinarySnapshot.write(scratch, data);
+    }
+
+    @Benchmark
+    public void exportCsv() throws IOException {
+        SyntheticLedger.writeCsv(scratch, data);
+    }
+}
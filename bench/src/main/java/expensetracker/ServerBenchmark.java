@@ -0,0 +1,121 @@
+package expensetracker;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Load test for server mode: requests per second against an in-process ExpenseServer on a
+ * loopback port, from several client threads sharing one HttpClient. The ledger is loaded
+ * the way "serve" loads it (journal without fsync, so add measures the store rather than
+ * the disk). list reads one random month, add posts one row, summary totals one month, and
+ * the mixed group runs three readers against one writer to show reads not waiting on writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ServerBenchmark {
+    private static final String TOKEN = "bench";
+
+    @Param({"10000", "1000000"})
+    int rows;
+
+    private Path dir;
+    private PersistenceWriter writer;
+    private ExpenseServer server;
+    private HttpClient client;
+    private URI base;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("expense-server-bench");
+        BinarySnapshot.write(dir.resolve(ExpenseJournal.SNAPSHOT_FILE), SyntheticLedger.generate(rows, 42));
+        writer = new PersistenceWriter(ExpenseJournal.inDirectory(dir, ExpenseJournal.SyncMode.NONE));
+        List<Expense> loaded = new ArrayList<>();
+        TreeSet<Integer> cold = new TreeSet<>();
+        writer.recover(loaded::addAll, s -> cold.add(s.month)).get();
+        for (int m : cold.descendingSet()) loaded.addAll(writer.readMonth(m));
+        server = new ExpenseServer(new ExpenseStore(loaded, writer, writer::allocateId), 0, TOKEN, 16);
+        server.start();
+        base = URI.create("http://localhost:" + server.port() + "/");
+        client = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop();
+        writer.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+
+    private static String randomMonth() {
+        int day = SyntheticLedger.FIRST_DAY + ThreadLocalRandom.current().nextInt(SyntheticLedger.DAYS);
+        return LedgerFormat.formatDay(day).substring(0, 7);
+    }
+
+    private int send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> r = client.send(request.header("Authorization", "Bearer " + TOKEN).build(), HttpResponse.BodyHandlers.ofString());
+        if (r.statusCode() / 100 != 2) throw new IllegalStateException("HTTP " + r.statusCode() + " " + r.body());
+        return r.body().length();
+    }
+
+    private HttpRequest.Builder listMonth() {
+        String month = randomMonth();
+        return HttpRequest.newBuilder(base.resolve("expenses?from=" + month + "-01&to=" + month + "-28"));
+    }
+
+    private HttpRequest.Builder addOne() {
+        int day = SyntheticLedger.FIRST_DAY + ThreadLocalRandom.current().nextInt(SyntheticLedger.DAYS);
+        String body = "{\"date\":\"" + LedgerFormat.formatDay(day) + "\",\"category\":\"Food\",\"amount\":12.50,\"description\":\"bench\"}";
+        return HttpRequest.newBuilder(base.resolve("expenses")).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    @Benchmark
+    public int list() throws IOException, InterruptedException {
+        return send(listMonth());
+    }
+
+    @Benchmark
+    public int add() throws IOException, InterruptedException {
+        return send(addOne());
+    }
+
+    @Benchmark
+    public int summary() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(base.resolve("summary?month=" + randomMonth())));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public int mixedRead() throws IOException, InterruptedException {
+        return send(listMonth());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public int mixedWrite() throws IOException, InterruptedException {
+        return send(addOne());
+    }
+}
@@ -0,0 +1,58 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** Deterministic fake ledger for the benchmarks: five years of spending over the stock categories. */
+final class SyntheticLedger {
+    static final String[] CATEGORIES = {"Food", "Travel", "Shopping", "Bills", "Others"};
+    static final int FIRST_DAY = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+    static final int DAYS = 5 * 365;
+    // a few need CSV quoting, as real descriptions do
+    private static final String[] WORDS = {"lunch", "taxi", "groceries", "rent", "coffee", "movie night",
+            "fuel", "books", "gift", "pharmacy", "dinner, friends", "\"special\" order"};
+
+    private SyntheticLedger() { }
+
+    /** {@code n} rows oldest first with ids 1..n, spread evenly over {@link #DAYS}. */
+    static List<Expense> generate(int n, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Expense> rows = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int day = FIRST_DAY + (int) ((long) i * DAYS / n);
+            Expense e = new Expense(day, CATEGORIES[random.nextInt(CATEGORIES.length)], 50 + random.nextInt(500_000),
+                    WORDS[random.nextInt(WORDS.length)] + " #" + i);
+            e.id = i + 1;
+            rows.add(e);
+        }
+        return rows;
+    }
+
+    /** A table model holding {@code oldestFirst}, filled the way recovery fills it. */
+    static ExpenseTableModel model(List<Expense> oldestFirst) {
+        ExpenseTableModel model = new ExpenseTableModel();
+        List<Expense> batch = new ArrayList<>(1 << 16);
+        for (int i = oldestFirst.size() - 1; i >= 0; i--) {
+            batch.add(oldestFirst.get(i));
+            if (batch.size() == 1 << 16) {
+                model.appendLoaded(batch);
+                batch.clear();
+            }
+        }
+        model.appendLoaded(batch);
+        return model;
+    }
+
+    /** Writes {@code rows} as an exported CSV (no id column), in the slices the UI uses. */
+    static void writeCsv(Path file, List<Expense> rows) throws IOException {
+        try (RowExporter out = new RowExporter(file, RowExporter.Format.CSV, false)) {
+            for (int from = 0; from < rows.size(); from += 16_384) {
+                out.write(rows.subList(from, Math.min(rows.size(), from + 16_384)));
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+
+/*
+ * Snapshot format, little-endian:
+ *
+ *   "EXPB" | version:int | rows:long | categories:int | dictionaryBytes:int
+ *   categories x (length:short, utf-8)
+ *   ids:long[rows] | days:int[rows] | amounts:long[rows] | categoryIds:int[rows] | descLengths:int[rows]
+ *   descriptions: utf-8, concatenated
+ *   descriptionBytes:long | crc32:long (of everything before it)
+ *
+ * Version 1 is the single-file ledger of older releases (expenses.bin). Version 3 is a
+ * month partition and appends a summary that can be read without touching the rows:
+ *
+ *   month:int | total:long | maxId:long | descriptionBytes:long | categories x (count:long, total:long)
+ *   daysInMonth x categories x total:long
+ *   summaryBytes:int | crc32:long (of the header, dictionary and summary)
+ *
+ * Version 2 partitions lack the daily totals and are still read.
+ *
+ * Every fixed-width column is one bulk channel read straight into a primitive array, and
+ * the checksum is verified before a single row is handed out, so a damaged file is
+ * rejected rather than half-loaded.
+ */
+class BinarySnapshot {
+    /** A partition's footer: enough to list the month and total it without loading rows. */
+    static final class Summary {
+        final int month;
+        final long rows, total, maxId, descriptionBytes;
+        final String[] categories;
+        final long[] counts, totals; // per entry of categories
+        final long[] daily; // [dayOfMonth * categories.length + category], null before version 3
+
+        Summary(int month, long rows, long total, long maxId, long descriptionBytes, String[] categories,
+                long[] counts, long[] totals, long[] daily) {
+            this.month = month; this.rows = rows; this.total = total; this.maxId = maxId;
+            this.descriptionBytes = descriptionBytes; this.categories = categories; this.counts = counts; this.totals = totals;
+            this.daily = daily;
+        }
+
+        /** Summary of a month's rows; categories in the order they first appear. */
+        static Summary of(int month, List<Expense> rows) {
+            LinkedHashMap<String, Integer> dict = new LinkedHashMap<>();
+            for (Expense e : rows) dict.putIfAbsent(e.category, dict.size());
+            long total = 0, maxId = 0, descBytes = 0;
+            int cats = dict.size(), first = firstDayOfMonth(month), days = firstDayOfMonth(month + 1) - first;
+            long[] counts = new long[cats], totals = new long[cats], daily = new long[days * cats];
+            for (Expense e : rows) {
+                int c = dict.get(e.category);
+                if (e.day < first || e.day >= first + days) throw new IllegalArgumentException("row dated outside its month");
+                counts[c]++;
+                totals[c] += e.amount;
+                daily[(e.day - first) * cats + c] += e.amount;
+                total += e.amount;
+                maxId = Math.max(maxId, e.id);
+                descBytes += utf8Length(e.description);
+            }
+            return new Summary(month, rows.size(), total, maxId, descBytes, dict.keySet().toArray(new String[0]), counts, totals, daily);
+        }
+
+        /** Rough heap cost of the month once it is in the table model and its indexes. */
+        long residentBytes() { return rows * 64 + descriptionBytes * 2; }
+    }
+
+    private static final byte[] MAGIC = {'E', 'X', 'P', 'B'};
+    private static final int LEDGER_VERSION = 1, PARTITION_V2 = 2, PARTITION_VERSION = 3;
+    private static final int HEADER_BYTES = 24;
+    private static final int ROW_BYTES = 8 + 4 + 8 + 4 + 4;
+    private static final int BATCH_ROWS = 1 << 16;
+
+    /** Writes a single-file ledger (version 1). */
+    static void write(Path file, List<Expense> oldestFirst) throws IOException {
+        write(file, oldestFirst, LEDGER_VERSION, 0);
+    }
+
+    /** Writes one month partition (version 3) and returns its summary. */
+    static Summary writePartition(Path file, int month, List<Expense> oldestFirst) throws IOException {
+        return write(file, oldestFirst, PARTITION_VERSION, month);
+    }
+
+    private static Summary write(Path file, List<Expense> oldestFirst, int version, int month) throws IOException {
+        int n = oldestFirst.size();
+        Summary summary = null;
+        if (version == PARTITION_VERSION) {
+            try {
+                summary = Summary.of(month, oldestFirst);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ": " + e.getMessage());
+            }
+        }
+        LinkedHashMap<String, Integer> dict = new LinkedHashMap<>();
+        for (Expense e : oldestFirst) dict.putIfAbsent(e.category, dict.size());
+        int dictBytes = 0;
+        for (String c : dict.keySet()) dictBytes += 2 + utf8Length(c);
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + dictBytes).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        head.put(MAGIC).putInt(version).putLong(n).putInt(dict.size()).putInt(dictBytes);
+        for (String c : dict.keySet()) {
+            byte[] b = c.getBytes(StandardCharsets.UTF_8);
+            head.putShort((short) b.length).put(b);
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChunkWriter out = new ChunkWriter(ch);
+            out.put(head.array());
+            for (Expense e : oldestFirst) out.putLong(e.id);
+            for (Expense e : oldestFirst) out.putInt(e.day);
+            for (Expense e : oldestFirst) out.putLong(e.amount);
+            for (Expense e : oldestFirst) out.putInt(dict.get(e.category));
+            long descBytes = 0;
+            for (Expense e : oldestFirst) {
+                int len = utf8Length(e.description);
+                out.putInt(len);
+                descBytes += len;
+            }
+            for (Expense e : oldestFirst) out.put(e.description.getBytes(StandardCharsets.UTF_8));
+            out.putLong(descBytes);
+            out.finish();
+            if (summary != null) {
+                int cats = summary.categories.length;
+                int footBytes = summaryBytes(cats, firstDayOfMonth(month + 1) - firstDayOfMonth(month));
+                ByteBuffer foot = ByteBuffer.allocate(footBytes + 12).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+                foot.putInt(month).putLong(summary.total).putLong(summary.maxId).putLong(descBytes);
+                for (int c = 0; c < cats; c++) foot.putLong(summary.counts[c]).putLong(summary.totals[c]);
+                for (long d : summary.daily) foot.putLong(d);
+                CRC32 crc = new CRC32();
+                crc.update(head.array());
+                crc.update(foot.array(), 0, foot.position());
+                foot.putInt(footBytes).putLong(crc.getValue()).flip();
+                while (foot.hasRemaining()) ch.write(foot);
+            }
+            ch.force(false);
+            return summary;
+        }
+    }
+
+    /** Reads only the header, dictionary and summary of a partition. */
+    static Summary readSummary(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_BYTES + 28) throw new IOException(file + ": truncated partition");
+            CRC32 crc = new CRC32();
+            ByteBuffer head = readFully(ch, 0, HEADER_BYTES, crc);
+            byte[] magic = new byte[4];
+            head.get(magic);
+            int version = head.getInt();
+            if (!Arrays.equals(magic, MAGIC) || (version != PARTITION_VERSION && version != PARTITION_V2)) {
+                throw new IOException(file + ": not a month partition");
+            }
+            long rows = head.getLong();
+            int categories = head.getInt(), dictBytes = head.getInt();
+            if (categories < 0 || dictBytes < 0 || HEADER_BYTES + (long) dictBytes + summaryBytes(categories, 0) + 12 > size) {
+                throw new IOException(file + ": corrupt partition header");
+            }
+            String[] dict = readDictionary(readFully(ch, HEADER_BYTES, dictBytes, crc), categories);
+            ByteBuffer tail = readFully(ch, size - 12, 12, null);
+            int footBytes = tail.getInt();
+            if (footBytes < summaryBytes(categories, 0) || HEADER_BYTES + (long) dictBytes + footBytes + 12 > size) {
+                throw new IOException(file + ": corrupt partition summary");
+            }
+            ByteBuffer foot = readFully(ch, size - 12 - footBytes, footBytes, crc);
+            if (tail.getLong() != crc.getValue()) throw new IOException(file + ": partition summary checksum mismatch");
+            int month = foot.getInt();
+            int days = version == PARTITION_V2 ? 0 : firstDayOfMonth(month + 1) - firstDayOfMonth(month);
+            if (footBytes != summaryBytes(categories, days)) throw new IOException(file + ": corrupt partition summary");
+            long total = foot.getLong(), maxId = foot.getLong(), descBytes = foot.getLong();
+            long[] counts = new long[categories], totals = new long[categories];
+            for (int c = 0; c < categories; c++) {
+                counts[c] = foot.getLong();
+                totals[c] = foot.getLong();
+            }
+            long[] daily = null;
+            if (version != PARTITION_V2) {
+                daily = new long[days * categories];
+                foot.asLongBuffer().get(daily);
+            }
+            return new Summary(month, rows, total, maxId, descBytes, dict, counts, totals, daily);
+        }
+    }
+
+    private static int summaryBytes(int categories, int days) { return 4 + 8 + 8 + 8 + categories * 16 + days * categories * 8; }
+
+    private static String[] readDictionary(ByteBuffer buf, int categories) {
+        String[] dict = new String[categories];
+        for (int i = 0; i < categories; i++) {
+            byte[] b = new byte[buf.getShort() & 0xFFFF];
+            buf.get(b);
+            dict[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return dict;
+    }
+
+    /**
+     * Feeds every row to the sink in lists of up to {@value #BATCH_ROWS}.
+     * @param newestFirst emit batches last-to-first with each list reversed (table order)
+     */
+    static void read(Path file, boolean newestFirst, Consumer<List<Expense>> sink) throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            CRC32 crc = new CRC32();
+            if (size < HEADER_BYTES + 16) throw new IOException(file + ": truncated snapshot");
+            ByteBuffer head = readFully(ch, 0, HEADER_BYTES, crc);
+            byte[] magic = new byte[4];
+            head.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException(file + ": not an expense snapshot");
+            int version = head.getInt();
+            if (version != LEDGER_VERSION && version != PARTITION_V2 && version != PARTITION_VERSION) {
+                throw new IOException(file + ": unsupported snapshot version " + version);
+            }
+            long rows = head.getLong();
+            int categories = head.getInt(), dictBytes = head.getInt();
+            if (version != LEDGER_VERSION) {
+                int footBytes = readFully(ch, size - 12, 4, null).getInt();
+                if (footBytes < 0 || footBytes > size) throw new IOException(file + ": corrupt partition summary");
+                size -= 12 + footBytes; // rows end before the summary
+            }
+            long pos = HEADER_BYTES;
+            if (rows < 0 || rows > Integer.MAX_VALUE / ROW_BYTES || categories < 0 || dictBytes < 0
+                    || pos + dictBytes + rows * ROW_BYTES + 16 > size) {
+                throw new IOException(file + ": corrupt snapshot header");
+            }
+            int n = (int) rows;
+
+            String[] dict = readDictionary(readFully(ch, pos, dictBytes, crc), categories);
+            pos += dictBytes;
+            long[] ids = new long[n];
+            readFully(ch, pos, n * 8, crc).asLongBuffer().get(ids);
+            pos += n * 8L;
+            int[] days = new int[n];
+            readFully(ch, pos, n * 4, crc).asIntBuffer().get(days);
+            pos += n * 4L;
+            long[] amounts = new long[n];
+            readFully(ch, pos, n * 8, crc).asLongBuffer().get(amounts);
+            pos += n * 8L;
+            int[] cats = new int[n];
+            readFully(ch, pos, n * 4, crc).asIntBuffer().get(cats);
+            pos += n * 4L;
+            int[] descLen = new int[n];
+            readFully(ch, pos, n * 4, crc).asIntBuffer().get(descLen);
+            pos += n * 4L;
+            long blobLen = size - 16 - pos;
+            if (blobLen > Integer.MAX_VALUE) throw new IOException(file + ": description block too large");
+            byte[] blob = readFully(ch, pos, (int) blobLen, crc).array();
+            ByteBuffer tail = readFully(ch, size - 16, 8, crc);
+            long stored = readFully(ch, size - 8, 8, null).getLong();
+            if (tail.getLong() != blobLen || stored != crc.getValue()) {
+                throw new IOException(file + ": snapshot checksum mismatch");
+            }
+
+            int[] descOff = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                if (descLen[i] < 0 || cats[i] < 0 || cats[i] >= categories) throw new IOException(file + ": corrupt row " + i);
+                descOff[i + 1] = descOff[i] + descLen[i];
+            }
+            if (n > 0 && descOff[n] != blobLen) throw new IOException(file + ": corrupt description block");
+            int batches = (n + BATCH_ROWS - 1) / BATCH_ROWS;
+            for (int b = 0; b < batches; b++) {
+                int from = (newestFirst ? batches - 1 - b : b) * BATCH_ROWS, to = Math.min(n, from + BATCH_ROWS);
+                List<Expense> out = new ArrayList<>(to - from);
+                for (int k = 0; k < to - from; k++) {
+                    int i = newestFirst ? to - 1 - k : from + k;
+                    Expense e = new Expense(days[i], dict[cats[i]], amounts[i],
+                            new String(blob, descOff[i], descLen[i], StandardCharsets.UTF_8));
+                    e.id = ids[i];
+                    out.add(e);
+                }
+                sink.accept(out);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long pos, int len, CRC32 crc) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) throw new EOFException("snapshot truncated");
+        }
+        buf.flip();
+        if (crc != null) crc.update(buf.duplicate());
+        return buf.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) len++;
+            else if (c < 0x800) len += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) { len += 4; i++; }
+            else if (Character.isSurrogate(c)) len++; // unpaired, encoded as '?'
+            else len += 3;
+        }
+        return len;
+    }
+
+    // 1 MB staging buffer: checksummed and written to the channel each time it fills
+    private static class ChunkWriter {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+
+        ChunkWriter(FileChannel ch) { this.ch = ch; }
+
+        ChunkWriter putLong(long v) throws IOException { room(8); buf.putLong(v); return this; }
+        ChunkWriter putInt(int v) throws IOException { room(4); buf.putInt(v); return this; }
+        ChunkWriter putShort(short v) throws IOException { room(2); buf.putShort(v); return this; }
+        ChunkWriter put(byte[] b) throws IOException {
+            for (int off = 0; off < b.length; ) {
+                room(1);
+                int k = Math.min(buf.remaining(), b.length - off);
+                buf.put(b, off, k);
+                off += k;
+            }
+            return this;
+        }
+
+        /** Flushes the remaining bytes and appends the checksum. */
+        void finish() throws IOException {
+            flush();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+
+        private void room(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntFunction;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.parseMinor;
+
+/*
+ * Budgets: "Food > 10000" alerts when Food spending in any month passes 10,000; with a
+ * month ("Food 2026-03 > 12000") it applies to that month only, and "*" stands for all
+ * categories. The rules are compiled once into limits sorted per scope (category or all,
+ * every month or one month). The aggregates report each change to a month's totals, and
+ * a change from before to after fires or clears exactly the rules whose limit lies
+ * between the two, found by binary search, so an edit costs O(log rules) plus one step per
+ * alert that turns on or off. Nothing is ever rescanned after setRules().
+ */
+class BudgetRules implements ExpenseAggregates.Listener {
+    static final String FILE = "expenses.budgets";
+
+    static final class Rule {
+        final String category; // null for all categories
+        final int month; // month key, or -1 for every month
+        final long limit; // minor units; the alert is on while the total is above it
+
+        Rule(String category, int month, long limit) { this.category = category; this.month = month; this.limit = limit; }
+
+        /** Parses "Category [yyyy-mm] > amount"; the category may be "*" for all. */
+        static Rule parse(String line) {
+            int gt = line.lastIndexOf('>');
+            if (gt < 0) throw new IllegalArgumentException("expected 'Category > amount': " + line);
+            long limit;
+            try {
+                limit = parseMinor(line.substring(gt + 1).replace("₹", "").replace(",", ""));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("bad amount in: " + line);
+            }
+            if (limit < 0) throw new IllegalArgumentException("negative amount in: " + line);
+            String scope = line.substring(0, gt).trim();
+            int month = -1, space = scope.lastIndexOf(' ');
+            String last = scope.substring(space + 1);
+            if (last.matches("\\d{4}-\\d{2}")) {
+                int m = Integer.parseInt(last.substring(5, 7));
+                if (m < 1 || m > 12) throw new IllegalArgumentException("bad month in: " + line);
+                month = Integer.parseInt(last.substring(0, 4)) * 12 + m - 1;
+                scope = space < 0 ? "" : scope.substring(0, space).trim();
+            }
+            if (scope.isEmpty()) throw new IllegalArgumentException("no category in: " + line);
+            return new Rule(scope.equals("*") ? null : scope, month, limit);
+        }
+
+        @Override
+        public String toString() {
+            return (category == null ? "*" : category) + (month < 0 ? "" : " " + monthText(month)) + " > " + formatMinor(limit);
+        }
+    }
+
+    /** A rule over its limit in one month. */
+    static final class Alert {
+        final Rule rule;
+        final int index; // of the rule in rules()
+        final int month;
+        Alert(Rule rule, int index, int month) { this.rule = rule; this.index = index; this.month = month; }
+    }
+
+    // one scope's limits, ascending once sorted, with the rules they belong to
+    private static final class Limits {
+        long[] limits = new long[4];
+        int[] rules = new int[4];
+        int size;
+
+        void add(long limit, int rule) {
+            if (size == limits.length) {
+                limits = Arrays.copyOf(limits, size * 2);
+                rules = Arrays.copyOf(rules, size * 2);
+            }
+            limits[size] = limit;
+            rules[size++] = rule;
+        }
+
+        void sort() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong(i -> limits[i]));
+            long[] l = new long[size];
+            int[] r = new int[size];
+            for (int i = 0; i < size; i++) {
+                l[i] = limits[order[i]];
+                r[i] = rules[order[i]];
+            }
+            limits = l;
+            rules = r;
+        }
+
+        // first index whose limit is >= value
+        int from(long value) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (limits[mid] < value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    private final IntFunction<String> categoryNames; // dictionary id -> name, as the aggregates use them
+    private List<Rule> rules = Collections.emptyList();
+    private Map<String, Limits> everyMonthByName = new HashMap<>(), oneMonthByName = new HashMap<>();
+    private Limits everyMonthAll;
+    private Map<Integer, Limits> oneMonthAll = new HashMap<>();
+    // by category id + 1 (0 unused), bound from the by-name maps as ids turn up
+    private Limits[] everyMonthById = new Limits[0];
+    private final Map<Long, Limits> oneMonthById = new HashMap<>();
+    private int boundIds;
+    private final TreeMap<Long, Alert> active = new TreeMap<>(); // by order(), so newest month first
+    private long fired; // alerts turned on since setRules, for the UI to notice new ones
+    private long changes; // grows whenever an alert turns on or off
+
+    BudgetRules(IntFunction<String> categoryNames) { this.categoryNames = categoryNames; }
+
+    List<Rule> rules() { return rules; }
+
+    /** Compiles the rules and works out which alerts are on from the current totals. */
+    void setRules(List<Rule> rules, ExpenseAggregates totals) {
+        this.rules = new ArrayList<>(rules);
+        everyMonthByName = new HashMap<>();
+        oneMonthByName = new HashMap<>();
+        everyMonthAll = new Limits();
+        oneMonthAll = new HashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            Rule r = rules.get(i);
+            Limits l;
+            if (r.category == null) l = r.month < 0 ? everyMonthAll : oneMonthAll.computeIfAbsent(r.month, m -> new Limits());
+            else if (r.month < 0) l = everyMonthByName.computeIfAbsent(r.category, c -> new Limits());
+            else l = oneMonthByName.computeIfAbsent(r.category + '\n' + r.month, c -> new Limits());
+            l.add(r.limit, i);
+        }
+        everyMonthAll.sort();
+        for (Limits l : oneMonthAll.values()) l.sort();
+        for (Limits l : everyMonthByName.values()) l.sort();
+        for (Limits l : oneMonthByName.values()) l.sort();
+        everyMonthById = new Limits[0];
+        oneMonthById.clear();
+        boundIds = 0;
+        active.clear();
+        fired = 0;
+
+        for (int m : totals.activeMonths()) {
+            ExpenseAggregates.Bucket b = totals.month(m);
+            evaluate(-1, m, 0, b.total);
+            for (int c = 0; c < b.categorySlots(); c++) {
+                if (b.count(c) > 0 || b.total(c) != 0) evaluate(c, m, 0, b.total(c));
+            }
+        }
+        fired = 0; // what was over budget already is not news
+        changes++;
+    }
+
+    @Override
+    public void changed(int month, int category, long delta, ExpenseAggregates.Bucket b) {
+        if (delta == 0 || rules.isEmpty()) return;
+        evaluate(-1, month, b.total - delta, b.total);
+        evaluate(category, month, b.total(category) - delta, b.total(category));
+    }
+
+    // a total of the scope (category id, or -1 for all) moved from before to after
+    private void evaluate(int category, int month, long before, long after) {
+        if (category >= 0) bind(category);
+        cross(category < 0 ? everyMonthAll : category + 1 < everyMonthById.length ? everyMonthById[category + 1] : null, month, before, after);
+        cross(category < 0 ? oneMonthAll.get(month) : oneMonthById.get((long) (category + 1) << 32 | (month & 0xFFFFFFFFL)), month, before, after);
+    }
+
+    // rules fire while total > limit: going up turns on limits in [before, after), going down
+    // turns off limits in [after, before)
+    private void cross(Limits l, int month, long before, long after) {
+        if (l == null || before == after) return;
+        boolean up = after > before;
+        for (int i = l.from(Math.min(before, after)), end = l.from(Math.max(before, after)); i < end; i++) {
+            long key = order(month, l.rules[i]);
+            if (up) {
+                if (active.put(key, new Alert(rules.get(l.rules[i]), l.rules[i], month)) == null) {
+                    fired++;
+                    changes++;
+                }
+            } else if (active.remove(key) != null) {
+                changes++;
+            }
+        }
+    }
+
+    // attaches rules to category ids up to id, by name
+    private void bind(int id) {
+        if (id < boundIds) return;
+        if (everyMonthById.length <= id + 1) everyMonthById = Arrays.copyOf(everyMonthById, Math.max(id + 2, everyMonthById.length * 2));
+        for (int c = boundIds; c <= id; c++) {
+            String name = categoryNames.apply(c);
+            everyMonthById[c + 1] = everyMonthByName.get(name);
+            for (Map.Entry<String, Limits> e : oneMonthByName.entrySet()) {
+                int nl = e.getKey().indexOf('\n');
+                if (!e.getKey().substring(0, nl).equals(name)) continue;
+                oneMonthById.put((long) (c + 1) << 32 | (Integer.parseInt(e.getKey().substring(nl + 1)) & 0xFFFFFFFFL), e.getValue());
+            }
+        }
+        boundIds = id + 1;
+    }
+
+    // newest month first, then rule order
+    private static long order(int month, int rule) { return (long) -month << 32 | rule; }
+
+    /** The first max alerts on now, newest month first, then by rule order. */
+    List<Alert> activeAlerts(int max) {
+        List<Alert> out = new ArrayList<>(Math.min(max, active.size()));
+        for (Alert a : active.values()) {
+            if (out.size() == max) break;
+            out.add(a);
+        }
+        return out;
+    }
+
+    int activeCount() { return active.size(); }
+
+    /** Grows by one each time an alert turns on. */
+    long firedCount() { return fired; }
+
+    /** Changes whenever the active alerts do, so a view can skip redrawing an unchanged list. */
+    long changeCount() { return changes; }
+
+    static String monthText(int month) { return formatDay(firstDayOfMonth(month)).substring(0, 7); }
+
+    /** Rules one per line; blank lines and lines starting with # are skipped. */
+    static List<Rule> parseAll(String text) {
+        List<Rule> out = new ArrayList<>();
+        int n = 0;
+        for (String line : text.split("\n")) {
+            n++;
+            String t = line.trim();
+            if (t.isEmpty() || t.startsWith("#")) continue;
+            try {
+                out.add(Rule.parse(t));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + n + ": " + e.getMessage());
+            }
+        }
+        return out;
+    }
+
+    static List<Rule> load(Path file) throws IOException {
+        return Files.exists(file) ? parseAll(Files.readString(file, StandardCharsets.UTF_8)) : new ArrayList<>();
+    }
+
+    static void save(Path file, List<Rule> rules) throws IOException {
+        StringBuilder sb = new StringBuilder("# Category [yyyy-mm] > amount; * for all categories\n");
+        for (Rule r : rules) sb.append(r).append('\n');
+        Files.writeString(file, sb.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,351 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import static expensetracker.LedgerFormat.parseMinor;
+
+/*
+ * Parallel CSV reader used to migrate the old CSV ledger and to import exported files
+ * (which share its layout minus the id column). The file is memory-mapped in ~8 MB
+ * windows, cut into record-aligned chunks that are parsed concurrently with a byte-level
+ * date/amount parser and handed to the sink in order. Files with an id column are always
+ * quoted, so a first parallel pass counts quote bytes per window to find the first newline
+ * outside a quoted field. Files without one may be the old ledger, which wrote descriptions
+ * raw, quotes and all: there a chunk starts at a line that begins with a date and a comma,
+ * and a quoted field may not run past such a line.
+ *
+ * As in LedgerFormat.splitCSV, a field is quoted only if it starts with a quote and the
+ * closing quote ends it; anything else is taken as it stands.
+ */
+class CsvLoader {
+    private static final int WINDOW_BYTES = 8 << 20;
+
+    /**
+     * Feeds every row to the sink, one list per chunk.
+     * @param newestFirst emit chunks last-to-first with each list reversed (table order)
+     * Files without an id column get ids 1..n in file order.
+     */
+    static void read(Path file, boolean newestFirst, Consumer<List<Expense>> sink) throws IOException {
+        if (!Files.exists(file)) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 4096));
+            int hl = 0;
+            while (hl < head.limit() && head.get(hl) != '\n') hl++;
+            byte[] hb = new byte[hl];
+            head.get(0, hb);
+            boolean legacy = !stripBom(new String(hb, StandardCharsets.UTF_8)).startsWith("id,");
+            long dataStart = Math.min(size, hl + 1L);
+
+            int windows = (int) Math.max(1, (size - dataStart + WINDOW_BYTES - 1) / WINDOW_BYTES);
+            long[] win = new long[windows + 1];
+            for (int i = 0; i < windows; i++) win[i] = dataStart + (long) i * WINDOW_BYTES;
+            win[windows] = size;
+
+            List<CompletableFuture<Integer>> quoteCounts = new ArrayList<>(windows);
+            for (int i = 0; i < windows && !legacy; i++) {
+                long from = win[i], to = win[i + 1];
+                quoteCounts.add(CompletableFuture.supplyAsync(() -> countQuotes(ch, from, to)));
+            }
+            // record boundaries: first record start inside each window (or none)
+            List<Long> starts = new ArrayList<>();
+            starts.add(dataStart);
+            int parity = 0;
+            for (int i = 1; i < windows; i++) {
+                long b;
+                if (legacy) {
+                    b = firstDatedLine(ch, win[i], win[i + 1], size);
+                } else {
+                    parity = (parity + quoteCounts.get(i - 1).join()) & 1;
+                    b = firstRecordStart(ch, win[i], win[i + 1], parity);
+                }
+                if (b >= 0) starts.add(b);
+            }
+            starts.add(size);
+
+            List<CompletableFuture<List<Expense>>> chunks = new ArrayList<>();
+            for (int i = 0; i + 1 < starts.size(); i++) {
+                long from = starts.get(i), to = starts.get(i + 1);
+                chunks.add(CompletableFuture.supplyAsync(() -> parseRange(ch, from, to, legacy, file)));
+            }
+            if (legacy) {
+                long seq = 1;
+                for (CompletableFuture<List<Expense>> c : chunks) {
+                    for (Expense e : c.join()) e.id = seq++;
+                }
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Expense> rows = chunks.get(newestFirst ? chunks.size() - 1 - i : i).join();
+                if (newestFirst) Collections.reverse(rows);
+                sink.accept(rows);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+            throw e;
+        }
+    }
+
+    private static String stripBom(String s) {
+        return s.startsWith("\uFEFF") ? s.substring(1) : s;
+    }
+
+    private static int countQuotes(FileChannel ch, long from, long to) {
+        try {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            int n = 0;
+            for (int i = 0, lim = b.limit(); i < lim; i++) if (b.get(i) == '"') n++;
+            return n;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long firstRecordStart(FileChannel ch, long from, long to, int parity) throws IOException {
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        for (int i = 0, lim = b.limit(); i < lim; i++) {
+            byte c = b.get(i);
+            if (c == '"') parity ^= 1;
+            else if (c == '\n' && parity == 0) return from + i + 1;
+        }
+        return -1; // a quoted field spans the whole window; it joins the previous chunk
+    }
+
+    private static long firstDatedLine(FileChannel ch, long from, long to, long size) throws IOException {
+        // mapped a little past the window so a date straddling its end is still seen
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size, to + 11) - from);
+        for (int i = 0, lim = (int) (to - from); i < lim; i++) {
+            if (b.get(i) == '\n' && startsWithDate(b, i + 1, b.limit())) return from + i + 1;
+        }
+        return -1; // no dated line in the window; it joins the previous chunk
+    }
+
+    /** Whether a "yyyy-mm-dd," record starts at {@code i}. */
+    private static boolean startsWithDate(ByteBuffer b, int i, int limit) {
+        if (i + 11 > limit || b.get(i + 4) != '-' || b.get(i + 7) != '-' || b.get(i + 10) != ',') return false;
+        for (int k : new int[]{0, 1, 2, 3, 5, 6, 8, 9}) {
+            int d = b.get(i + k) - '0';
+            if (d < 0 || d > 9) return false;
+        }
+        return true;
+    }
+
+    private static List<Expense> parseRange(FileChannel ch, long from, long to, boolean legacy, Path file) {
+        try {
+            RowParser p = new RowParser(ch.map(FileChannel.MapMode.READ_ONLY, from, to - from), legacy);
+            List<Expense> rows = p.parseAll();
+            if (p.skipped > 0) System.err.println(file + ": skipped " + p.skipped + " malformed rows");
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class RowParser {
+        private static final long[] POW10 = {1, 10, 100, 1000, 10_000, 100_000, 1_000_000, 10_000_000,
+                100_000_000, 1_000_000_000, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+                10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L};
+        private final ByteBuffer buf;
+        private final int limit;
+        private final boolean legacy;
+        private final Map<String, String> categories = new HashMap<>();
+        private byte[] scratch = new byte[256];
+        private int pos;
+        private int cachedKey = -1;
+        private int cachedDay;
+        int skipped;
+
+        RowParser(ByteBuffer buf, boolean legacy) {
+            this.buf = buf;
+            this.limit = buf.limit();
+            this.legacy = legacy;
+        }
+
+        List<Expense> parseAll() {
+            List<Expense> out = new ArrayList<>(Math.max(16, limit / 48));
+            while (pos < limit) {
+                byte c = buf.get(pos);
+                if (c == '\n' || c == '\r') { pos++; continue; }
+                int rowStart = pos;
+                try {
+                    out.add(parseRow());
+                } catch (RuntimeException | ParseException bad) {
+                    skipped++;
+                    pos = rowStart;
+                    while (pos < limit && buf.get(pos) != '\n') pos++;
+                }
+            }
+            return out;
+        }
+
+        private Expense parseRow() throws ParseException {
+            long id = 0;
+            if (!legacy) {
+                int end = indexOf(',');
+                id = parseLong(pos, end);
+                pos = end + 1;
+            }
+            int end = indexOf(',');
+            int day = parseDay(pos, end);
+            pos = end + 1;
+            String cat = readField(false);
+            String interned = categories.putIfAbsent(cat, cat);
+            if (interned != null) cat = interned;
+            end = pos;
+            while (end < limit && buf.get(end) != ',' && buf.get(end) != '\n' && buf.get(end) != '\r') end++;
+            long amount = parseAmount(pos, end);
+            pos = end;
+            String desc = "";
+            if (pos < limit && buf.get(pos) == ',') {
+                pos++;
+                desc = readField(true);
+            }
+            while (pos < limit && buf.get(pos) != '\n') pos++;
+            pos++;
+            Expense e = new Expense(day, cat, amount, desc);
+            e.id = id;
+            return e;
+        }
+
+        private int indexOf(char c) {
+            for (int i = pos; i < limit; i++) {
+                byte b = buf.get(i);
+                if (b == c) return i;
+                if (b == '\n') break;
+            }
+            throw new IllegalArgumentException("missing field");
+        }
+
+        /** Reads one field and consumes its trailing comma; the last field runs to end of line. */
+        private String readField(boolean last) {
+            if (pos < limit && buf.get(pos) == '"') {
+                String quoted = readQuoted(last);
+                if (quoted != null) return quoted;
+            }
+            int n = 0;
+            while (pos < limit) {
+                byte b = buf.get(pos);
+                if (b == '\n' || (!last && b == ',')) break;
+                n = put(n, b);
+                pos++;
+            }
+            if (last && n > 0 && scratch[n - 1] == '\r') n--;
+            if (!last) {
+                if (pos >= limit || buf.get(pos) != ',') throw new IllegalArgumentException("missing field");
+                pos++;
+            }
+            return n == 0 ? "" : new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+
+        // the field at pos as a quoted one, or null (pos unchanged) if its closing quote does
+        // not end it or, in a file without ids, it would run into the next dated line
+        private String readQuoted(boolean last) {
+            int start = pos, n = 0;
+            pos++;
+            while (true) {
+                if (pos >= limit) { pos = start; return null; }
+                byte b = buf.get(pos++);
+                if (b == '"') {
+                    if (pos < limit && buf.get(pos) == '"') pos++;
+                    else break;
+                } else if (b == '\n' && legacy && startsWithDate(buf, pos, limit)) {
+                    pos = start;
+                    return null;
+                }
+                n = put(n, b);
+            }
+            int end = pos < limit && buf.get(pos) == '\r' && last ? pos + 1 : pos;
+            boolean ends = last ? end >= limit || buf.get(end) == '\n' : pos < limit && buf.get(pos) == ',';
+            if (!ends) { pos = start; return null; }
+            if (!last) pos++;
+            return n == 0 ? "" : new String(scratch, 0, n, StandardCharsets.UTF_8);
+        }
+
+        private int put(int n, byte b) {
+            if (n == scratch.length) scratch = Arrays.copyOf(scratch, n * 2);
+            scratch[n] = b;
+            return n + 1;
+        }
+
+        private long parseLong(int from, int to) {
+            if (from == to) throw new NumberFormatException("empty id");
+            long v = 0;
+            for (int i = from; i < to; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) throw new NumberFormatException("bad id");
+                v = v * 10 + d;
+            }
+            return v;
+        }
+
+        private int parseDay(int from, int to) throws ParseException {
+            if (to - from == 10 && buf.get(from + 4) == '-' && buf.get(from + 7) == '-') {
+                int y = digits(from, 4), m = digits(from + 5, 2), d = digits(from + 8, 2);
+                if (y >= 0 && m >= 0 && d >= 0) {
+                    int key = y * 10000 + m * 100 + d;
+                    if (key != cachedKey) {
+                        cachedDay = (int) LocalDate.of(y, m, d).toEpochDay();
+                        cachedKey = key;
+                    }
+                    return cachedDay;
+                }
+            }
+            return LedgerFormat.parseDay(ascii(from, to));
+        }
+
+        private int digits(int from, int len) {
+            int v = 0;
+            for (int i = from; i < from + len; i++) {
+                int d = buf.get(i) - '0';
+                if (d < 0 || d > 9) return -1;
+                v = v * 10 + d;
+            }
+            return v;
+        }
+
+        // amount in minor units, rounded half-up past two decimals; unusual input goes through BigDecimal
+        private long parseAmount(int from, int to) {
+            int i = from;
+            boolean neg = i < to && buf.get(i) == '-';
+            if (neg) i++;
+            long mantissa = 0;
+            int digits = 0, scale = -1;
+            for (; i < to; i++) {
+                byte b = buf.get(i);
+                if (b == '.' && scale < 0) { scale = 0; continue; }
+                int d = b - '0';
+                if (d < 0 || d > 9 || digits == 15) return parseMinor(ascii(from, to));
+                mantissa = mantissa * 10 + d;
+                digits++;
+                if (scale >= 0) scale++;
+            }
+            if (digits == 0) throw new NumberFormatException("empty amount");
+            long v;
+            if (scale <= 2) {
+                v = mantissa * POW10[scale < 0 ? 2 : 2 - scale];
+            } else {
+                long div = POW10[scale - 2];
+                v = mantissa / div + (mantissa % div * 2 >= div ? 1 : 0);
+            }
+            return neg ? -v : v;
+        }
+
+        private String ascii(int from, int to) {
+            byte[] b = new byte[to - from];
+            buf.get(from, b);
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package expensetracker;
+
+import java.util.*;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Month -> model rows index. Each row is remembered by an ordinal that survives inserts
+ * at either end: logical row = ordinal + prepends, where prepends counts addFirst calls
+ * since the last rebuild. Per month, prepended ordinals are kept in one list (descending)
+ * and appended ones in another (ascending), so a month's rows come out in model order
+ * without sorting. Removals shift rows, so they just mark the index for a rebuild.
+ */
+class DateIndex {
+    private static final class MonthRows {
+        int[] front = new int[4], back = new int[4];
+        int frontSize, backSize;
+
+        void addFront(int ordinal) {
+            if (frontSize == front.length) front = Arrays.copyOf(front, frontSize * 2);
+            front[frontSize++] = ordinal;
+        }
+
+        void addBack(int ordinal) {
+            if (backSize == back.length) back = Arrays.copyOf(back, backSize * 2);
+            back[backSize++] = ordinal;
+        }
+    }
+
+    private final ExpenseColumns rows;
+    private MonthRows[] months = new MonthRows[0]; // indexed by month key - monthBase
+    private int monthBase;
+    private int prepends;
+    private boolean stale;
+
+    DateIndex(ExpenseColumns rows) { this.rows = rows; }
+
+    void prepended(int day) {
+        if (stale) return;
+        prepends++;
+        monthRows(monthKey(day)).addFront(-prepends);
+    }
+
+    void appended(int day, int row) {
+        if (stale) return;
+        monthRows(monthKey(day)).addBack(row - prepends);
+    }
+
+    void invalidate() { stale = true; }
+
+    /** Model rows whose day lies in [fromDay, toDay], ascending. Cost is O(matching rows). */
+    int[] rowsBetween(int fromDay, int toDay) {
+        if (stale) rebuild();
+        if (months.length == 0 || fromDay > toDay) return new int[0];
+        int first = Math.max(monthKey(Math.max(fromDay, -100_000_000)), monthBase);
+        int last = Math.min(monthKey(Math.min(toDay, 100_000_000)), monthBase + months.length - 1);
+        int n = 0;
+        for (int m = first; m <= last; m++) {
+            MonthRows mr = months[m - monthBase];
+            if (mr != null) n += mr.frontSize + mr.backSize;
+        }
+        int[] out = new int[n];
+        n = 0;
+        for (int m = first; m <= last; m++) {
+            MonthRows mr = months[m - monthBase];
+            if (mr == null) continue;
+            // only an edge month the range cuts through needs its rows' days checked
+            boolean partial = (m == first && firstDayOfMonth(m) < fromDay) || (m == last && firstDayOfMonth(m + 1) - 1 > toDay);
+            for (int i = mr.frontSize - 1; i >= 0; i--) n = emit(out, n, mr.front[i] + prepends, partial, fromDay, toDay);
+            for (int i = 0; i < mr.backSize; i++) n = emit(out, n, mr.back[i] + prepends, partial, fromDay, toDay);
+        }
+        if (n < out.length) out = Arrays.copyOf(out, n);
+        if (first != last) Arrays.sort(out); // rows of different months interleave
+        return out;
+    }
+
+    private int emit(int[] out, int n, int row, boolean partial, int fromDay, int toDay) {
+        if (partial) {
+            int d = rows.day(row);
+            if (d < fromDay || d > toDay) return n;
+        }
+        out[n++] = row;
+        return n;
+    }
+
+    private void rebuild() {
+        months = new MonthRows[0];
+        prepends = 0;
+        stale = false;
+        for (int r = 0; r < rows.size(); r++) monthRows(monthKey(rows.day(r))).addBack(r);
+    }
+
+    private MonthRows monthRows(int key) {
+        if (months.length == 0) {
+            monthBase = key;
+            months = new MonthRows[1];
+        } else if (key < monthBase) {
+            int grow = Math.max(monthBase - key, 12);
+            MonthRows[] next = new MonthRows[months.length + grow];
+            System.arraycopy(months, 0, next, grow, months.length);
+            months = next;
+            monthBase -= grow;
+        } else if (key - monthBase >= months.length) {
+            months = Arrays.copyOf(months, Math.max(key - monthBase + 1, months.length + 12));
+        }
+        MonthRows mr = months[key - monthBase];
+        return mr != null ? mr : (months[key - monthBase] = new MonthRows());
+    }
+}
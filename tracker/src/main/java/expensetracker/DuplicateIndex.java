@@ -0,0 +1,260 @@
+package expensetracker;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+ * Likely-duplicate detection. Two expenses look alike when amount, category and description
+ * match after normalising (case and punctuation ignored, "Coffee, Bean" = "coffee bean") and
+ * their days are at most WINDOW_DAYS apart. The index is a multiset of 64-bit fingerprints
+ * of (day, amount, category, description) in one open-addressed table, so checking a new
+ * row is WINDOW_DAYS * 2 + 1 probes however large the ledger. Like TextIndex it is built
+ * on first use and then kept up to date by the model. find() is the bulk pass over a
+ * snapshot: keys are computed in parallel and bucketed by their top bits, and the buckets
+ * are sorted in parallel, which brings alike rows together.
+ */
+class DuplicateIndex {
+    static final int WINDOW_DAYS = 2;
+
+    /** Rows of a bulk pass that repeat an earlier row; the earliest of each group is kept. */
+    static final class Found {
+        final long[] ids;
+        final int groups;
+        Found(long[] ids, int groups) { this.ids = ids; this.groups = groups; }
+    }
+
+    private final ExpenseColumns rows;
+    private boolean built;
+    private long[] keys = new long[0]; // 0 = empty slot; a fingerprint held n times takes n slots
+    private int size;
+
+    DuplicateIndex(ExpenseColumns rows) { this.rows = rows; }
+
+    /** Call after the row is in the store. */
+    void added(int row) {
+        if (built) add(fingerprint(rowKey(row), rows.day(row)));
+    }
+
+    /** Call before the rows leave the store, or before a row's category changes. */
+    void removing(BitSet modelRows) {
+        if (!built) return;
+        for (int r = modelRows.nextSetBit(0); r >= 0; r = modelRows.nextSetBit(r + 1)) remove(fingerprint(rowKey(r), rows.day(r)));
+    }
+
+    /** Rows in the store that {@code e} would duplicate. */
+    int matches(Expense e) {
+        if (!built) build();
+        long key = key(e.amount, textHash(e.category), textHash(e.description));
+        int n = 0;
+        for (int d = -WINDOW_DAYS; d <= WINDOW_DAYS; d++) n += count(fingerprint(key, e.day + d));
+        return n;
+    }
+
+    private long rowKey(int row) {
+        return key(rows.amount(row), textHash(rows.category(row)), rows.descriptionHash(row));
+    }
+
+    // hashing in parallel is safe: nothing writes to the rows until this returns
+    private void build() {
+        try (Metrics.Span span = Metrics.span("duplicate index")) {
+            int n = rows.size();
+            span.rows(n);
+            long[] categoryHashes = new long[rows.categoryCount()];
+            for (int c = 0; c < categoryHashes.length; c++) categoryHashes[c] = textHash(rows.categoryName(c));
+            long[] fps = new long[n];
+            IntStream.range(0, n).parallel().forEach(r ->
+                    fps[r] = fingerprint(key(rows.amount(r), categoryHashes[rows.categoryId(r)], rows.descriptionHash(r)), rows.day(r)));
+            keys = new long[tableSize(n)];
+            size = 0;
+            for (long fp : fps) add(fp);
+            built = true;
+        }
+    }
+
+    // linear probing, load kept under three quarters
+    private void add(long fp) {
+        if ((size + 1) * 4L > keys.length * 3L) rehash(tableSize(size + 1));
+        int mask = keys.length - 1, i = home(fp, mask);
+        while (keys[i] != 0) i = (i + 1) & mask;
+        keys[i] = fp;
+        size++;
+    }
+
+    private int count(long fp) {
+        if (size == 0) return 0;
+        int mask = keys.length - 1, n = 0;
+        for (int i = home(fp, mask); keys[i] != 0; i = (i + 1) & mask) if (keys[i] == fp) n++;
+        return n;
+    }
+
+    // backward-shift deletion, so lookups never meet a tombstone
+    private void remove(long fp) {
+        if (size == 0) return;
+        int mask = keys.length - 1, i = home(fp, mask);
+        while (keys[i] != fp) {
+            if (keys[i] == 0) return;
+            i = (i + 1) & mask;
+        }
+        size--;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            if (((j - home(keys[j], mask)) & mask) >= ((j - i) & mask)) { // keys[j] may move back to the hole at i
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+    }
+
+    private static int home(long fp, int mask) { return (int) (fp >>> 32 ^ fp) & mask; }
+
+    private void rehash(int length) {
+        long[] old = keys;
+        keys = new long[length];
+        size = 0;
+        for (long fp : old) if (fp != 0) add(fp);
+    }
+
+    private static int tableSize(int entries) {
+        long slots = Math.max(16, entries * 4L / 3 + 1);
+        return (int) Math.min(1 << 30, Long.highestOneBit(slots - 1) << 1);
+    }
+
+    /**
+     * The bulk pass: every row of the snapshot that looks like another row no more than
+     * WINDOW_DAYS before it (a chain of such rows is one group).
+     */
+    static Found find(ExpenseColumns.Snapshot s) {
+        try (Metrics.Span span = Metrics.span("find duplicates")) {
+            int n = s.size();
+            span.rows(n);
+            long[] categoryHashes = new long[s.categoryCount()];
+            for (int c = 0; c < categoryHashes.length; c++) categoryHashes[c] = textHash(s.categoryName(c));
+            long[] full = new long[n];
+            IntStream.range(0, n).parallel().forEach(r -> full[r] = key(s.amount(r), categoryHashes[s.categoryId(r)], s.descriptionHash(r)));
+
+            // a counting sort on the top bits of the key into buckets of about 64 rows, then each
+            // bucket sorted on its own; packed is the rest of the key with the row in its low bits
+            int bucketBits = Math.max(1, Math.min(20, 31 - Integer.numberOfLeadingZeros(Math.max(1, n / 64))));
+            int rowBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1)));
+            long rowMask = (1L << rowBits) - 1;
+            int[] start = new int[(1 << bucketBits) + 1];
+            for (long k : full) start[(int) (k >>> (64 - bucketBits)) + 1]++;
+            for (int b = 1; b < start.length; b++) start[b] += start[b - 1];
+            int[] fill = Arrays.copyOf(start, start.length - 1);
+            long[] packed = new long[n];
+            for (int r = 0; r < n; r++) packed[fill[(int) (full[r] >>> (64 - bucketBits))]++] = ((full[r] << bucketBits) & ~rowMask) | r;
+
+            // buckets in parallel, in slices so each task has enough to do
+            int slices = Math.max(1, Math.min(start.length - 1, ForkJoinPool.getCommonPoolParallelism() * 8));
+            int perSlice = (start.length - 1 + slices - 1) / slices;
+            List<long[]> repeats = IntStream.range(0, slices).parallel().mapToObj(sl -> {
+                LongList ids = new LongList();
+                int[] run = new int[16];
+                for (int b = sl * perSlice, last = Math.min(start.length - 1, b + perSlice); b < last; b++) {
+                    Arrays.sort(packed, start[b], start[b + 1]);
+                    for (int i = start[b]; i < start[b + 1]; ) {
+                        int j = i + 1;
+                        while (j < start[b + 1] && (packed[j] & ~rowMask) == (packed[i] & ~rowMask)) j++;
+                        if (j - i > 1) {
+                            if (run.length < j - i) run = new int[j - i];
+                            for (int k = i; k < j; k++) run[k - i] = (int) (packed[k] & rowMask);
+                            group(s, full, run, j - i, ids);
+                        }
+                        i = j;
+                    }
+                }
+                return ids.toArray();
+            }).collect(Collectors.toList());
+
+            int total = 0, groups = 0;
+            for (long[] r : repeats) total += r.length - 1;
+            long[] out = new long[total];
+            int k = 0;
+            for (long[] r : repeats) {
+                groups += (int) r[0];
+                System.arraycopy(r, 1, out, k, r.length - 1);
+                k += r.length - 1;
+            }
+            return new Found(out, groups);
+        }
+    }
+
+    // rows sharing the packed key: by full key, then day, then id, chaining within the window;
+    // ids.get(0) counts the groups
+    private static void group(ExpenseColumns.Snapshot s, long[] full, int[] run, int len, LongList ids) {
+        Integer[] order = new Integer[len];
+        for (int k = 0; k < len; k++) order[k] = run[k];
+        Arrays.sort(order, Comparator.<Integer>comparingLong(r -> full[r]).thenComparingInt(s::day).thenComparingLong(s::id));
+        boolean open = false;
+        for (int k = 1; k < len; k++) {
+            int prev = order[k - 1], r = order[k];
+            if (full[prev] == full[r] && s.day(r) - s.day(prev) <= WINDOW_DAYS) {
+                if (!open) ids.values[0]++;
+                open = true;
+                ids.add(s.id(r));
+            } else {
+                open = false;
+            }
+        }
+    }
+
+    private static final class LongList {
+        long[] values = new long[16];
+        int size = 1; // values[0] is the group count
+
+        void add(long v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        long[] toArray() { return Arrays.copyOf(values, size); }
+    }
+
+    static long key(long amount, long categoryHash, long descriptionHash) {
+        return mix(mix(amount) ^ categoryHash * 0x9E3779B97F4A7C15L ^ descriptionHash);
+    }
+
+    static long fingerprint(long key, int day) {
+        long fp = mix(key + day * 0xC2B2AE3D27D4EB4FL);
+        return fp == 0 ? 1 : fp;
+    }
+
+    static long textHash(String s) {
+        return textHash(s.toCharArray(), 0, s.length());
+    }
+
+    // ASCII letters and digits folded to lower case; 0 for everything else
+    private static final char[] ASCII_FOLD = new char[128];
+    static {
+        for (char c = '0'; c <= '9'; c++) ASCII_FOLD[c] = c;
+        for (char c = 'a'; c <= 'z'; c++) ASCII_FOLD[c] = ASCII_FOLD[c - 32] = c;
+    }
+
+    /** Hash of the lower-cased letter / digit runs of the text, one separator between runs. */
+    static long textHash(char[] a, int start, int len) {
+        long h = 0xCBF29CE484222325L;
+        boolean any = false, gap = false;
+        for (int i = start, end = start + len; i < end; i++) {
+            char c = a[i];
+            char f = c < 128 ? ASCII_FOLD[c] : Character.isLetterOrDigit(c) ? ExpenseColumns.Snapshot.fold(c) : 0;
+            if (f == 0) {
+                gap = any;
+                continue;
+            }
+            if (gap) h = (h ^ ' ') * 0x100000001B3L;
+            any = true;
+            gap = false;
+            h = (h ^ f) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // the murmur3 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB93FE53A1A4BL;
+        return z ^ (z >>> 33);
+    }
+}
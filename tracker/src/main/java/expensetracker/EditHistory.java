@@ -0,0 +1,120 @@
+package expensetracker;
+
+import java.util.*;
+
+/*
+ * Undo and redo for the table model. An edit keeps only what it changed: the ids of rows
+ * it added, copies of rows it deleted, or the previous category of each row it moved, so
+ * undoing a one-row edit on a ten-million-row ledger costs one row. The model replays the
+ * inverse through its ordinary add / remove / reassign calls, so the journal, aggregates
+ * and indexes follow as for any other edit. The oldest edits are dropped past MAX_EDITS
+ * or once the history's estimated size passes MAX_BYTES.
+ */
+class EditHistory {
+    private static final int MAX_EDITS = 100;
+    private static final long MAX_BYTES = 64L << 20;
+
+    static final class Edit {
+        final char kind; // 'I'nsert, 'D'elete or 'C'ategory change, as in the journal
+        final long[] ids;
+        final int[] oldCategories; // 'C': dictionary id each row had before, parallel to ids
+        final String category; // 'C': the category set
+        final int[] months; // month keys of the rows, so they can be paged in before a replay
+        List<Expense> rows; // 'D': the deleted rows; 'I': the added rows while undone
+
+        Edit(char kind, long[] ids, int[] days, List<Expense> rows, int[] oldCategories, String category) {
+            this.kind = kind; this.ids = ids; this.rows = rows; this.oldCategories = oldCategories; this.category = category;
+            this.months = Arrays.stream(days).map(LedgerFormat::monthKey).distinct().toArray();
+        }
+
+        /** Months whose rows must be in memory to undo it: not for a delete, which adds rows back. */
+        int[] undoMonths() { return kind == 'D' ? new int[0] : months; }
+
+        /** The same for redo, where an insert adds rows back. */
+        int[] redoMonths() { return kind == 'I' ? new int[0] : months; }
+
+        /** For the Undo / Redo tooltips, e.g. "delete 3 expenses". */
+        String describe() {
+            String n = ids.length == 1 ? "1 expense" : String.format("%,d expenses", ids.length);
+            switch (kind) {
+                case 'I': return "add " + n;
+                case 'D': return "delete " + n;
+                default: return "set category of " + n + " to " + category;
+            }
+        }
+
+        long bytes() {
+            long b = 64 + ids.length * 8L + months.length * 4L + (oldCategories == null ? 0 : oldCategories.length * 4L);
+            if (rows != null) for (Expense e : rows) b += 96 + 2L * (e.description.length() + e.category.length());
+            return b;
+        }
+    }
+
+    /** Whether a deletion of this many rows could be kept; larger ones just clear the history. */
+    static boolean canKeep(int rows) { return rows * 128L <= MAX_BYTES; }
+
+    private final Deque<Edit> undo = new ArrayDeque<>(), redo = new ArrayDeque<>();
+    private long bytes;
+
+    /** A new edit: it can be undone, and nothing undone before it can be redone any more. */
+    void record(Edit e) {
+        for (Edit r : redo) bytes -= r.bytes();
+        redo.clear();
+        undo.push(e);
+        bytes += e.bytes();
+        trim();
+    }
+
+    Edit peekUndo() { return undo.peek(); }
+    Edit peekRedo() { return redo.peek(); }
+
+    /** Takes the newest edit to undo; hand it back with undone() once applied. */
+    Edit popUndo() {
+        Edit e = undo.poll();
+        if (e != null) bytes -= e.bytes();
+        return e;
+    }
+
+    Edit popRedo() {
+        Edit e = redo.poll();
+        if (e != null) bytes -= e.bytes();
+        return e;
+    }
+
+    void undone(Edit e) {
+        redo.push(e);
+        bytes += e.bytes();
+        trim();
+    }
+
+    void redone(Edit e) {
+        undo.push(e);
+        bytes += e.bytes();
+        trim();
+    }
+
+    /** Follows rows to the new ids the ledger gave them. */
+    void renumber(Map<Long, Long> ids) {
+        for (Deque<Edit> edits : List.of(undo, redo)) {
+            for (Edit e : edits) {
+                for (int i = 0; i < e.ids.length; i++) e.ids[i] = ids.getOrDefault(e.ids[i], e.ids[i]);
+                if (e.rows != null) for (Expense r : e.rows) r.id = ids.getOrDefault(r.id, r.id);
+            }
+        }
+    }
+
+    void clear() {
+        undo.clear();
+        redo.clear();
+        bytes = 0;
+    }
+
+    // drops the oldest undo steps first, then the furthest redo steps
+    private void trim() {
+        while (undo.size() + redo.size() > MAX_EDITS || bytes > MAX_BYTES) {
+            Edit e = !undo.isEmpty() ? undo.pollLast() : redo.pollLast();
+            if (e == null) return;
+            bytes -= e.bytes();
+        }
+    }
+}
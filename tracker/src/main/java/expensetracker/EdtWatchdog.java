@@ -0,0 +1,91 @@
+package expensetracker;
+
+import javax.swing.*;
+import java.time.Instant;
+
+/*
+ * Detects Event Dispatch Thread stalls. A daemon thread posts a heartbeat to the EDT every
+ * PERIOD_MS; the delay until it runs goes into the "edt latency" histogram. If a heartbeat
+ * is still waiting after the threshold, the EDT's stack is sampled once, and when the EDT
+ * finally answers the stall is logged to stderr with that sample, kept for the diagnostics
+ * report and committed as an expensetracker.EdtStall JFR event.
+ */
+class EdtWatchdog {
+    private static final long PERIOD_MS = 100;
+
+    private final long thresholdNanos;
+    private volatile Thread edt;
+    private volatile long postedAt; // nanoTime of the unanswered heartbeat, 0 when none
+    private String sample; // stack taken during the current stall, guarded by this
+    private Metrics.EdtStallEvent event; // guarded by this
+
+    EdtWatchdog(long thresholdMs) {
+        this.thresholdNanos = thresholdMs * 1_000_000;
+    }
+
+    void start() {
+        SwingUtilities.invokeLater(() -> edt = Thread.currentThread());
+        Thread t = new Thread(this::run, "edt-watchdog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Thread.sleep(PERIOD_MS);
+                long posted = postedAt;
+                if (posted == 0) {
+                    long now = System.nanoTime();
+                    postedAt = now;
+                    SwingUtilities.invokeLater(() -> answered(now));
+                } else if (System.nanoTime() - posted > thresholdNanos && edt != null && !sampled()) {
+                    Metrics.EdtStallEvent e = new Metrics.EdtStallEvent();
+                    e.begin();
+                    String stack = stackOf(edt);
+                    synchronized (this) {
+                        if (postedAt == posted) { // not answered while sampling
+                            event = e;
+                            sample = stack;
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean sampled() { return sample != null; }
+
+    // on the EDT
+    private void answered(long posted) {
+        long nanos = System.nanoTime() - posted;
+        Metrics.histogram("edt latency").record(nanos / 1000, 0);
+        String stack;
+        Metrics.EdtStallEvent e;
+        synchronized (this) {
+            stack = sample;
+            e = event;
+            sample = null;
+            event = null;
+            postedAt = 0;
+        }
+        if (stack != null) {
+            long ms = nanos / 1_000_000;
+            System.err.println("EDT stalled for " + ms + " ms; stack when it passed " + thresholdNanos / 1_000_000 + " ms:\n" + stack);
+            Metrics.stall(new Metrics.Stall(Instant.now(), ms, stack));
+            if (e != null) {
+                e.end();
+                e.stack = stack;
+                e.commit();
+            }
+        }
+    }
+
+    private static String stackOf(Thread t) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement f : t.getStackTrace()) sb.append("    at ").append(f).append('\n');
+        return sb.toString();
+    }
+}
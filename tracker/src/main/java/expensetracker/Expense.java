@@ -0,0 +1,12 @@
+package expensetracker;
+
+class Expense {
+    long id; // assigned by the journal, stable across restarts
+    int day; // epoch day
+    String category;
+    long amount; // minor units
+    String description;
+    Expense(int day, String category, long amount, String description) {
+        this.day = day; this.category = category; this.amount = amount; this.description = description;
+    }
+}
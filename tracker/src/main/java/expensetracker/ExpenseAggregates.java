@@ -0,0 +1,123 @@
+package expensetracker;
+
+import java.util.*;
+
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Running totals kept in step with the table model: one bucket for all time and one per
+ * month, each split by category id. Every insert or remove touches exactly two buckets,
+ * so the summary panel never has to rescan the rows. Months still on disk are counted
+ * from their partition summaries, so the totals always cover the whole ledger. A listener
+ * (the budget rules) hears of each change to a month as it is made.
+ */
+class ExpenseAggregates {
+    /** Told of every change to a month's totals, after it is made. */
+    interface Listener {
+        void changed(int month, int category, long delta, Bucket totals);
+    }
+
+    static final class Bucket {
+        long total;
+        int count;
+        private long[] byCategory = new long[8];
+        private int[] countByCategory = new int[8];
+
+        int categorySlots() { return byCategory.length; }
+        long total(int cat) { return cat < byCategory.length ? byCategory[cat] : 0; }
+        int count(int cat) { return cat < countByCategory.length ? countByCategory[cat] : 0; }
+
+        void addAll(Bucket other) {
+            ensureSlots(other.byCategory.length);
+            for (int c = 0; c < other.byCategory.length; c++) {
+                byCategory[c] += other.byCategory[c];
+                countByCategory[c] += other.countByCategory[c];
+            }
+            total += other.total;
+            count += other.count;
+        }
+
+        private void ensureSlots(int n) {
+            if (n <= byCategory.length) return;
+            n = Math.max(n, byCategory.length * 2);
+            byCategory = Arrays.copyOf(byCategory, n);
+            countByCategory = Arrays.copyOf(countByCategory, n);
+        }
+
+        void apply(int cat, long amount, int sign) {
+            addTotals(cat, sign * amount, sign);
+        }
+
+        void addTotals(int cat, long amount, int n) {
+            ensureSlots(cat + 1);
+            total += amount;
+            count += n;
+            byCategory[cat] += amount;
+            countByCategory[cat] += n;
+        }
+    }
+
+    private final Bucket all = new Bucket();
+    private Bucket[] months = new Bucket[0]; // indexed by month key - monthBase
+    private int monthBase;
+    private Listener listener;
+
+    void setListener(Listener l) { listener = l; }
+
+    Bucket all() { return all; }
+
+    /** @return the bucket for a month key, or null if nothing was ever recorded there */
+    Bucket month(int key) {
+        int i = key - monthBase;
+        return i >= 0 && i < months.length ? months[i] : null;
+    }
+
+    /** Month keys that currently hold at least one expense, ascending. */
+    int[] activeMonths() {
+        int n = 0;
+        for (Bucket b : months) if (b != null && b.count > 0) n++;
+        int[] out = new int[n];
+        n = 0;
+        for (int i = 0; i < months.length; i++) {
+            if (months[i] != null && months[i].count > 0) out[n++] = monthBase + i;
+        }
+        return out;
+    }
+
+    void add(int day, int cat, long amount) { apply(day, cat, amount, 1); }
+    void remove(int day, int cat, long amount) { apply(day, cat, amount, -1); }
+
+    /** Counts rows that are not in the model: a month known only by its partition summary. */
+    void addMonthTotals(int monthKey, int cat, int count, long amount) {
+        all.addTotals(cat, amount, count);
+        Bucket b = month(monthKey);
+        if (b == null) b = createMonth(monthKey);
+        b.addTotals(cat, amount, count);
+        if (listener != null) listener.changed(monthKey, cat, amount, b);
+    }
+
+    private void apply(int day, int cat, long amount, int sign) {
+        all.apply(cat, amount, sign);
+        int key = monthKey(day);
+        Bucket b = month(key);
+        if (b == null) b = createMonth(key);
+        b.apply(cat, amount, sign);
+        if (listener != null) listener.changed(key, cat, sign * amount, b);
+    }
+
+    private Bucket createMonth(int key) {
+        if (months.length == 0) {
+            monthBase = key;
+            months = new Bucket[1];
+        } else if (key < monthBase) {
+            int grow = Math.max(monthBase - key, 12);
+            Bucket[] next = new Bucket[months.length + grow];
+            System.arraycopy(months, 0, next, grow, months.length);
+            months = next;
+            monthBase -= grow;
+        } else if (key - monthBase >= months.length) {
+            months = Arrays.copyOf(months, Math.max(key - monthBase + 1, months.length + 12));
+        }
+        return months[key - monthBase] = new Bucket();
+    }
+}
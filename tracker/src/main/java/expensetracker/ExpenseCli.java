@@ -0,0 +1,281 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Headless entry point (PremiumExpenseTracker.main hands over when given arguments).
+ *
+ *   import [options] FILE...   stream statements into the ledger, then print the summary
+ *   summary [options]          print the summary only
+ *   serve [options]            share the ledger over HTTP on localhost (see ExpenseServer)
+ *
+ * Files are parsed in parallel; their batches funnel through one queue into the same
+ * table model, PersistenceWriter and journal the UI uses, so each batch is a single group
+ * commit. Progress and bad rows go to stderr, and the summary goes to stdout as
+ * tab-separated "month category count total" lines, with '*' meaning all. serve loads every
+ * month into an ExpenseStore and runs until the process is stopped.
+ */
+final class ExpenseCli {
+    private static final List<Expense> END_OF_FILE = new ArrayList<>(0); // compared by identity
+
+    private Path dataDir = Path.of("");
+    private StatementImporter.Schema schema = new StatementImporter.Schema();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 50_000;
+    private int maxErrors = 20;
+    private int port = 8765;
+    private String token;
+    private boolean byMonth = true, byCategory = true;
+    private boolean skipDuplicates;
+    private final List<Path> files = new ArrayList<>();
+
+    private ExpenseCli() { }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /** @return process exit code: 0 ok, 1 failed files or storage errors, 2 bad usage */
+    static int run(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        ExpenseCli cli = new ExpenseCli();
+        String command = args.length > 0 ? args[0] : "";
+        try {
+            if (!command.equals("import") && !command.equals("summary") && !command.equals("serve")) {
+                throw new IllegalArgumentException("unknown command '" + command + "'");
+            }
+            cli.parseOptions(Arrays.copyOfRange(args, 1, args.length), command.equals("import"));
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("error: " + e.getMessage());
+            usage();
+            return 2;
+        }
+        try {
+            return command.equals("serve") ? cli.serve() : cli.execute(command.equals("import"));
+        } catch (IOException | ExecutionException e) {
+            System.err.println("error: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    private static void usage() {
+        System.err.println(String.join("\n",
+                "usage: expense-tracker import [options] FILE...",
+                "       expense-tracker summary [options]",
+                "       expense-tracker serve [--data DIR] [--port N] [--token T] [--threads N]",
+                "  --data DIR          ledger directory (default: current directory)",
+                "  --schema FILE       column mapping, see README (default: the tracker's CSV export)",
+                "  --threads N         files parsed in parallel; serve: request threads without virtual threads (default: processors)",
+                "  --port N            serve: localhost port (default: 8765)",
+                "  --token T           serve: token clients must send (default: a random one, printed)",
+                "  --batch N           rows per commit (default: 50000)",
+                "  --max-errors N      bad rows printed per file; all are counted (default: 20)",
+                "  --duplicates keep|skip   rows like one already in the ledger: counted and kept, or skipped (default: keep)",
+                "  --by month|category|both|none   summary breakdown (default: both)"));
+    }
+
+    private void parseOptions(String[] args, boolean importing) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) {
+                if (!importing) throw new IllegalArgumentException("unexpected argument '" + a + "'");
+                files.add(Path.of(a));
+                continue;
+            }
+            if (i + 1 == args.length) throw new IllegalArgumentException(a + " needs a value");
+            String v = args[++i];
+            switch (a) {
+                case "--data": dataDir = Path.of(v); break;
+                case "--schema": schema = StatementImporter.Schema.load(Path.of(v)); break;
+                case "--threads": threads = positive(a, v); break;
+                case "--port": port = Integer.parseInt(v); break;
+                case "--token":
+                    if (v.isBlank()) throw new IllegalArgumentException("--token is empty");
+                    token = v;
+                    break;
+                case "--batch": batchSize = positive(a, v); break;
+                case "--max-errors": maxErrors = Integer.parseInt(v); break;
+                case "--duplicates":
+                    if (!v.equals("keep") && !v.equals("skip")) throw new IllegalArgumentException("--duplicates " + v);
+                    skipDuplicates = v.equals("skip");
+                    break;
+                case "--by":
+                    byMonth = v.equals("month") || v.equals("both");
+                    byCategory = v.equals("category") || v.equals("both");
+                    if (!byMonth && !byCategory && !v.equals("none")) throw new IllegalArgumentException("--by " + v);
+                    break;
+                default: throw new IllegalArgumentException("unknown option " + a);
+            }
+        }
+        if (importing && files.isEmpty()) throw new IllegalArgumentException("no files to import");
+    }
+
+    private static int positive(String option, String v) {
+        int n = Integer.parseInt(v);
+        if (n < 1) throw new IllegalArgumentException(option + " must be at least 1");
+        return n;
+    }
+
+    private int execute(boolean importing) throws IOException, ExecutionException, InterruptedException {
+        if (importing) Files.createDirectories(dataDir.toAbsolutePath());
+        else if (!Files.isDirectory(dataDir.toAbsolutePath())) throw new IOException("no ledger directory " + dataDir);
+        ExpenseJournal journal = ExpenseJournal.inDirectory(dataDir,
+                ExpenseJournal.SyncMode.fromProperty(System.getProperty("expense.fsync")));
+        PersistenceWriter writer = new PersistenceWriter(journal);
+        AtomicBoolean storageFailed = new AtomicBoolean();
+        writer.setStatusListener(s -> { if (s == Ledger.Status.FAILED) storageFailed.set(true); });
+        ExpenseTableModel model = new ExpenseTableModel();
+        try {
+            long t0 = System.nanoTime();
+            TreeSet<Integer> cold = new TreeSet<>();
+            int existing = writer.recover(model::appendLoaded, s -> {
+                model.addColdMonth(s);
+                cold.add(s.month);
+            }).get();
+            System.err.printf("loaded %,d rows from %s in %d ms%n", existing, dataDir.toAbsolutePath(), (System.nanoTime() - t0) / 1_000_000);
+            model.setMutationListener(writer);
+            model.setIdSource(writer::allocateId);
+            boolean filesFailed = importing && !importFiles(model, writer, cold);
+            writer.flush();
+            if (byMonth || byCategory) printSummary(model, System.out);
+            return filesFailed || storageFailed.get() ? 1 : 0;
+        } finally {
+            writer.close();
+        }
+    }
+
+    // blocks until the process is stopped; the shutdown hook stops the server and flushes the journal
+    private int serve() throws IOException, ExecutionException, InterruptedException {
+        if (!Files.isDirectory(dataDir.toAbsolutePath())) throw new IOException("no ledger directory " + dataDir);
+        ExpenseJournal journal = ExpenseJournal.inDirectory(dataDir,
+                ExpenseJournal.SyncMode.fromProperty(System.getProperty("expense.fsync")));
+        PersistenceWriter writer = new PersistenceWriter(journal);
+        writer.setStatusListener(s -> { if (s == Ledger.Status.FAILED) System.err.println("error: could not save to " + dataDir.toAbsolutePath()); });
+        long t0 = System.nanoTime();
+        List<Expense> rows = new ArrayList<>();
+        TreeSet<Integer> cold = new TreeSet<>();
+        writer.recover(rows::addAll, s -> cold.add(s.month)).get();
+        for (int m : cold.descendingSet()) rows.addAll(writer.readMonth(m)); // the store keeps every month in memory
+        ExpenseStore store = new ExpenseStore(rows, writer, writer::allocateId);
+        String key = token != null ? token : ExpenseServer.newToken();
+        ExpenseServer server = new ExpenseServer(store, port, key, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            writer.close();
+        }, "expense-server-stop"));
+        server.start();
+        System.err.printf("loaded %,d rows from %s in %d ms; serving on http://localhost:%d/ (%s)%n", rows.size(),
+                dataDir.toAbsolutePath(), (System.nanoTime() - t0) / 1_000_000, server.port(),
+                ExpenseServer.virtualThreads() ? "virtual threads" : threads + " threads");
+        System.out.println("token: " + key);
+        new CountDownLatch(1).await();
+        return 0;
+    }
+
+    /** @return false if any file could not be read */
+    private boolean importFiles(ExpenseTableModel model, Ledger writer, Set<Integer> cold)
+            throws IOException, InterruptedException, ExecutionException {
+        StatementImporter importer = new StatementImporter(schema, batchSize, System.err, maxErrors);
+        BlockingQueue<List<Expense>> queue = new ArrayBlockingQueue<>(Math.max(2, threads * 2));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        long t0 = System.nanoTime();
+        List<Future<StatementImporter.FileReport>> reports = new ArrayList<>();
+        for (Path f : files) {
+            reports.add(pool.submit(() -> {
+                try {
+                    return importer.importFile(f, batch -> put(queue, batch));
+                } finally {
+                    put(queue, END_OF_FILE);
+                }
+            }));
+        }
+        pool.shutdown();
+        // all model and journal work stays on this thread
+        long imported = 0, duplicates = 0;
+        for (int open = files.size(); open > 0; ) {
+            List<Expense> batch = queue.take();
+            if (batch == END_OF_FILE) {
+                open--;
+                continue;
+            }
+            // a duplicate may sit in a month still on disk, or in a batch imported before this one
+            for (Expense e : batch) {
+                for (int m = monthKey(e.day - DuplicateIndex.WINDOW_DAYS); m <= monthKey(e.day + DuplicateIndex.WINDOW_DAYS); m++) {
+                    if (cold.remove(m)) model.appendMonth(m, writer.readMonth(m));
+                }
+            }
+            List<Expense> fresh = new ArrayList<>(batch.size());
+            for (Expense e : batch) if (model.duplicatesOf(e) == 0) fresh.add(e);
+            duplicates += batch.size() - fresh.size();
+            if (skipDuplicates) batch = fresh;
+            model.addExpenses(batch);
+            imported += batch.size();
+        }
+        boolean ok = true;
+        long skipped = 0, bad = 0;
+        for (Future<StatementImporter.FileReport> f : reports) {
+            StatementImporter.FileReport r = f.get();
+            if (r.failure != null) {
+                ok = false;
+                System.err.println(r.file + ": failed: " + r.failure);
+                continue;
+            }
+            System.err.printf("%s: %,d imported, %,d skipped, %,d bad%n", r.file, r.imported, r.skipped, r.bad);
+            skipped += r.skipped;
+            bad += r.bad;
+        }
+        System.err.printf("imported %,d rows from %d files in %d ms (%,d skipped, %,d bad, %,d likely duplicates %s)%n",
+                imported, files.size(), (System.nanoTime() - t0) / 1_000_000, skipped, bad, duplicates,
+                skipDuplicates ? "skipped" : "kept");
+        return ok;
+    }
+
+    private static void put(BlockingQueue<List<Expense>> queue, List<Expense> batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("import interrupted", e);
+        }
+    }
+
+    private void printSummary(ExpenseTableModel model, PrintStream out) {
+        ExpenseAggregates agg = model.aggregates();
+        out.println("month\tcategory\tcount\ttotal");
+        if (byMonth) {
+            for (int m : agg.activeMonths()) {
+                String month = formatDay(firstDayOfMonth(m)).substring(0, 7);
+                printBucket(out, model, month, agg.month(m), byCategory);
+            }
+        }
+        printBucket(out, model, "*", agg.all(), byCategory);
+    }
+
+    private static void printBucket(PrintStream out, ExpenseTableModel model, String month, ExpenseAggregates.Bucket b,
+                                    boolean categories) {
+        out.println(month + "\t*\t" + b.count + "\t" + formatMinor(b.total));
+        if (!categories) return;
+        for (int c = 0; c < b.categorySlots(); c++) {
+            if (b.count(c) > 0) out.println(month + "\t" + model.categoryName(c) + "\t" + b.count(c) + "\t" + formatMinor(b.total(c)));
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package expensetracker;
+
+import java.util.*;
+
+/*
+ * Column-per-field row storage behind the table model: ids, epoch days, amounts in minor
+ * units, dictionary-encoded categories, and descriptions packed into one shared char
+ * arena (about 32 bytes per row plus the text). Rows sit in a ring, so prepending a new
+ * expense and appending rows read back from disk are both O(1).
+ *
+ * The columns are split into chunks of CHUNK rows so that snapshot() can hand a background
+ * reader a frozen copy by copying chunk references only. Chunks a snapshot shares are copied
+ * on the next write to them. The arena needs no copying: it is only ever appended to, and
+ * growing or compacting it moves the live text into a new array.
+ */
+class ExpenseColumns {
+    private static final int SHIFT = 12, CHUNK = 1 << SHIFT, MASK = CHUNK - 1;
+
+    /** A read-only view of the rows as they were; safe to read from any thread once handed over. */
+    static final class Snapshot {
+        final long version;
+        private final int head, size, capacity;
+        private final long[][] ids, amounts;
+        private final int[][] days, cats, descStart, descLen;
+        private final char[] arena;
+        private final String[] categoryNames;
+
+        private Snapshot(long version, ExpenseColumns c) {
+            this.version = version;
+            head = c.head;
+            size = c.size;
+            capacity = c.capacity;
+            ids = c.ids.clone();
+            days = c.days.clone();
+            amounts = c.amounts.clone();
+            cats = c.cats.clone();
+            descStart = c.descStart.clone();
+            descLen = c.descLen.clone();
+            arena = c.arena;
+            categoryNames = c.categoryNames.toArray(new String[0]);
+        }
+
+        int size() { return size; }
+
+        private int phys(int row) {
+            int p = head + row;
+            return p < capacity ? p : p - capacity;
+        }
+
+        long id(int row) { int p = phys(row); return ids[p >>> SHIFT][p & MASK]; }
+        int day(int row) { int p = phys(row); return days[p >>> SHIFT][p & MASK]; }
+        long amount(int row) { int p = phys(row); return amounts[p >>> SHIFT][p & MASK]; }
+        int categoryId(int row) { int p = phys(row); return cats[p >>> SHIFT][p & MASK]; }
+        int categoryCount() { return categoryNames.length; }
+        String categoryName(int id) { return categoryNames[id]; }
+
+        /** Case-insensitive substring test in the arena; {@code lower} must be lower case. */
+        boolean descriptionContains(int row, String lower) {
+            int p = phys(row), start = descStart[p >>> SHIFT][p & MASK], len = descLen[p >>> SHIFT][p & MASK];
+            int n = lower.length();
+            outer:
+            for (int i = start, last = start + len - n; i <= last; i++) {
+                for (int j = 0; j < n; j++) {
+                    char c = arena[i + j];
+                    if (c != lower.charAt(j) && fold(c) != lower.charAt(j)) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        long descriptionHash(int row) {
+            int p = phys(row);
+            return DuplicateIndex.textHash(arena, descStart[p >>> SHIFT][p & MASK], descLen[p >>> SHIFT][p & MASK]);
+        }
+
+        /** The case folding descriptionContains applies, cheap for ASCII. */
+        static char fold(char c) {
+            if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        Expense get(int row) {
+            int p = phys(row), c = p >>> SHIFT, i = p & MASK;
+            int len = descLen[c][i];
+            Expense e = new Expense(days[c][i], categoryNames[cats[c][i]], amounts[c][i],
+                    len == 0 ? "" : new String(arena, descStart[c][i], len));
+            e.id = ids[c][i];
+            return e;
+        }
+    }
+
+    private long[][] ids = {new long[CHUNK]};
+    private int[][] days = {new int[CHUNK]};
+    private long[][] amounts = {new long[CHUNK]};
+    private int[][] cats = {new int[CHUNK]};
+    private int[][] descStart = {new int[CHUNK]};
+    private int[][] descLen = {new int[CHUNK]};
+    private boolean[] shared = new boolean[1]; // chunk is also referenced by a snapshot
+    private int capacity = CHUNK; // rows the chunks hold
+    private int head, size;
+    private char[] arena = new char[1024];
+    private int arenaUsed, arenaGarbage;
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private int[] categoryRanks = new int[0];
+    private long maxAbsAmount; // high-water mark, never lowered by removals
+
+    int size() { return size; }
+
+    private int phys(int row) {
+        int p = head + row;
+        return p < capacity ? p : p - capacity;
+    }
+
+    long id(int row) { int p = phys(row); return ids[p >>> SHIFT][p & MASK]; }
+    int day(int row) { int p = phys(row); return days[p >>> SHIFT][p & MASK]; }
+    long amount(int row) { int p = phys(row); return amounts[p >>> SHIFT][p & MASK]; }
+    int categoryId(int row) { int p = phys(row); return cats[p >>> SHIFT][p & MASK]; }
+    String category(int row) { return categoryNames.get(categoryId(row)); }
+    String description(int row) {
+        int p = phys(row), len = descLen[p >>> SHIFT][p & MASK];
+        return len == 0 ? "" : new String(arena, descStart[p >>> SHIFT][p & MASK], len);
+    }
+
+    /** DuplicateIndex.textHash of the description, read in the arena. */
+    long descriptionHash(int row) {
+        int p = phys(row);
+        return DuplicateIndex.textHash(arena, descStart[p >>> SHIFT][p & MASK], descLen[p >>> SHIFT][p & MASK]);
+    }
+
+    /** O(chunks): later writes copy the chunks they touch instead. */
+    Snapshot snapshot(long version) {
+        Arrays.fill(shared, true);
+        return new Snapshot(version, this);
+    }
+
+    int categoryCount() { return categoryNames.size(); }
+    String categoryName(int id) { return categoryNames.get(id); }
+    /** Dictionary id of a category name, or -1 if no row has ever used it. */
+    int findCategory(String name) { return categoryIds.getOrDefault(name, -1); }
+    long maxAbsAmount() { return maxAbsAmount; }
+
+    /** Position of a category in case-insensitive name order, for sorting by int. */
+    int categoryRank(int id) {
+        if (categoryRanks.length != categoryNames.size()) {
+            Integer[] order = new Integer[categoryNames.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (x, y) -> String.CASE_INSENSITIVE_ORDER.compare(categoryNames.get(x), categoryNames.get(y)));
+            categoryRanks = new int[order.length];
+            for (int i = 0; i < order.length; i++) categoryRanks[order[i]] = i;
+        }
+        return categoryRanks[id];
+    }
+
+    /** Case-insensitive description order, compared in the arena without building Strings. */
+    int compareDescriptions(int rowA, int rowB) {
+        int pa = phys(rowA), pb = phys(rowB);
+        int sa = descStart[pa >>> SHIFT][pa & MASK], la = descLen[pa >>> SHIFT][pa & MASK];
+        int sb = descStart[pb >>> SHIFT][pb & MASK], lb = descLen[pb >>> SHIFT][pb & MASK];
+        for (int i = 0, n = Math.min(la, lb); i < n; i++) {
+            char x = arena[sa + i], y = arena[sb + i];
+            if (x != y) {
+                x = Character.toLowerCase(Character.toUpperCase(x));
+                y = Character.toLowerCase(Character.toUpperCase(y));
+                if (x != y) return x - y;
+            }
+        }
+        return la - lb;
+    }
+
+    Expense get(int row) {
+        Expense e = new Expense(day(row), category(row), amount(row), description(row));
+        e.id = id(row);
+        return e;
+    }
+
+    void addFirst(Expense e) {
+        ensureCapacity(size + 1);
+        head = head == 0 ? capacity - 1 : head - 1;
+        size++;
+        write(head, e);
+    }
+
+    void addLast(Expense e) {
+        ensureCapacity(size + 1);
+        size++;
+        write(phys(size - 1), e);
+    }
+
+    /** Drops every row set in {@code doomed} with one compacting pass. */
+    void removeAll(BitSet doomed) {
+        int w = 0;
+        for (int r = 0; r < size; r++) {
+            if (doomed.get(r)) {
+                int p = phys(r);
+                arenaGarbage += descLen[p >>> SHIFT][p & MASK];
+            } else {
+                if (w != r) move(phys(r), phys(w));
+                w++;
+            }
+        }
+        size = w;
+        if (size == 0) head = 0;
+        if (arenaGarbage > 1 << 20 && arenaGarbage > arenaUsed / 2) compactArena();
+    }
+
+    void setId(int row, long id) {
+        int p = phys(row);
+        own(p >>> SHIFT);
+        ids[p >>> SHIFT][p & MASK] = id;
+    }
+
+    /** @return the category id now stored for the row */
+    int setCategory(int row, String category) {
+        int id = categoryId(category);
+        int p = phys(row);
+        own(p >>> SHIFT);
+        cats[p >>> SHIFT][p & MASK] = id;
+        return id;
+    }
+
+    private void write(int p, Expense e) {
+        int c = p >>> SHIFT, i = p & MASK;
+        own(c);
+        ids[c][i] = e.id;
+        days[c][i] = e.day;
+        amounts[c][i] = e.amount;
+        maxAbsAmount = Math.max(maxAbsAmount, e.amount == Long.MIN_VALUE ? Long.MAX_VALUE : Math.abs(e.amount));
+        cats[c][i] = categoryId(e.category);
+        int len = e.description.length();
+        descStart[c][i] = descLen[c][i] = 0; // the slot may still point at a removed row's text, which compaction would copy
+        if (arenaUsed + len > arena.length) growArena(len);
+        e.description.getChars(0, len, arena, arenaUsed);
+        descStart[c][i] = arenaUsed;
+        descLen[c][i] = len;
+        arenaUsed += len;
+    }
+
+    /** Dictionary id of a category name, added if new. */
+    int categoryId(String category) {
+        return categoryIds.computeIfAbsent(category, k -> {
+            categoryNames.add(k);
+            return categoryNames.size() - 1;
+        });
+    }
+
+    private void move(int from, int to) {
+        int fc = from >>> SHIFT, fi = from & MASK, tc = to >>> SHIFT, ti = to & MASK;
+        own(tc);
+        ids[tc][ti] = ids[fc][fi];
+        days[tc][ti] = days[fc][fi];
+        amounts[tc][ti] = amounts[fc][fi];
+        cats[tc][ti] = cats[fc][fi];
+        descStart[tc][ti] = descStart[fc][fi];
+        descLen[tc][ti] = descLen[fc][fi];
+    }
+
+    // copies chunk c if a snapshot still reads it; call before writing to it
+    private void own(int c) {
+        if (shared[c]) {
+            ids[c] = ids[c].clone();
+            days[c] = days[c].clone();
+            amounts[c] = amounts[c].clone();
+            cats[c] = cats[c].clone();
+            descStart[c] = descStart[c].clone();
+            descLen[c] = descLen[c].clone();
+            shared[c] = false;
+        }
+    }
+
+    // grows by whole chunks, laying the ring out from slot 0 in fresh (unshared) chunks
+    private void ensureCapacity(int n) {
+        if (n <= capacity) return;
+        int chunks = (int) Math.min((Integer.MAX_VALUE - 8) >>> SHIFT, Math.max((n + MASK) >>> SHIFT, ids.length * 2L));
+        long[][] nIds = new long[chunks][CHUNK];
+        int[][] nDays = new int[chunks][CHUNK];
+        long[][] nAmounts = new long[chunks][CHUNK];
+        int[][] nCats = new int[chunks][CHUNK];
+        int[][] nStart = new int[chunks][CHUNK];
+        int[][] nLen = new int[chunks][CHUNK];
+        for (int r = 0; r < size; r++) {
+            int p = phys(r), c = p >>> SHIFT, i = p & MASK, tc = r >>> SHIFT, ti = r & MASK;
+            nIds[tc][ti] = ids[c][i];
+            nDays[tc][ti] = days[c][i];
+            nAmounts[tc][ti] = amounts[c][i];
+            nCats[tc][ti] = cats[c][i];
+            nStart[tc][ti] = descStart[c][i];
+            nLen[tc][ti] = descLen[c][i];
+        }
+        ids = nIds; days = nDays; amounts = nAmounts; cats = nCats; descStart = nStart; descLen = nLen;
+        shared = new boolean[chunks];
+        capacity = chunks << SHIFT;
+        head = 0;
+    }
+
+    private void growArena(int need) {
+        if (arenaGarbage > arenaUsed / 2) {
+            compactArena();
+            if (arenaUsed + need <= arena.length) return;
+        }
+        long cap = Math.max(arena.length * 2L, (long) arenaUsed + need);
+        if (cap > Integer.MAX_VALUE - 8) {
+            if ((long) arenaUsed + need > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("description arena full");
+            cap = Integer.MAX_VALUE - 8;
+        }
+        arena = Arrays.copyOf(arena, (int) cap);
+    }
+
+    private void compactArena() {
+        char[] next = new char[Math.max(1024, (arenaUsed - arenaGarbage) * 3 / 2)];
+        int used = 0;
+        for (int r = 0; r < size; r++) {
+            int p = phys(r), c = p >>> SHIFT, i = p & MASK;
+            own(c);
+            System.arraycopy(arena, descStart[c][i], next, used, descLen[c][i]);
+            descStart[c][i] = used;
+            used += descLen[c][i];
+        }
+        arena = next;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+}
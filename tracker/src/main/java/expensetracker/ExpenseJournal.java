@@ -0,0 +1,517 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static expensetracker.LedgerFormat.escapeCSV;
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.monthKey;
+import static expensetracker.LedgerFormat.parseDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.parseMinor;
+import static expensetracker.LedgerFormat.splitCSV;
+
+/*
+ * Append-only persistence over month partitions. expenses.months/ holds one snapshot per
+ * month (yyyy-MM.bin, see BinarySnapshot) as of the last compaction; every add/delete since
+ * then is a single CRC-guarded record in the journal:
+ *
+ *   <crc32 hex>,I,<id>,<date>,<category>,<amount>,<description>
+ *   <crc32 hex>,D,<id>,<date>
+ *   <crc32 hex>,C,<id>,<category>,<date>
+ *
+ * (records written before partitioning lack the trailing date). Category and description are
+ * quoted as in CSV when they hold a comma, quote or line break, so a record can span lines;
+ * records of older versions had commas in categories and line breaks blanked instead, and
+ * their descriptions are taken to the end of the line. The journal is also kept in
+ * memory as an overlay, so any month can be read back exactly from its partition plus the
+ * overlay. Recovery streams only the newest months and those the journal touched; the rest
+ * are reported by their partition summaries and read on demand with readMonth().
+ *
+ * Once the journal outgrows the partitions it touches it is rotated to
+ * expenses.journal.old and a background thread rewrites just those months (temp file +
+ * atomic move) before dropping it. Replay is idempotent, so recovery after a crash simply
+ * applies rotated journal and live journal on top of the partitions; a torn trailing record
+ * is truncated away. A single-file expenses.bin or expenses.csv from older versions is split
+ * into partitions on first start. An exclusive lock on expenses.journal.lock keeps a second
+ * process (the UI and a CLI import, say) out.
+ */
+class ExpenseJournal {
+    enum SyncMode {
+        NONE,         // leave flushing to the OS
+        EVERY_COMMIT, // force() once per commit (a whole bulk delete is one commit)
+        INTERVAL;     // force() at most once a second from the background thread
+
+        static SyncMode fromProperty(String v) {
+            if (v == null) return EVERY_COMMIT;
+            switch (v.trim().toLowerCase()) {
+                case "none": return NONE;
+                case "interval": return INTERVAL;
+                default: return EVERY_COMMIT;
+            }
+        }
+    }
+
+    static final String PARTITION_DIR = "expenses.months";
+    static final String SNAPSHOT_FILE = "expenses.bin"; // single-file ledger of older versions, migrated on first start
+    static final String CSV_FILE = "expenses.csv"; // older still, migrated the same way
+    static final String JOURNAL_FILE = "expenses.journal"; // mutations since last compaction
+    static final int EAGER_MONTHS = 3; // newest partitions streamed by recover()
+    private static final int MIN_COMPACT_RECORDS = 10_000;
+    private static final int NO_DAY = Integer.MIN_VALUE;
+
+    // Journal records not yet folded into the partitions.
+    private static final class Overlay {
+        final LinkedHashMap<Long, Expense> inserted = new LinkedHashMap<>();
+        final Set<Long> deleted = new HashSet<>();
+        final Map<Long, String> recategorized = new HashMap<>();
+        final Set<Integer> months = new HashSet<>(); // touched months, where the record says
+
+        void insert(Expense e) {
+            deleted.remove(e.id); // undoing a delete inserts the row again under its id
+            inserted.putIfAbsent(e.id, e);
+            months.add(monthKey(e.day));
+        }
+
+        void delete(long id, int day) {
+            inserted.remove(id);
+            deleted.add(id);
+            if (day != NO_DAY) months.add(monthKey(day));
+        }
+
+        void recategorize(long id, int day, String category) {
+            Expense e = inserted.get(id);
+            if (e != null) e.category = category;
+            else recategorized.put(id, category);
+            if (day != NO_DAY) months.add(monthKey(day));
+        }
+
+        /** One month's rows, oldest first, with this overlay applied; inserts go last. */
+        List<Expense> apply(List<Expense> rows, int month) {
+            List<Expense> out = new ArrayList<>(rows.size());
+            for (Expense e : rows) {
+                if (deleted.contains(e.id) || inserted.containsKey(e.id)) continue;
+                String cat = recategorized.get(e.id);
+                if (cat != null) e.category = cat;
+                out.add(e);
+            }
+            for (Expense e : inserted.values()) {
+                if (monthKey(e.day) != month) continue;
+                Expense copy = new Expense(e.day, e.category, e.amount, e.description);
+                copy.id = e.id;
+                out.add(copy);
+            }
+            return out;
+        }
+    }
+
+    private final Path partitions;
+    private final Path legacySnapshot;
+    private final Path legacyCsv;
+    private final Path journal;
+    private final Path rotated;
+    private final SyncMode syncMode;
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "expense-journal");
+        t.setDaemon(true);
+        return t;
+    });
+    private FileChannel channel;
+    private FileChannel lockChannel;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final TreeMap<Integer, BinarySnapshot.Summary> summaries = new TreeMap<>(); // partitions on disk
+    private Overlay live = new Overlay(), folding = new Overlay(); // journal, rotated journal
+    private int records;
+    private boolean dirty;
+    private boolean compacting;
+
+    ExpenseJournal(Path partitions, Path legacySnapshot, Path legacyCsv, Path journal, SyncMode syncMode) {
+        this.partitions = partitions;
+        this.legacySnapshot = legacySnapshot;
+        this.legacyCsv = legacyCsv;
+        this.journal = journal;
+        this.rotated = journal.resolveSibling(journal.getFileName() + ".old");
+        this.syncMode = syncMode;
+        if (syncMode == SyncMode.INTERVAL) {
+            background.scheduleWithFixedDelay(this::forceIfDirty, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /** The ledger kept under the standard file names in {@code dir}. */
+    static ExpenseJournal inDirectory(Path dir, SyncMode syncMode) {
+        return new ExpenseJournal(dir.resolve(PARTITION_DIR), dir.resolve(SNAPSHOT_FILE), dir.resolve(CSV_FILE),
+                dir.resolve(JOURNAL_FILE), syncMode);
+    }
+
+    /**
+     * Streams the newest {@value #EAGER_MONTHS} months, and every month the journal touched,
+     * to the sink newest month first (rows newest first within a month), hands the summary of
+     * each remaining partition to {@code cold}, and opens the journal for appending.
+     * @return number of rows streamed
+     */
+    synchronized int recover(Consumer<List<Expense>> sink, Consumer<BinarySnapshot.Summary> cold) throws IOException {
+        lock();
+        boolean interrupted = Files.exists(rotated);
+        if (interrupted) replay(rotated, folding);
+        records = replay(journal, live);
+        if (!Files.isDirectory(partitions)) migrate();
+        loadSummaries();
+
+        long maxId = 0;
+        for (BinarySnapshot.Summary s : summaries.values()) maxId = Math.max(maxId, s.maxId);
+        for (Overlay o : Arrays.asList(folding, live)) for (long id : o.inserted.keySet()) maxId = Math.max(maxId, id);
+        nextId.accumulateAndGet(maxId + 1, Math::max);
+
+        // months read now: their totals come from the rows, since the journal may have changed them
+        TreeSet<Integer> eager = new TreeSet<>(Comparator.reverseOrder());
+        for (Integer m : summaries.descendingKeySet()) {
+            if (eager.size() == EAGER_MONTHS) break;
+            eager.add(m);
+        }
+        eager.addAll(folding.months);
+        eager.addAll(live.months);
+        int emitted = 0;
+        for (int m : eager) {
+            List<Expense> rows = readMonthLocked(m);
+            for (int to = 0; to < rows.size(); to += 1 << 16) {
+                sink.accept(new ArrayList<>(rows.subList(to, Math.min(rows.size(), to + (1 << 16)))));
+            }
+            emitted += rows.size();
+        }
+        for (BinarySnapshot.Summary s : summaries.descendingMap().values()) {
+            if (!eager.contains(s.month)) cold.accept(s);
+        }
+        if (interrupted) {
+            compacting = true;
+            background.execute(this::compact);
+        }
+        channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return emitted;
+    }
+
+    /** Every row of one month as it stands now, newest first. Safe from any thread. */
+    synchronized List<Expense> readMonth(int month) throws IOException {
+        return readMonthLocked(month);
+    }
+
+    private List<Expense> readMonthLocked(int month) throws IOException {
+        List<Expense> rows = new ArrayList<>();
+        if (summaries.containsKey(month)) BinarySnapshot.read(partitionFile(month), false, rows::addAll);
+        rows = live.apply(folding.apply(rows, month), month);
+        Collections.reverse(rows);
+        return rows;
+    }
+
+    long allocateId() {
+        return nextId.getAndIncrement();
+    }
+
+    synchronized void appendInsert(Expense e) throws IOException {
+        if (e.id == 0) e.id = allocateId();
+        append("I," + e.id + "," + formatDay(e.day) + "," + escapeCSV(e.category) + ","
+                + formatMinor(e.amount) + "," + escapeCSV(e.description));
+        live.insert(e);
+    }
+
+    synchronized void appendDelete(long id, int day) throws IOException {
+        append("D," + id + "," + formatDay(day));
+        live.delete(id, day);
+    }
+
+    synchronized void appendRecategorize(long id, int day, String category) throws IOException {
+        append("C," + id + "," + escapeCSV(category) + "," + formatDay(day));
+        live.recategorize(id, day, category);
+    }
+
+    /**
+     * Makes the appended records durable according to the sync mode and, when the journal
+     * has grown past the rows of the partitions it would rewrite, hands a compaction to the
+     * background thread.
+     */
+    synchronized void commit() throws IOException {
+        if (channel == null) return;
+        if (syncMode == SyncMode.EVERY_COMMIT && dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+        if (compacting || records < MIN_COMPACT_RECORDS) return;
+        long rewrite = 0;
+        for (int m : live.months) {
+            BinarySnapshot.Summary s = summaries.get(m);
+            if (s != null) rewrite += s.rows;
+        }
+        if (records < rewrite) return;
+        rotate();
+        compacting = true;
+        background.execute(this::compact);
+    }
+
+    synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+        if (lockChannel != null) {
+            lockChannel.close(); // releases the lock
+            lockChannel = null;
+        }
+    }
+
+    private void lock() throws IOException {
+        if (lockChannel != null) return;
+        FileChannel ch = FileChannel.open(journal.resolveSibling(journal.getFileName() + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (ch.tryLock() == null) throw new IOException(journal + " is in use by another process");
+        } catch (OverlappingFileLockException e) {
+            ch.close();
+            throw new IOException(journal + " is already open in this process");
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        lockChannel = ch;
+    }
+
+    private void append(String payload) throws IOException {
+        if (channel == null) throw new IOException("journal not open");
+        CRC32 crc = new CRC32();
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        crc.update(body);
+        byte[] prefix = String.format("%08x,", crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buf = ByteBuffer.allocate(prefix.length + body.length + 1);
+        buf.put(prefix).put(body).put((byte) '\n').flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        records++;
+        dirty = true;
+    }
+
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        Files.move(journal, rotated, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        folding = live;
+        live = new Overlay();
+        records = 0;
+        dirty = false;
+    }
+
+    // Rewrites the months the rotated journal touched. Readers keep seeing the old files plus
+    // both overlays until the new files and the dropped overlay swap in under the lock.
+    private void compact() {
+        Overlay fold;
+        synchronized (this) { fold = folding; }
+        try (Metrics.Span span = Metrics.span("compact")) {
+            Map<Integer, BinarySnapshot.Summary> written = new TreeMap<>();
+            long total = 0;
+            for (int m : fold.months) {
+                List<Expense> rows = new ArrayList<>();
+                if (Files.exists(partitionFile(m))) BinarySnapshot.read(partitionFile(m), false, rows::addAll);
+                rows = fold.apply(rows, m);
+                written.put(m, rows.isEmpty() ? null : BinarySnapshot.writePartition(tempFile(m), m, rows));
+                total += rows.size();
+            }
+            span.rows(total);
+            synchronized (this) {
+                for (Map.Entry<Integer, BinarySnapshot.Summary> w : written.entrySet()) {
+                    int m = w.getKey();
+                    if (w.getValue() == null) {
+                        Files.deleteIfExists(partitionFile(m));
+                        summaries.remove(m);
+                    } else {
+                        Files.move(tempFile(m), partitionFile(m), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        summaries.put(m, w.getValue());
+                    }
+                }
+                Files.deleteIfExists(rotated);
+                folding = new Overlay();
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // rotated journal stays; next startup folds it in
+        } finally {
+            synchronized (this) { compacting = false; }
+        }
+    }
+
+    // Splits a single-file ledger of an older version, with both journals applied, into
+    // partitions. They are written to a temporary directory that is renamed into place.
+    private void migrate() throws IOException {
+        Path tmp = partitions.resolveSibling(partitions.getFileName() + ".tmp");
+        if (Files.isDirectory(tmp)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(tmp)) {
+                for (Path f : files) Files.delete(f);
+            }
+        }
+        Files.createDirectories(tmp);
+        Path legacy = Files.exists(legacySnapshot) ? legacySnapshot : Files.exists(legacyCsv) ? legacyCsv : null;
+        TreeMap<Integer, List<Expense>> byMonth = new TreeMap<>();
+        Consumer<List<Expense>> collect = batch -> {
+            for (Expense e : batch) byMonth.computeIfAbsent(monthKey(e.day), k -> new ArrayList<>()).add(e);
+        };
+        if (legacy == legacySnapshot) BinarySnapshot.read(legacySnapshot, false, collect);
+        else if (legacy != null) CsvLoader.read(legacyCsv, false, collect);
+        // journals written before partitioning may lack dates, so fold them in now
+        for (Overlay o : Arrays.asList(folding, live)) {
+            for (Expense e : o.inserted.values()) byMonth.computeIfAbsent(monthKey(e.day), k -> new ArrayList<>());
+        }
+        for (Map.Entry<Integer, List<Expense>> m : byMonth.entrySet()) {
+            List<Expense> rows = live.apply(folding.apply(m.getValue(), m.getKey()), m.getKey());
+            if (!rows.isEmpty()) BinarySnapshot.writePartition(tmp.resolve(partitionName(m.getKey())), m.getKey(), rows);
+        }
+        Files.move(tmp, partitions, StandardCopyOption.ATOMIC_MOVE);
+        // kept as a backup; once the partitions exist the old files are no longer read
+        if (legacy != null) Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void loadSummaries() throws IOException {
+        summaries.clear();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(partitions)) {
+            for (Path f : dir) files.add(f);
+        }
+        for (Path f : files) {
+            String name = f.getFileName().toString();
+            if (name.endsWith(".tmp")) Files.deleteIfExists(f); // from an interrupted compaction
+            else if (name.endsWith(".bin")) {
+                BinarySnapshot.Summary s = BinarySnapshot.readSummary(f);
+                if (s.daily == null) s = upgrade(s.month); // written before the daily rollups
+                summaries.put(s.month, s);
+            }
+        }
+    }
+
+    private BinarySnapshot.Summary upgrade(int month) throws IOException {
+        List<Expense> rows = new ArrayList<>();
+        BinarySnapshot.read(partitionFile(month), false, rows::addAll);
+        BinarySnapshot.Summary s = BinarySnapshot.writePartition(tempFile(month), month, rows);
+        Files.move(tempFile(month), partitionFile(month), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return s;
+    }
+
+    private static String partitionName(int month) {
+        return formatDay(firstDayOfMonth(month)).substring(0, 7) + ".bin";
+    }
+
+    private Path partitionFile(int month) { return partitions.resolve(partitionName(month)); }
+
+    private Path tempFile(int month) { return partitions.resolve(partitionName(month) + ".tmp"); }
+
+    private synchronized void forceIfDirty() {
+        try {
+            if (channel != null && dirty) {
+                channel.force(false);
+                dirty = false;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Applies a journal to an overlay. Truncates a torn tail.
+     * @return records applied
+     */
+    private int replay(Path file, Overlay into) throws IOException {
+        if (!Files.exists(file)) return 0;
+        byte[] data = Files.readAllBytes(file);
+        int applied = 0, pos = 0;
+        while (pos < data.length) {
+            int nl = lineEnd(data, pos);
+            int quotes = quotes(data, pos, nl);
+            // a quoted field may hold line breaks: while a quote is open and the CRC does not
+            // match yet, the record goes on to the next line
+            while ((quotes & 1) == 1 && nl < data.length && !crcMatches(data, pos, nl)) {
+                int next = lineEnd(data, nl + 1);
+                quotes += quotes(data, nl, next);
+                nl = next;
+            }
+            if (nl == data.length || !applyRecord(data, pos, nl, into)) break;
+            applied++;
+            pos = nl + 1;
+        }
+        if (pos < data.length) {
+            System.err.println("Journal " + file + ": discarding torn tail at byte " + pos);
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                fc.truncate(pos);
+            }
+        }
+        return applied;
+    }
+
+    private static int lineEnd(byte[] data, int from) {
+        int nl = from;
+        while (nl < data.length && data[nl] != '\n') nl++;
+        return nl;
+    }
+
+    private static int quotes(byte[] data, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) if (data[i] == '"') n++;
+        return n;
+    }
+
+    private static boolean crcMatches(byte[] data, int from, int to) {
+        if (to - from < 10 || data[from + 8] != ',') return false;
+        CRC32 crc = new CRC32();
+        crc.update(data, from + 9, to - from - 9);
+        try {
+            return Long.parseLong(new String(data, from, 8, StandardCharsets.US_ASCII), 16) == crc.getValue();
+        } catch (NumberFormatException bad) {
+            return false;
+        }
+    }
+
+    private boolean applyRecord(byte[] data, int from, int to, Overlay into) {
+        if (!crcMatches(data, from, to)) return false;
+        String payload = new String(data, from + 9, to - from - 9, StandardCharsets.UTF_8);
+        try {
+            if (payload.startsWith("I,")) {
+                String[] parts = splitCSV(payload, 6);
+                Expense e = parseFields(parts, 2);
+                if (e == null) return false;
+                e.id = Long.parseLong(parts[1]);
+                into.insert(e);
+            } else if (payload.startsWith("D,")) {
+                String[] parts = payload.split(",", 3);
+                into.delete(Long.parseLong(parts[1]), parts.length == 3 ? parseDay(parts[2]) : NO_DAY);
+            } else if (payload.startsWith("C,")) {
+                String[] parts = splitCSV(payload, 4);
+                if (parts.length < 3) return false;
+                into.recategorize(Long.parseLong(parts[1]), parts.length == 4 ? parseDay(parts[3]) : NO_DAY, parts[2]);
+            } else {
+                return false;
+            }
+            return true;
+        } catch (ParseException | NumberFormatException bad) {
+            return false;
+        }
+    }
+
+    private Expense parseFields(String[] parts, int off) throws ParseException {
+        if (parts.length < off + 3) return null;
+        int day = parseDay(parts[off]);
+        long amt = parseMinor(parts[off + 2]);
+        String desc = parts.length == off + 4 ? parts[off + 3] : "";
+        return new Expense(day, parts[off + 1], amt, desc);
+    }
+}
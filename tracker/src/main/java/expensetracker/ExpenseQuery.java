@@ -0,0 +1,334 @@
+package expensetracker;
+
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Ad-hoc group-by over a snapshot of the rows: filter by day range, categories, amount
+ * range and description text, group by category, month or weekday, and get count, sum,
+ * average, min, max and optionally exact percentiles per group. The snapshot is split
+ * into row ranges that a ForkJoinPool scans in parallel, each into its own group table;
+ * the tables are merged pairwise as the tasks join, so no state is shared while scanning.
+ * Rows of months still on disk can be passed alongside, as the export does.
+ */
+class ExpenseQuery {
+    private static final int LEAF_ROWS = 1 << 16;
+    static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    enum GroupBy {
+        NONE("All"), CATEGORY("Category"), MONTH("Month"), WEEKDAY("Weekday");
+
+        final String label;
+        GroupBy(String label) { this.label = label; }
+
+        @Override
+        public String toString() { return label; }
+    }
+
+    /** One group's figures; amounts in minor units. */
+    static final class Row {
+        final String group;
+        final long count, sum, min, max;
+        final long[] percentiles; // parallel to PERCENTILES, null unless asked for
+
+        Row(String group, long count, long sum, long min, long max, long[] percentiles) {
+            this.group = group; this.count = count; this.sum = sum; this.min = min; this.max = max; this.percentiles = percentiles;
+        }
+
+        long average() { return count == 0 ? 0 : Math.round((double) sum / count); }
+    }
+
+    static final class Result {
+        final List<Row> rows;
+        final long scanned, matched, micros;
+        Result(List<Row> rows, long scanned, long matched, long micros) {
+            this.rows = rows; this.scanned = scanned; this.matched = matched; this.micros = micros;
+        }
+    }
+
+    int fromDay = Integer.MIN_VALUE, toDay = Integer.MAX_VALUE; // inclusive
+    long minAmount = Long.MIN_VALUE, maxAmount = Long.MAX_VALUE; // inclusive, minor units
+    Set<String> categories; // null for all
+    String text = ""; // case-insensitive substring of the description
+    GroupBy groupBy = GroupBy.CATEGORY;
+    boolean percentiles;
+
+    /** Runs on {@code pool}; {@code diskRows} are extra rows not in the snapshot. */
+    Result run(ExpenseColumns.Snapshot snapshot, List<List<Expense>> diskRows, ForkJoinPool pool) {
+        long t0 = System.nanoTime();
+        try (Metrics.Span span = Metrics.span("query")) {
+            Plan plan = new Plan(snapshot, diskRows);
+            Groups all = pool.invoke(new Scan(plan, 0, snapshot.size()));
+            for (List<Expense> batch : diskRows) all.merge(plan.scan(batch));
+            long scanned = snapshot.size();
+            for (List<Expense> batch : diskRows) scanned += batch.size();
+            span.rows(scanned);
+            return new Result(all.rows(plan, groupBy == GroupBy.CATEGORY), scanned, all.matched, (System.nanoTime() - t0) / 1000);
+        }
+    }
+
+    // what a scan needs, resolved once: category ids in place of names, the needle folded
+    private final class Plan {
+        final ExpenseColumns.Snapshot snapshot;
+        final List<String> names = new ArrayList<>(); // query category ids: the snapshot's, then new ones from disk
+        final Map<String, Integer> ids = new HashMap<>();
+        final BitSet wanted; // by query category id; null for all
+        final String needle;
+
+        Plan(ExpenseColumns.Snapshot snapshot, List<List<Expense>> diskRows) {
+            this.snapshot = snapshot;
+            for (int c = 0; c < snapshot.categoryCount(); c++) id(snapshot.categoryName(c));
+            for (List<Expense> batch : diskRows) for (Expense e : batch) id(e.category);
+            if (categories == null) {
+                wanted = null;
+            } else {
+                wanted = new BitSet();
+                for (String c : categories) if (ids.containsKey(c)) wanted.set(ids.get(c));
+            }
+            needle = fold(text);
+        }
+
+        private int id(String name) {
+            return ids.computeIfAbsent(name, k -> {
+                names.add(k);
+                return names.size() - 1;
+            });
+        }
+
+        int key(int day, int category) {
+            switch (groupBy) {
+                case CATEGORY: return category;
+                case MONTH: return monthKey(day);
+                case WEEKDAY: return Math.floorMod(day + 3, 7); // Monday = 0; epoch day 0 is a Thursday
+                default: return 0;
+            }
+        }
+
+        String label(int key) {
+            switch (groupBy) {
+                case CATEGORY: return names.get(key);
+                case MONTH: return formatDay(firstDayOfMonth(key)).substring(0, 7);
+                case WEEKDAY: return DayOfWeek.of(key + 1).getDisplayName(TextStyle.SHORT, Locale.getDefault());
+                default: return "All";
+            }
+        }
+
+        Groups scan(int from, int to) {
+            Groups g = new Groups(percentiles);
+            for (int r = from; r < to; r++) {
+                int day = snapshot.day(r);
+                if (day < fromDay || day > toDay) continue;
+                long amount = snapshot.amount(r);
+                if (amount < minAmount || amount > maxAmount) continue;
+                int cat = snapshot.categoryId(r); // the plan keeps snapshot ids as they are
+                if (wanted != null && !wanted.get(cat)) continue;
+                if (!needle.isEmpty() && !snapshot.descriptionContains(r, needle)) continue;
+                g.add(key(day, cat), amount);
+            }
+            return g;
+        }
+
+        Groups scan(List<Expense> batch) {
+            Groups g = new Groups(percentiles);
+            for (Expense e : batch) {
+                if (e.day < fromDay || e.day > toDay || e.amount < minAmount || e.amount > maxAmount) continue;
+                int cat = ids.get(e.category);
+                if (wanted != null && !wanted.get(cat)) continue;
+                if (!needle.isEmpty() && !fold(e.description).contains(needle)) continue;
+                g.add(key(e.day, cat), e.amount);
+            }
+            return g;
+        }
+    }
+
+    private static String fold(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) sb.append(ExpenseColumns.Snapshot.fold(s.charAt(i)));
+        return sb.toString();
+    }
+
+    private final class Scan extends RecursiveTask<Groups> {
+        private static final long serialVersionUID = 1L;
+        private final Plan plan;
+        private final int from, to;
+
+        Scan(Plan plan, int from, int to) { this.plan = plan; this.from = from; this.to = to; }
+
+        @Override
+        protected Groups compute() {
+            if (to - from <= LEAF_ROWS) return plan.scan(from, to);
+            int mid = (from + to) >>> 1;
+            Scan right = new Scan(plan, mid, to);
+            right.fork();
+            Groups left = new Scan(plan, from, mid).compute();
+            left.merge(right.join());
+            return left;
+        }
+    }
+
+    // per-group accumulators in arrays indexed by key - base, grown either way as keys appear
+    private static final class Groups {
+        private final boolean keepValues;
+        private int base;
+        private long[] count = new long[0], sum = new long[0], min = new long[0], max = new long[0];
+        // amounts per group when percentiles are wanted, in blocks so merging never copies them;
+        // every block is full except the last, which holds fill[group]
+        private List<long[]>[] values = newValues(0);
+        private int[] fill = new int[0];
+        long matched;
+
+        Groups(boolean keepValues) { this.keepValues = keepValues; }
+
+        void add(int key, long amount) {
+            int i = slot(key);
+            if (count[i]++ == 0) {
+                min[i] = max[i] = amount;
+            } else {
+                min[i] = Math.min(min[i], amount);
+                max[i] = Math.max(max[i], amount);
+            }
+            sum[i] += amount;
+            matched++;
+            if (keepValues) {
+                long[] last = values[i] == null ? null : values[i].get(values[i].size() - 1);
+                if (last == null || fill[i] == last.length) {
+                    if (values[i] == null) values[i] = new ArrayList<>();
+                    values[i].add(last = new long[last == null ? 64 : Math.min(last.length * 2, 1 << 16)]);
+                    fill[i] = 0;
+                }
+                last[fill[i]++] = amount;
+            }
+        }
+
+        void merge(Groups o) {
+            for (int j = 0; j < o.count.length; j++) {
+                if (o.count[j] == 0) continue;
+                int i = slot(o.base + j);
+                if (count[i] == 0) {
+                    min[i] = o.min[j];
+                    max[i] = o.max[j];
+                } else {
+                    min[i] = Math.min(min[i], o.min[j]);
+                    max[i] = Math.max(max[i], o.max[j]);
+                }
+                count[i] += o.count[j];
+                sum[i] += o.sum[j];
+                if (keepValues) { // the other side's blocks go first, so this side's open block stays last
+                    List<long[]> blocks = new ArrayList<>(o.values[j]);
+                    int lastFill = o.fill[j];
+                    if (values[i] != null) {
+                        trimLast(blocks, lastFill);
+                        blocks.addAll(values[i]);
+                        lastFill = fill[i];
+                    }
+                    values[i] = blocks;
+                    fill[i] = lastFill;
+                }
+            }
+            matched += o.matched;
+        }
+
+        // groups in key order, or by name when the keys are dictionary ids
+        List<Row> rows(Plan plan, boolean byName) {
+            List<Row> out = new ArrayList<>();
+            for (int i = 0; i < count.length; i++) {
+                if (count[i] == 0) continue;
+                long[] pct = null;
+                if (keepValues) {
+                    long[] v = new long[(int) count[i]];
+                    int n = 0;
+                    for (int b = 0; b < values[i].size(); b++) {
+                        long[] block = values[i].get(b);
+                        int len = b == values[i].size() - 1 ? fill[i] : block.length;
+                        System.arraycopy(block, 0, v, n, len);
+                        n += len;
+                    }
+                    pct = new long[PERCENTILES.length];
+                    for (int q = 0, from = 0; q < pct.length; q++) { // ascending ranks, each above the last
+                        int rank = (int) Math.max(0, Math.ceil(PERCENTILES[q] * v.length) - 1);
+                        pct[q] = select(v, from, v.length, rank);
+                        from = rank;
+                    }
+                }
+                out.add(new Row(plan.label(base + i), count[i], sum[i], min[i], max[i], pct));
+            }
+            if (byName) out.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.group, b.group));
+            return out;
+        }
+
+        private int slot(int key) {
+            if (count.length == 0) {
+                base = key;
+                grow(0, 1);
+            } else if (key < base) {
+                grow(base - key, count.length + base - key);
+                base = key;
+            } else if (key - base >= count.length) {
+                grow(0, Math.max(key - base + 1, count.length * 2));
+            }
+            return key - base;
+        }
+
+        private void grow(int shift, int length) {
+            count = shifted(count, shift, length);
+            sum = shifted(sum, shift, length);
+            min = shifted(min, shift, length);
+            max = shifted(max, shift, length);
+            if (keepValues) {
+                List<long[]>[] v = newValues(length);
+                System.arraycopy(values, 0, v, shift, values.length);
+                values = v;
+                int[] n = new int[length];
+                System.arraycopy(fill, 0, n, shift, fill.length);
+                fill = n;
+            }
+        }
+
+        // nearest-rank value k of v[from, to) without sorting: quickselect, median of three pivots;
+        // leaves v[k, to) holding the values at and above it
+        private static long select(long[] v, int from, int to, int k) {
+            int lo = from, hi = to - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long a = v[lo], b = v[mid], c = v[hi];
+                long pivot = a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (v[i] < pivot) i++;
+                    while (v[j] > pivot) j--;
+                    if (i <= j) {
+                        long t = v[i]; v[i] = v[j]; v[j] = t;
+                        i++;
+                        j--;
+                    }
+                }
+                if (k <= j) hi = j;
+                else if (k >= i) lo = i;
+                else return v[k];
+            }
+            return v[k];
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<long[]>[] newValues(int length) { return (List<long[]>[]) new List<?>[length]; }
+
+        // a part-filled last block cannot sit in the middle of a list, so it is cut to size
+        private static void trimLast(List<long[]> blocks, int fill) {
+            long[] last = blocks.get(blocks.size() - 1);
+            if (fill < last.length) blocks.set(blocks.size() - 1, Arrays.copyOf(last, fill));
+        }
+
+        private static long[] shifted(long[] a, int shift, int length) {
+            long[] out = new long[length];
+            System.arraycopy(a, 0, out, shift, a.length);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package expensetracker;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.monthKey;
+import static expensetracker.LedgerFormat.parseDay;
+
+/*
+ * Serves an ExpenseStore over HTTP on the loopback interface, so several UI windows and
+ * scripts can share one ledger (ExpenseCli "serve"; RemoteLedger is the UI's side).
+ *
+ *   GET    /expenses?from=&to=&category=&limit=   rows, newest first
+ *   POST   /expenses                  one expense object or an array; 201 with the stored rows
+ *   PATCH  /expenses                  {"ids":[...],"category":"..."}
+ *   DELETE /expenses                  {"ids":[...]}, or DELETE /expenses/{id}
+ *   POST   /ids?count=N               reserves ids: {"first":..,"count":..}
+ *   GET    /changes?since=V           changes after version V, except the caller's own
+ *   GET    /summary?month=yyyy-MM     count and total, overall and per category
+ *
+ * Every request must carry "Authorization: Bearer TOKEN" with the token serve prints, and
+ * bodies must be application/json; a request from a web page (an Origin header that is not
+ * loopback) is refused outright, so a site open in a browser cannot write to the ledger.
+ *
+ * Each request runs on its own virtual thread when the runtime has them, otherwise on a
+ * fixed pool. Reads work on one snapshot of the store and never wait for a writer. Every
+ * response carries the ledger version it saw in X-Ledger-Version; callers name themselves
+ * with X-Client so /changes can leave out their own edits.
+ */
+class ExpenseServer {
+    static final String VERSION_HEADER = "X-Ledger-Version";
+    static final String CLIENT_HEADER = "X-Client";
+    private static final int MAX_BODY = 64 << 20;
+    private static final int MAX_IDS = 1_000_000;
+
+    static {
+        // the JDK server writes headers and body separately; with Nagle on, a keep-alive
+        // client waits out its delayed ACK (~40 ms) on every response
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ExpenseStore store;
+    private final byte[] token;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    /**
+     * @param token what clients must send as a bearer token
+     * @param threads pool size when virtual threads are unavailable
+     */
+    ExpenseServer(ExpenseStore store, int port, String token, int threads) throws IOException {
+        this.store = store;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.executor = requestExecutor(threads);
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        http.setExecutor(executor);
+        http.createContext("/expenses", ex -> handle(ex, this::expenses));
+        http.createContext("/ids", ex -> handle(ex, this::ids));
+        http.createContext("/changes", ex -> handle(ex, this::changes));
+        http.createContext("/summary", ex -> handle(ex, this::summary));
+    }
+
+    void start() { http.start(); }
+
+    int port() { return http.getAddress().getPort(); }
+
+    /** Stops accepting, gives requests in flight a moment, then stops. */
+    void stop() {
+        http.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** A random token for serve to print when none is given. */
+    static String newToken() {
+        byte[] b = new byte[18];
+        new SecureRandom().nextBytes(b);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+    }
+
+    static boolean virtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is Java 21; the build targets 17
+    private static ExecutorService requestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "expense-server");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private static final class Reply {
+        final int status;
+        final String body;
+        final long version;
+        int rows; // stored, listed or changed, for the request's span
+        Reply(int status, String body, long version) { this.status = status; this.body = body; this.version = version; }
+
+        Reply rows(int n) {
+            rows = n;
+            return this;
+        }
+    }
+
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Route {
+        Reply serve(HttpExchange ex) throws IOException, HttpError;
+    }
+
+    private void handle(HttpExchange ex, Route route) throws IOException {
+        Reply reply;
+        try (Metrics.Span span = Metrics.span("http " + ex.getRequestMethod())) {
+            try {
+                admit(ex);
+                reply = route.serve(ex);
+            } catch (HttpError e) {
+                reply = error(e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                reply = error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                reply = error(500, String.valueOf(e));
+            }
+            span.rows(reply.rows);
+        }
+        byte[] bytes = reply.body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.getResponseHeaders().set(VERSION_HEADER, Long.toString(reply.version));
+        ex.sendResponseHeaders(reply.status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void admit(HttpExchange ex) throws HttpError {
+        String origin = ex.getRequestHeaders().getFirst("Origin");
+        if (origin != null && !loopback(origin)) throw new HttpError(403, "requests from " + origin + " are not allowed");
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        byte[] given = auth != null && auth.startsWith("Bearer ") ? auth.substring(7).trim().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (!MessageDigest.isEqual(given, token)) throw new HttpError(401, "missing or wrong token");
+    }
+
+    private static boolean loopback(String origin) {
+        try {
+            String host = URI.create(origin).getHost();
+            return host != null && (host.equals("localhost") || host.equals("127.0.0.1") || host.equals("[::1]"));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Reply error(int status, String message) {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        Json.quote(sb, message == null ? "" : message);
+        return new Reply(status, sb.append("}\n").toString(), store.snapshot().version);
+    }
+
+    private Reply expenses(HttpExchange ex) throws IOException, HttpError {
+        String path = ex.getRequestURI().getPath();
+        String origin = ex.getRequestHeaders().getFirst(CLIENT_HEADER);
+        if (!path.equals("/expenses")) {
+            String id = path.startsWith("/expenses/") ? path.substring("/expenses/".length()) : "";
+            if (!ex.getRequestMethod().equals("DELETE") || !id.matches("[0-9]{1,18}")) throw new HttpError(404, "no such resource " + path);
+            int n = store.delete(new long[]{Long.parseLong(id)}, origin);
+            if (n == 0) throw new HttpError(404, "no expense " + id);
+            return count(n);
+        }
+        switch (ex.getRequestMethod()) {
+            case "GET": return list(query(ex.getRequestURI()));
+            case "POST": {
+                Object json = Json.parse(body(ex));
+                List<Expense> batch = new ArrayList<>();
+                if (json instanceof List) for (Object o : (List<?>) json) batch.add(Json.readExpense(o));
+                else batch.add(Json.readExpense(json));
+                List<Expense> stored = store.add(batch, origin);
+                StringBuilder sb = new StringBuilder(stored.size() * 100);
+                writeRows(sb, stored);
+                return new Reply(201, sb.toString(), store.snapshot().version).rows(stored.size());
+            }
+            case "PATCH": {
+                Map<?, ?> o = Json.object(Json.parse(body(ex)));
+                String category = Json.string(o, "category").trim();
+                if (category.isEmpty()) throw new IllegalArgumentException("empty category");
+                return count(store.recategorize(Json.longs(o.get("ids"), "ids"), category, origin));
+            }
+            case "DELETE":
+                return count(store.delete(Json.longs(Json.object(Json.parse(body(ex))).get("ids"), "ids"), origin));
+            default: throw new HttpError(405, ex.getRequestMethod() + " not allowed on /expenses");
+        }
+    }
+
+    private Reply list(Map<String, String> q) {
+        int from = day(q, "from", Integer.MIN_VALUE), to = day(q, "to", Integer.MAX_VALUE);
+        String category = q.get("category");
+        int limit = q.containsKey("limit") ? Integer.parseInt(q.get("limit")) : Integer.MAX_VALUE;
+        if (limit < 1) throw new IllegalArgumentException("limit must be 1 or more");
+        ExpenseStore.Snapshot snap = store.snapshot();
+        List<Expense> rows = new ArrayList<>();
+        snap.forEachNewestFirst(from, to, e -> {
+            if (category == null || category.equals(e.category)) rows.add(e);
+            return rows.size() < limit;
+        });
+        StringBuilder sb = new StringBuilder(rows.size() * 100 + 16);
+        writeRows(sb, rows);
+        return new Reply(200, sb.toString(), snap.version).rows(rows.size());
+    }
+
+    private Reply ids(HttpExchange ex) throws HttpError {
+        if (!ex.getRequestMethod().equals("POST")) throw new HttpError(405, ex.getRequestMethod() + " not allowed on /ids");
+        String n = query(ex.getRequestURI()).getOrDefault("count", "1");
+        int count = Integer.parseInt(n);
+        if (count < 1 || count > MAX_IDS) throw new IllegalArgumentException("count must be 1.." + MAX_IDS);
+        // ids are handed out one at a time; a block is consecutive only while nobody else allocates
+        long first = store.allocateId();
+        long last = first;
+        for (int i = 1; i < count; i++) {
+            long id = store.allocateId();
+            if (id != last + 1) {
+                count = i;
+                break;
+            }
+            last = id;
+        }
+        return new Reply(200, "{\"first\":" + first + ",\"count\":" + count + "}\n", store.snapshot().version);
+    }
+
+    private Reply changes(HttpExchange ex) throws HttpError {
+        if (!ex.getRequestMethod().equals("GET")) throw new HttpError(405, ex.getRequestMethod() + " not allowed on /changes");
+        long since = Long.parseLong(query(ex.getRequestURI()).getOrDefault("since", "0"));
+        String origin = ex.getRequestHeaders().getFirst(CLIENT_HEADER);
+        ExpenseStore.Snapshot snap = store.snapshot();
+        List<ExpenseStore.Change> changes = snap.changesSince(since);
+        if (changes == null) throw new HttpError(410, "version " + since + " is too old; reload");
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"epoch\":").append(store.epoch).append(",\"version\":").append(snap.version).append(",\"changes\":[");
+        boolean first = true;
+        for (ExpenseStore.Change c : changes) {
+            if (origin != null && origin.equals(c.origin)) continue;
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("\n{\"version\":").append(c.version).append(",\"kind\":\"").append(c.kind).append('"');
+            if (c.inserted != null) {
+                sb.append(",\"rows\":");
+                writeRows(sb, c.inserted);
+                sb.setLength(sb.length() - 1); // writeRows' trailing newline
+            }
+            if (c.ids != null) {
+                sb.append(",\"ids\":[");
+                for (int i = 0; i < c.ids.length; i++) sb.append(i == 0 ? "" : ",").append(c.ids[i]);
+                sb.append(']');
+            }
+            if (c.category != null) {
+                sb.append(",\"category\":");
+                Json.quote(sb, c.category);
+            }
+            sb.append('}');
+        }
+        return new Reply(200, sb.append("]}\n").toString(), snap.version);
+    }
+
+    private Reply summary(HttpExchange ex) throws HttpError {
+        if (!ex.getRequestMethod().equals("GET")) throw new HttpError(405, ex.getRequestMethod() + " not allowed on /summary");
+        String month = query(ex.getRequestURI()).get("month");
+        int from = Integer.MIN_VALUE, to = Integer.MAX_VALUE;
+        if (month != null) {
+            try {
+                from = parseDay(month + "-01");
+            } catch (ParseException e) {
+                throw new IllegalArgumentException("month must be yyyy-MM");
+            }
+            to = firstDayOfMonth(monthKey(from) + 1) - 1;
+        }
+        ExpenseStore.Snapshot snap = store.snapshot();
+        long[] all = new long[2];
+        Map<String, long[]> byCategory = new TreeMap<>();
+        snap.forEachNewestFirst(from, to, e -> {
+            long[] c = byCategory.computeIfAbsent(e.category, k -> new long[2]);
+            c[0]++;
+            c[1] += e.amount;
+            all[0]++;
+            all[1] += e.amount;
+            return true;
+        });
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"month\":");
+        if (month == null) sb.append("null");
+        else Json.quote(sb, formatDay(from).substring(0, 7));
+        sb.append(",\"count\":").append(all[0]).append(",\"total\":").append(formatMinor(all[1])).append(",\"categories\":{");
+        boolean first = true;
+        for (Map.Entry<String, long[]> c : byCategory.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            Json.quote(sb, c.getKey());
+            sb.append(":{\"count\":").append(c.getValue()[0]).append(",\"total\":").append(formatMinor(c.getValue()[1])).append('}');
+        }
+        return new Reply(200, sb.append("}}\n").toString(), snap.version);
+    }
+
+    private Reply count(int n) {
+        return new Reply(200, "{\"count\":" + n + "}\n", store.snapshot().version).rows(n);
+    }
+
+    // a JSON array with one row per line
+    private static void writeRows(StringBuilder sb, List<Expense> rows) {
+        sb.append('[');
+        for (int i = 0; i < rows.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n");
+            Json.writeExpense(sb, rows.get(i));
+        }
+        sb.append("]\n");
+    }
+
+    private static int day(Map<String, String> q, String key, int absent) {
+        String v = q.get(key);
+        if (v == null) return absent;
+        try {
+            return parseDay(v);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(key + " must be yyyy-MM-dd");
+        }
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> out = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static String body(HttpExchange ex) throws IOException, HttpError {
+        String type = ex.getRequestHeaders().getFirst("Content-Type");
+        if (type == null || !type.split(";")[0].trim().equalsIgnoreCase("application/json")) {
+            throw new HttpError(415, "Content-Type must be application/json");
+        }
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) throw new HttpError(413, "request body over " + (MAX_BODY >> 20) + " MB");
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package expensetracker;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Thread-safe expense store behind the ledger server. All state is one immutable Snapshot
+ * (rows grouped by month, plus a feed of recent changes) behind an AtomicReference, so a
+ * read is one volatile load and never waits for a writer. A writer locks the stripes of
+ * the months it touches, builds new arrays for just those months, and publishes a new root
+ * with a CAS; writers to different months run in parallel and at worst retry the root
+ * copy, which is O(months), not O(rows). Each mutation reaches the journal before it is
+ * published, so the journal sees the changes to any one row in the order clients can.
+ */
+class ExpenseStore {
+    private static final int STRIPES = 64;
+    private static final int FEED_LIMIT = 4096; // changes kept for clients catching up
+
+    /** One published mutation. Rows are never modified once stored. */
+    static final class Change {
+        final long version;
+        final char kind; // 'I'nsert, 'D'elete or 'C'ategory change, as in the journal
+        final String origin; // client that made it, or null
+        final List<Expense> inserted;
+        final long[] ids;
+        final String category;
+
+        Change(long version, char kind, String origin, List<Expense> inserted, long[] ids, String category) {
+            this.version = version; this.kind = kind; this.origin = origin;
+            this.inserted = inserted; this.ids = ids; this.category = category;
+        }
+    }
+
+    // immutable newest-first list of changes
+    private static final class Feed {
+        final Change change;
+        final Feed older;
+        final int depth;
+        Feed(Change change, Feed older) {
+            this.change = change;
+            this.older = older;
+            this.depth = older == null ? 1 : older.depth + 1;
+        }
+    }
+
+    static final class Snapshot {
+        final long version;
+        final int size;
+        private final int base; // month key of months[0]
+        private final Expense[][] months; // oldest first within a month; null when empty
+        private final Feed feed;
+
+        private Snapshot(long version, int size, int base, Expense[][] months, Feed feed) {
+            this.version = version; this.size = size; this.base = base; this.months = months; this.feed = feed;
+        }
+
+        private Expense[] month(int key) {
+            int i = key - base;
+            return i >= 0 && i < months.length && months[i] != null ? months[i] : new Expense[0];
+        }
+
+        /** Visits rows dated fromDay..toDay, newest month first and newest first within it, until visit returns false. */
+        void forEachNewestFirst(int fromDay, int toDay, Predicate<Expense> visit) {
+            int hi = Math.min(months.length - 1, monthKey(Math.min(toDay, 100_000_000)) - base);
+            int lo = Math.max(0, monthKey(Math.max(fromDay, -100_000_000)) - base);
+            for (int m = hi; m >= lo; m--) {
+                Expense[] rows = months[m];
+                if (rows == null) continue;
+                for (int i = rows.length - 1; i >= 0; i--) {
+                    Expense e = rows[i];
+                    if (e.day >= fromDay && e.day <= toDay && !visit.test(e)) return;
+                }
+            }
+        }
+
+        /** Changes after {@code since}, oldest first; null if the feed no longer reaches back that far. */
+        List<Change> changesSince(long since) {
+            if (since > version) return null;
+            ArrayDeque<Change> out = new ArrayDeque<>();
+            Feed f = feed;
+            while (f != null && f.change.version > since) {
+                out.addFirst(f.change);
+                f = f.older;
+            }
+            if (f == null && since < version && (out.isEmpty() || out.peekFirst().version > since + 1)) return null;
+            return new ArrayList<>(out);
+        }
+
+        private Snapshot with(Map<Integer, Expense[]> changed, int sizeDelta, Change change) {
+            int lo = base, hi = base + months.length - 1;
+            if (months.length == 0) {
+                lo = Integer.MAX_VALUE;
+                hi = Integer.MIN_VALUE;
+            }
+            for (int m : changed.keySet()) {
+                lo = Math.min(lo, m);
+                hi = Math.max(hi, m);
+            }
+            Expense[][] next = new Expense[hi - lo + 1][];
+            System.arraycopy(months, 0, next, base - lo < 0 ? 0 : base - lo, months.length);
+            for (Map.Entry<Integer, Expense[]> e : changed.entrySet()) {
+                next[e.getKey() - lo] = e.getValue().length == 0 ? null : e.getValue();
+            }
+            Feed f = new Feed(change, feed);
+            if (f.depth > 2 * FEED_LIMIT) f = trim(f);
+            return new Snapshot(change.version, size + sizeDelta, lo, next, f);
+        }
+
+        private static Feed trim(Feed f) {
+            Change[] keep = new Change[FEED_LIMIT];
+            for (int i = 0; i < FEED_LIMIT; i++, f = f.older) keep[i] = f.change;
+            Feed out = null;
+            for (int i = FEED_LIMIT - 1; i >= 0; i--) out = new Feed(keep[i], out);
+            return out;
+        }
+    }
+
+    // what a writer publishes; the version is only known once its CAS wins
+    private interface ChangeFactory {
+        Change at(long version);
+    }
+
+    private final AtomicReference<Snapshot> root;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final Map<Long, Integer> monthOfId = new ConcurrentHashMap<>();
+    private final ExpenseTableModel.MutationListener journal;
+    private final LongSupplier ids;
+    final long epoch = System.currentTimeMillis(); // versions restart with the store
+
+    /**
+     * @param newestFirst the ledger as recovered; not written back
+     * @param journal where mutations are saved (the PersistenceWriter)
+     * @param ids allocates ids for rows that arrive without one
+     */
+    ExpenseStore(List<Expense> newestFirst, ExpenseTableModel.MutationListener journal, LongSupplier ids) {
+        this.journal = journal;
+        this.ids = ids;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+        TreeMap<Integer, List<Expense>> byMonth = new TreeMap<>();
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            Expense e = newestFirst.get(i);
+            byMonth.computeIfAbsent(monthKey(e.day), k -> new ArrayList<>()).add(e);
+            monthOfId.put(e.id, monthKey(e.day));
+        }
+        Expense[][] months = new Expense[byMonth.isEmpty() ? 0 : byMonth.lastKey() - byMonth.firstKey() + 1][];
+        for (Map.Entry<Integer, List<Expense>> m : byMonth.entrySet()) {
+            months[m.getKey() - byMonth.firstKey()] = m.getValue().toArray(new Expense[0]);
+        }
+        root = new AtomicReference<>(new Snapshot(0, newestFirst.size(), byMonth.isEmpty() ? 0 : byMonth.firstKey(), months, null));
+    }
+
+    Snapshot snapshot() { return root.get(); }
+
+    long allocateId() { return ids.getAsLong(); }
+
+    /**
+     * Stores new rows. A row keeps its id if it has one nobody else holds (clients take ids
+     * from allocateId), otherwise it gets a fresh one. A row identical to the one already
+     * held under its id is taken as stored, so a client may resend a batch whose reply it
+     * never saw.
+     * @return the stored rows, in batch order
+     */
+    List<Expense> add(List<Expense> batch, String origin) {
+        List<Expense> stored = new ArrayList<>(batch.size()), fresh = new ArrayList<>(batch.size());
+        Map<Integer, List<Expense>> byMonth = new HashMap<>();
+        for (Expense in : batch) {
+            int m = monthKey(in.day);
+            Expense held = in.id > 0 && Integer.valueOf(m).equals(monthOfId.get(in.id)) ? same(in, root.get().month(m)) : null;
+            if (held != null) {
+                stored.add(held);
+                continue;
+            }
+            Expense e = new Expense(in.day, in.category, in.amount, in.description);
+            e.id = in.id;
+            while (e.id <= 0 || monthOfId.putIfAbsent(e.id, m) != null) e.id = ids.getAsLong();
+            stored.add(e);
+            fresh.add(e);
+            byMonth.computeIfAbsent(m, k -> new ArrayList<>()).add(e);
+        }
+        if (fresh.isEmpty()) return stored;
+        List<Expense> result = Collections.unmodifiableList(fresh);
+        write(byMonth.keySet(), () -> {
+            Snapshot cur = root.get();
+            Map<Integer, Expense[]> changed = new HashMap<>();
+            for (Map.Entry<Integer, List<Expense>> m : byMonth.entrySet()) {
+                Expense[] old = cur.month(m.getKey());
+                Expense[] next = Arrays.copyOf(old, old.length + m.getValue().size());
+                for (int i = 0; i < m.getValue().size(); i++) next[old.length + i] = m.getValue().get(i);
+                changed.put(m.getKey(), next);
+            }
+            journal.inserted(copies(fresh)); // the journal's overlay may edit what it is given
+            return publish(changed, fresh.size(), v -> new Change(v, 'I', origin, result, null, null));
+        });
+        return stored;
+    }
+
+    private static Expense same(Expense e, Expense[] month) {
+        for (Expense x : month) {
+            if (x.id == e.id) {
+                return x.day == e.day && x.amount == e.amount && x.category.equals(e.category)
+                        && x.description.equals(e.description) ? x : null;
+            }
+        }
+        return null;
+    }
+
+    /** @return how many of the ids were found and deleted */
+    int delete(long[] idList, String origin) {
+        Map<Integer, Set<Long>> byMonth = group(idList);
+        if (byMonth.isEmpty()) return 0;
+        return write(byMonth.keySet(), () -> {
+            Snapshot cur = root.get();
+            Map<Integer, Expense[]> changed = new HashMap<>();
+            List<Expense> gone = new ArrayList<>();
+            for (Map.Entry<Integer, Set<Long>> m : byMonth.entrySet()) {
+                Expense[] old = cur.month(m.getKey());
+                List<Expense> keep = new ArrayList<>(old.length);
+                for (Expense e : old) {
+                    if (m.getValue().contains(e.id) && monthOfId.remove(e.id, m.getKey())) gone.add(e);
+                    else keep.add(e);
+                }
+                if (keep.size() < old.length) changed.put(m.getKey(), keep.toArray(new Expense[0]));
+            }
+            if (gone.isEmpty()) return 0;
+            long[] goneIds = new long[gone.size()];
+            int[] days = new int[gone.size()];
+            for (int i = 0; i < goneIds.length; i++) {
+                goneIds[i] = gone.get(i).id;
+                days[i] = gone.get(i).day;
+            }
+            journal.removed(goneIds, days);
+            publish(changed, -gone.size(), v -> new Change(v, 'D', origin, null, goneIds, null));
+            return gone.size();
+        });
+    }
+
+    /** @return how many of the ids were found */
+    int recategorize(long[] idList, String category, String origin) {
+        Map<Integer, Set<Long>> byMonth = group(idList);
+        if (byMonth.isEmpty()) return 0;
+        return write(byMonth.keySet(), () -> {
+            Snapshot cur = root.get();
+            Map<Integer, Expense[]> changed = new HashMap<>();
+            List<Expense> moved = new ArrayList<>();
+            for (Map.Entry<Integer, Set<Long>> m : byMonth.entrySet()) {
+                Expense[] rows = cur.month(m.getKey()).clone();
+                for (int i = 0; i < rows.length; i++) {
+                    if (!m.getValue().contains(rows[i].id)) continue;
+                    Expense e = new Expense(rows[i].day, category, rows[i].amount, rows[i].description);
+                    e.id = rows[i].id;
+                    rows[i] = e;
+                    moved.add(e);
+                }
+                changed.put(m.getKey(), rows);
+            }
+            if (moved.isEmpty()) return 0;
+            long[] movedIds = new long[moved.size()];
+            int[] days = new int[moved.size()];
+            for (int i = 0; i < movedIds.length; i++) {
+                movedIds[i] = moved.get(i).id;
+                days[i] = moved.get(i).day;
+            }
+            journal.recategorized(movedIds, days, category);
+            publish(changed, 0, v -> new Change(v, 'C', origin, null, movedIds, category));
+            return moved.size();
+        });
+    }
+
+    private Map<Integer, Set<Long>> group(long[] idList) {
+        Map<Integer, Set<Long>> byMonth = new HashMap<>();
+        for (long id : idList) {
+            Integer m = monthOfId.get(id);
+            if (m != null) byMonth.computeIfAbsent(m, k -> new HashSet<>()).add(id);
+        }
+        return byMonth;
+    }
+
+    // Runs a write holding the stripes of its months, taken in index order so writers that
+    // share stripes cannot deadlock. Other months' arrays may change meanwhile; these cannot.
+    private <T> T write(Set<Integer> months, java.util.function.Supplier<T> body) {
+        int[] locks = months.stream().mapToInt(m -> Math.floorMod(m, STRIPES)).distinct().sorted().toArray();
+        for (int s : locks) stripes[s].lock();
+        try {
+            return body.get();
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) stripes[locks[i]].unlock();
+        }
+    }
+
+    private long publish(Map<Integer, Expense[]> changed, int sizeDelta, ChangeFactory change) {
+        while (true) {
+            Snapshot cur = root.get();
+            Snapshot next = cur.with(changed, sizeDelta, change.at(cur.version + 1));
+            if (root.compareAndSet(cur, next)) return next.version;
+        }
+    }
+
+    private static List<Expense> copies(List<Expense> rows) {
+        List<Expense> out = new ArrayList<>(rows.size());
+        for (Expense e : rows) {
+            Expense c = new Expense(e.day, e.category, e.amount, e.description);
+            c.id = e.id;
+            out.add(c);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,380 @@
+package expensetracker;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+import static expensetracker.LedgerFormat.monthKey;
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+
+class ExpenseTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    // One call per model operation, however many rows it touched.
+    interface MutationListener {
+        void inserted(List<Expense> batch);
+        void removed(long[] ids, int[] days);
+        void recategorized(long[] ids, int[] days, String category);
+    }
+
+    private final String[] cols = {"Date","Category","Amount","Description"};
+    private final Class<?>[] colClasses = {LocalDate.class, String.class, Long.class, String.class};
+    private final ExpenseColumns rows = new ExpenseColumns();
+    private final ExpenseAggregates aggregates = new ExpenseAggregates();
+    private final Rollups rollups = new Rollups();
+    private final DateIndex dateIndex = new DateIndex(rows);
+    private final TextIndex textIndex = new TextIndex(rows);
+    private final DuplicateIndex duplicates = new DuplicateIndex(rows);
+    // bounded caches so repainting visible cells does not allocate per call
+    private final ValueCache<LocalDate> dayValues = new ValueCache<>(4096);
+    private final ValueCache<Long> amountValues = new ValueCache<>(4096);
+    private final ValueCache<String> descriptions = new ValueCache<>(1024);
+    private MutationListener listener;
+    private LongSupplier idSource;
+    private EditHistory history; // null: edits are not recorded for undo
+    private boolean recording = true; // false while undoing, redoing or applying peer edits
+    private long version; // bumped by every change to the rows, see snapshot()
+    public void setMutationListener(MutationListener l) { listener = l; }
+    public void setIdSource(LongSupplier s) { idSource = s; }
+    public void setUndoHistory(EditHistory h) { history = h; }
+    /** Forgets every undo and redo step, for when the rows they refer to were replaced wholesale. */
+    public void clearUndoHistory() { if (history != null) history.clear(); }
+    // edits another client already saved: applied like any other, but not reported back
+    public void applyPeer(Runnable edit) {
+        MutationListener l = listener;
+        listener = null;
+        recording = false;
+        try {
+            edit.run();
+        } finally {
+            listener = l;
+            recording = true;
+        }
+    }
+    /** The rows as they are now, for reading off the EDT while editing goes on. */
+    public ExpenseColumns.Snapshot snapshot() { return rows.snapshot(version); }
+    public long version() { return version; }
+    public void addExpense(Expense e) {
+        addExpenses(Collections.singletonList(e));
+    }
+    // entered in list order, so the last one ends up on top
+    public void addExpenses(java.util.List<Expense> batch) {
+        if (batch.isEmpty()) return;
+        // every id first, so nothing is half added if the source fails
+        if (idSource != null) for (Expense e : batch) if (e.id == 0) e.id = idSource.getAsLong();
+        for (Expense e : batch) {
+            rows.addFirst(e); // add to top
+            aggregates.add(e.day, rows.categoryId(0), e.amount);
+            rollups.add(e.day, rows.categoryId(0), e.amount);
+            dateIndex.prepended(e.day);
+            textIndex.prepended(e.description);
+            duplicates.added(0);
+        }
+        version++;
+        if (recording && history != null) {
+            long[] ids = new long[batch.size()];
+            int[] days = new int[batch.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = batch.get(i).id;
+                days[i] = batch.get(i).day;
+            }
+            history.record(new EditHistory.Edit('I', ids, days, null, null, null));
+        }
+        fireTableRowsInserted(0, batch.size() - 1);
+        if (listener != null) listener.inserted(new ArrayList<>(batch));
+    }
+    public void removeExpenseAt(int i) {
+        BitSet one = new BitSet();
+        one.set(i);
+        removeRows(one);
+    }
+    // one compacting pass, one table event and one persistence call for the whole set
+    public void removeRows(BitSet modelRows) {
+        int n = modelRows.cardinality();
+        if (n == 0) return;
+        long[] ids = new long[n];
+        int[] days = new int[n];
+        boolean keep = recording && history != null && EditHistory.canKeep(n);
+        List<Expense> gone = keep ? new ArrayList<>(n) : null;
+        int k = 0;
+        for (int r = modelRows.nextSetBit(0); r >= 0; r = modelRows.nextSetBit(r + 1)) {
+            aggregates.remove(rows.day(r), rows.categoryId(r), rows.amount(r));
+            rollups.remove(rows.day(r), rows.categoryId(r), rows.amount(r));
+            if (keep) gone.add(rows.get(r));
+            days[k] = rows.day(r);
+            ids[k++] = rows.id(r);
+        }
+        if (keep) history.record(new EditHistory.Edit('D', ids, days, gone, null, null));
+        else if (recording && history != null) history.clear(); // too big to keep, and later edits may depend on it
+        drop(modelRows);
+        if (listener != null) listener.removed(ids, days);
+    }
+    private void drop(BitSet modelRows) {
+        int n = modelRows.cardinality();
+        int first = modelRows.nextSetBit(0), last = modelRows.length() - 1;
+        textIndex.removing(modelRows);
+        duplicates.removing(modelRows);
+        rows.removeAll(modelRows);
+        descriptions.clear(); // a row id may come back holding other text (a reload)
+        dateIndex.invalidate();
+        version++;
+        if (last - first + 1 == n) fireTableRowsDeleted(first, last);
+        else fireTableDataChanged();
+    }
+    public void removeIds(Set<Long> ids) {
+        removeRows(rowsWithIds(ids));
+    }
+    public void reassignCategory(BitSet modelRows, String category) {
+        int n = modelRows.cardinality();
+        if (n == 0) return;
+        long[] ids = new long[n];
+        int[] days = new int[n];
+        int[] before = new int[n];
+        int k = 0;
+        duplicates.removing(modelRows); // the category is part of the fingerprint
+        for (int r = modelRows.nextSetBit(0); r >= 0; r = modelRows.nextSetBit(r + 1)) {
+            aggregates.remove(rows.day(r), rows.categoryId(r), rows.amount(r));
+            rollups.remove(rows.day(r), rows.categoryId(r), rows.amount(r));
+            before[k] = rows.categoryId(r);
+            int cat = rows.setCategory(r, category);
+            duplicates.added(r);
+            aggregates.add(rows.day(r), cat, rows.amount(r));
+            rollups.add(rows.day(r), cat, rows.amount(r));
+            days[k] = rows.day(r);
+            ids[k++] = rows.id(r);
+        }
+        version++;
+        if (recording && history != null) history.record(new EditHistory.Edit('C', ids, days, null, before, category));
+        fireTableRowsUpdated(modelRows.nextSetBit(0), modelRows.length() - 1);
+        if (listener != null) listener.recategorized(ids, days, category);
+    }
+    /** Rows the ledger stored under new ids: provisional (negative) ids replaced by the server's. */
+    public void renumber(Map<Long, Long> ids) {
+        for (int r = 0; r < rows.size(); r++) {
+            if (rows.id(r) >= 0) continue;
+            Long id = ids.get(rows.id(r));
+            if (id != null) rows.setId(r, id);
+        }
+        if (history != null) history.renumber(ids);
+        descriptions.clear();
+        version++;
+    }
+    public BitSet rowsWithIds(Set<Long> ids) {
+        BitSet out = new BitSet(rows.size());
+        for (int r = 0; r < rows.size(); r++) {
+            if (ids.contains(rows.id(r))) out.set(r);
+        }
+        return out;
+    }
+    // rows read back from disk: already persisted, and older than anything added meanwhile
+    public void appendLoaded(java.util.List<Expense> newestFirst) {
+        if (newestFirst.isEmpty()) return;
+        int first = rows.size();
+        descriptions.clear();
+        for (Expense e : newestFirst) {
+            rows.addLast(e);
+            aggregates.add(e.day, rows.categoryId(rows.size() - 1), e.amount);
+            rollups.add(e.day, rows.categoryId(rows.size() - 1), e.amount);
+            dateIndex.appended(e.day, rows.size() - 1);
+            textIndex.appended(e.description);
+            duplicates.added(rows.size() - 1);
+        }
+        version++;
+        fireTableRowsInserted(first, rows.size() - 1);
+    }
+    // a month still on disk: counted in the totals, rows paged in later with appendMonth
+    public void addColdMonth(BinarySnapshot.Summary s) {
+        int first = firstDayOfMonth(s.month), cats = s.categories.length;
+        for (int i = 0; i < cats; i++) {
+            int cat = rows.categoryId(s.categories[i]);
+            aggregates.addMonthTotals(s.month, cat, (int) s.counts[i], s.totals[i]);
+            if (s.daily == null) {
+                rollups.add(first, cat, s.totals[i]);
+                continue;
+            }
+            for (int d = 0; d < s.daily.length / cats; d++) {
+                long amount = s.daily[d * cats + i];
+                if (amount != 0) rollups.add(first + d, cat, amount);
+            }
+        }
+    }
+    // rows of a month paged in from disk: already in the totals, and some may be here already
+    public void appendMonth(int month, java.util.List<Expense> newestFirst) {
+        Set<Long> present = idsInMonth(month);
+        int first = rows.size();
+        for (Expense e : newestFirst) {
+            if (present.contains(e.id)) continue;
+            rows.addLast(e);
+            dateIndex.appended(e.day, rows.size() - 1);
+            textIndex.appended(e.description);
+            duplicates.added(rows.size() - 1);
+        }
+        if (rows.size() == first) return;
+        version++;
+        fireTableRowsInserted(first, rows.size() - 1);
+    }
+    // drops a month's rows from memory only: totals and storage keep them
+    public void evictMonth(int month) {
+        BitSet doomed = new BitSet(rows.size());
+        for (int r : dateIndex.rowsBetween(firstDayOfMonth(month), firstDayOfMonth(month + 1) - 1)) doomed.set(r);
+        if (!doomed.isEmpty()) drop(doomed);
+    }
+    public boolean canUndo() { return history != null && history.peekUndo() != null; }
+    public boolean canRedo() { return history != null && history.peekRedo() != null; }
+    /** What undo() would reverse, e.g. "delete 3 expenses"; null if nothing. */
+    public String undoLabel() { return canUndo() ? history.peekUndo().describe() : null; }
+    public String redoLabel() { return canRedo() ? history.peekRedo().describe() : null; }
+    /** Months undo() needs in memory (MonthCache may have evicted them since the edit). */
+    public int[] undoMonths() { return canUndo() ? history.peekUndo().undoMonths() : new int[0]; }
+    public int[] redoMonths() { return canRedo() ? history.peekRedo().redoMonths() : new int[0]; }
+    // Rows come back on top, as new rows do; ids, dates and amounts are unchanged. An edit
+    // whose rows are not all in memory (page in undoMonths() first) is not half applied:
+    // it is dropped from the history and false returned.
+    public boolean undo() {
+        EditHistory.Edit e = history.popUndo();
+        if (e == null) return false;
+        if (e.kind != 'D' && rowsWithIds(idSet(e.ids)).cardinality() < e.ids.length) return false;
+        replay(() -> {
+            switch (e.kind) {
+                case 'I': {
+                    BitSet added = rowsWithIds(idSet(e.ids));
+                    e.rows = new ArrayList<>(added.cardinality());
+                    for (int r = added.length() - 1; r >= 0; r = added.previousSetBit(r - 1)) e.rows.add(rows.get(r));
+                    removeRows(added);
+                    break;
+                }
+                case 'D':
+                    List<Expense> back = new ArrayList<>(e.rows);
+                    Collections.reverse(back); // the first deleted was highest, so it goes in last
+                    addExpenses(back);
+                    break;
+                case 'C': {
+                    Map<Long, Integer> before = new HashMap<>(e.ids.length * 2);
+                    for (int i = 0; i < e.ids.length; i++) before.put(e.ids[i], e.oldCategories[i]);
+                    Map<Integer, BitSet> byCategory = new HashMap<>();
+                    for (int r = 0; r < rows.size(); r++) {
+                        Integer cat = before.get(rows.id(r));
+                        if (cat != null) byCategory.computeIfAbsent(cat, c -> new BitSet()).set(r);
+                    }
+                    for (Map.Entry<Integer, BitSet> c : byCategory.entrySet()) reassignCategory(c.getValue(), rows.categoryName(c.getKey()));
+                    break;
+                }
+            }
+        });
+        history.undone(e);
+        return true;
+    }
+    public boolean redo() {
+        EditHistory.Edit e = history.popRedo();
+        if (e == null) return false;
+        if (e.kind != 'I' && rowsWithIds(idSet(e.ids)).cardinality() < e.ids.length) return false;
+        replay(() -> {
+            switch (e.kind) {
+                case 'I': addExpenses(e.rows); e.rows = null; break;
+                case 'D': removeRows(rowsWithIds(idSet(e.ids))); break;
+                case 'C': reassignCategory(rowsWithIds(idSet(e.ids)), e.category); break;
+            }
+        });
+        history.redone(e);
+        return true;
+    }
+    private void replay(Runnable edit) {
+        recording = false;
+        try {
+            edit.run();
+        } finally {
+            recording = true;
+        }
+    }
+    private static Set<Long> idSet(long[] ids) {
+        Set<Long> out = new HashSet<>(ids.length * 2);
+        for (long id : ids) out.add(id);
+        return out;
+    }
+    public Set<Long> idsInMonth(int month) {
+        Set<Long> ids = new HashSet<>();
+        for (int r : dateIndex.rowsBetween(firstDayOfMonth(month), firstDayOfMonth(month + 1) - 1)) ids.add(rows.id(r));
+        return ids;
+    }
+    public Expense expenseAt(int r) { return rows.get(r); }
+    public int epochDay(int r) { return rows.day(r); }
+    public long amount(int r) { return rows.amount(r); }
+    public ExpenseAggregates aggregates() { return aggregates; }
+    public Rollups rollups() { return rollups; }
+    public String categoryName(int id) { return rows.categoryName(id); }
+    public int categoryId(int r) { return rows.categoryId(r); }
+    public int findCategory(String name) { return rows.findCategory(name); }
+    public int[] rowsBetween(int fromDay, int toDay) { return dateIndex.rowsBetween(fromDay, toDay); }
+    /** How many rows look like {@code e}: same amount, category and description within DuplicateIndex.WINDOW_DAYS. */
+    public int duplicatesOf(Expense e) { return duplicates.matches(e); }
+    /** Rows whose description has a word starting with each word of the query; null for a blank query. */
+    public BitSet searchRows(String query) { return textIndex.search(query); }
+    // whole months come from the aggregates; only rows of the two edge months are visited
+    public ExpenseAggregates.Bucket totalsBetween(int fromDay, int toDay) {
+        ExpenseAggregates.Bucket out = new ExpenseAggregates.Bucket();
+        if (fromDay > toDay || rows.size() == 0) return out;
+        int first = monthKey(Math.max(fromDay, -100_000_000)), last = monthKey(Math.min(toDay, 100_000_000));
+        int[] active = aggregates.activeMonths();
+        if (active.length == 0) return out;
+        first = Math.max(first, active[0]);
+        last = Math.min(last, active[active.length - 1]);
+        for (int m = first; m <= last; m++) {
+            boolean edge = (m == first && fromDay > firstDayOfMonth(m))
+                    || (m == last && toDay < firstDayOfMonth(m + 1) - 1);
+            if (edge) {
+                int lo = Math.max(fromDay, firstDayOfMonth(m)), hi = Math.min(toDay, firstDayOfMonth(m + 1) - 1);
+                for (int r : dateIndex.rowsBetween(lo, hi)) out.apply(rows.categoryId(r), rows.amount(r), 1);
+            } else {
+                ExpenseAggregates.Bucket b = aggregates.month(m);
+                if (b != null) out.addAll(b);
+            }
+        }
+        return out;
+    }
+    // sort order straight from the columns: days and amounts numerically, categories by name rank
+    public int compareRows(int a, int b, int column) {
+        switch (column) {
+            case 0: return Integer.compare(rows.day(a), rows.day(b));
+            case 1: return Integer.compare(rows.categoryRank(rows.categoryId(a)), rows.categoryRank(rows.categoryId(b)));
+            case 2: return Long.compare(rows.amount(a), rows.amount(b));
+            case 3: return rows.compareDescriptions(a, b);
+        }
+        return 0;
+    }
+    public boolean hasIntSortKey(int column) {
+        return column == 0 || column == 1 || (column == 2 && rows.maxAbsAmount() <= Integer.MAX_VALUE);
+    }
+    public int intSortKey(int r, int column) {
+        switch (column) {
+            case 0: return rows.day(r);
+            case 1: return rows.categoryRank(rows.categoryId(r));
+            default: return (int) rows.amount(r);
+        }
+    }
+    @Override
+    public int getRowCount() { return rows.size(); }
+    @Override
+    public int getColumnCount() { return cols.length; }
+    @Override
+    public String getColumnName(int c) { return cols[c]; }
+    @Override
+    public Class<?> getColumnClass(int c) { return colClasses[c]; }
+    @Override
+    public Object getValueAt(int r, int c) {
+        switch(c) {
+            case 0: return dayValues.get(rows.day(r), d -> LocalDate.ofEpochDay(d));
+            case 1: return rows.category(r);
+            case 2: return amountValues.get(rows.amount(r), Long::valueOf); // minor units
+            case 3: return descriptions.get(rows.id(r), id -> rows.description(r)); // cleared when ids may change hands
+        }
+        return "";
+    }
+    public Map<String, Long> categoryTotals() {
+        ExpenseAggregates.Bucket b = aggregates.all();
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (int c = 0; c < rows.categoryCount(); c++) {
+            if (b.count(c) > 0) out.put(rows.categoryName(c), b.total(c));
+        }
+        return out;
+    }
+}
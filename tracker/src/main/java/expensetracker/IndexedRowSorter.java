@@ -0,0 +1,252 @@
+package expensetracker;
+
+import javax.swing.*;
+import java.util.*;
+import java.util.function.IntBinaryOperator;
+
+/*
+ * RowSorter driven by the date and text indexes instead of a per-row RowFilter. With no
+ * filter and no sort keys it is the identity and model events cost nothing; otherwise the
+ * view is rebuilt from an index (O(matching rows)) and sorted with a stable merge sort
+ * over int row ids. A search query narrows first, since it usually matches the fewest
+ * rows; the day range and category are then checked per candidate.
+ */
+class IndexedRowSorter extends RowSorter<ExpenseTableModel> {
+    private static final int MAX_SORT_KEYS = 3;
+
+    private final ExpenseTableModel model;
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private int dayFrom = Integer.MIN_VALUE, dayTo = Integer.MAX_VALUE;
+    private String category; // null: all
+    private String query = "";
+    private int[] viewToModel; // null while the view is the identity
+    private int[] modelToView; // built lazily when sorted
+    private int modelRowCount;
+
+    IndexedRowSorter(ExpenseTableModel model) {
+        this.model = model;
+        this.modelRowCount = model.getRowCount();
+    }
+
+    int dayFrom() { return dayFrom; }
+    int dayTo() { return dayTo; }
+
+    void setDayRange(int from, int to) {
+        dayFrom = from;
+        dayTo = to;
+        rebuild();
+    }
+
+    void setCategory(String category) {
+        this.category = category;
+        rebuild();
+    }
+
+    void setQuery(String query) {
+        this.query = query == null ? "" : query.trim();
+        rebuild();
+    }
+
+    private boolean dated() { return dayFrom != Integer.MIN_VALUE || dayTo != Integer.MAX_VALUE; }
+
+    private boolean filtered() { return dated() || category != null || !query.isEmpty(); }
+
+    private boolean transformed() { return filtered() || !sortKeys.isEmpty(); }
+
+    private void rebuild() {
+        int[] last = viewToModel != null ? viewToModel : new int[0];
+        modelRowCount = model.getRowCount();
+        modelToView = null;
+        if (!transformed()) {
+            viewToModel = null;
+        } else {
+            int[] rows;
+            try (Metrics.Span span = Metrics.span("filter")) {
+                if (filtered()) {
+                    rows = filteredRows();
+                } else {
+                    rows = new int[modelRowCount];
+                    for (int i = 0; i < rows.length; i++) rows[i] = i;
+                }
+                span.rows(rows.length);
+            }
+            if (!sortKeys.isEmpty()) {
+                try (Metrics.Span span = Metrics.span("sort")) {
+                    sort(rows);
+                    span.rows(rows.length);
+                }
+            }
+            viewToModel = rows;
+        }
+        fireRowSorterChanged(last);
+    }
+
+    // ascending model rows that pass every filter
+    private int[] filteredRows() {
+        BitSet matches = query.isEmpty() ? null : model.searchRows(query);
+        int cat = category == null ? -1 : model.findCategory(category);
+        if (category != null && cat < 0) return new int[0];
+        if (matches == null && cat < 0) return model.rowsBetween(dayFrom, dayTo);
+        int[] out;
+        int n = 0;
+        if (matches != null) {
+            out = new int[matches.cardinality()];
+            for (int r = matches.nextSetBit(0); r >= 0; r = matches.nextSetBit(r + 1)) {
+                int day = model.epochDay(r);
+                if (day >= dayFrom && day <= dayTo && (cat < 0 || model.categoryId(r) == cat)) out[n++] = r;
+            }
+        } else if (dated()) {
+            out = model.rowsBetween(dayFrom, dayTo);
+            for (int r : out) if (model.categoryId(r) == cat) out[n++] = r;
+        } else {
+            out = new int[modelRowCount];
+            for (int r = 0; r < modelRowCount; r++) if (model.categoryId(r) == cat) out[n++] = r;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private void sort(int[] rows) {
+        boolean allInt = true;
+        for (SortKey k : sortKeys) allInt &= k.getSortOrder() == SortOrder.UNSORTED || model.hasIntSortKey(k.getColumn());
+        if (allInt) {
+            // least significant key first; each pass is stable, so earlier keys win ties
+            for (int i = sortKeys.size() - 1; i >= 0; i--) {
+                SortKey k = sortKeys.get(i);
+                if (k.getSortOrder() != SortOrder.UNSORTED) packedPass(rows, k.getColumn(), k.getSortOrder() == SortOrder.DESCENDING);
+            }
+        } else {
+            sortRows(rows, 0, rows.length, this::compareRows);
+        }
+    }
+
+    // Packs (key, position) into a long so the primitive sort does the work; the position in
+    // the low bits keeps ties in their current order.
+    private void packedPass(int[] rows, int col, boolean desc) {
+        long[] packed = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            long key = model.intSortKey(rows[i], col);
+            packed[i] = ((desc ? -key : key) << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] prev = rows.clone();
+        for (int i = 0; i < rows.length; i++) rows[i] = prev[(int) packed[i]];
+    }
+
+    private int compareRows(int a, int b) {
+        for (SortKey k : sortKeys) {
+            if (k.getSortOrder() == SortOrder.UNSORTED) continue;
+            int c = model.compareRows(a, b, k.getColumn());
+            if (c != 0) return k.getSortOrder() == SortOrder.DESCENDING ? -c : c;
+        }
+        return Integer.compare(a, b);
+    }
+
+    /** Stable merge sort of row ids in [from, to); avoids boxing every row into an Integer. */
+    static void sortRows(int[] a, int from, int to, IntBinaryOperator cmp) {
+        if (to - from < 2) return;
+        int[] buf = new int[to - from]; // buf[x - from] mirrors a[x]
+        for (int width = 1; width < to - from; width *= 2) {
+            for (int lo = from; lo < to - width; lo += 2 * width) {
+                int mid = lo + width, hi = Math.min(lo + 2 * width, to);
+                if (cmp.applyAsInt(a[mid - 1], a[mid]) <= 0) continue; // already ordered
+                System.arraycopy(a, lo, buf, lo - from, hi - lo);
+                int i = lo - from, j = mid - from, k = lo, iEnd = mid - from, jEnd = hi - from;
+                while (i < iEnd && j < jEnd) a[k++] = cmp.applyAsInt(buf[j], buf[i]) < 0 ? buf[j++] : buf[i++];
+                while (i < iEnd) a[k++] = buf[i++];
+                while (j < jEnd) a[k++] = buf[j++];
+            }
+        }
+    }
+
+    @Override
+    public ExpenseTableModel getModel() { return model; }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        List<SortKey> keys = new ArrayList<>(sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).getColumn() == column) {
+                if (i == 0) order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                keys.remove(i);
+                break;
+            }
+        }
+        keys.add(0, new SortKey(column, order));
+        if (keys.size() > MAX_SORT_KEYS) keys = keys.subList(0, MAX_SORT_KEYS);
+        setSortKeys(keys);
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= model.getRowCount()) throw new IndexOutOfBoundsException("Invalid index");
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= model.getRowCount()) throw new IndexOutOfBoundsException("Invalid index");
+            return index;
+        }
+        if (index < 0 || index >= modelRowCount) throw new IndexOutOfBoundsException("Invalid index");
+        if (sortKeys.isEmpty()) {
+            int v = Arrays.binarySearch(viewToModel, index); // filtered only: view is ascending
+            return v >= 0 ? v : -1;
+        }
+        if (modelToView == null) {
+            modelToView = new int[modelRowCount];
+            Arrays.fill(modelToView, -1);
+            for (int v = 0; v < viewToModel.length; v++) modelToView[viewToModel[v]] = v;
+        }
+        return modelToView[index];
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> old = sortKeys;
+        sortKeys = keys == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(keys));
+        if (!sortKeys.equals(old)) {
+            fireSortOrderChanged();
+            rebuild();
+        }
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() { return sortKeys; }
+
+    @Override
+    public int getViewRowCount() { return viewToModel == null ? model.getRowCount() : viewToModel.length; }
+
+    @Override
+    public int getModelRowCount() { return model.getRowCount(); }
+
+    @Override
+    public void modelStructureChanged() { changed(); }
+
+    @Override
+    public void allRowsChanged() { changed(); }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) { changed(); }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) { changed(); }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) { changed(); }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) { changed(); }
+
+    private void changed() {
+        if (transformed()) {
+            rebuild();
+        } else {
+            modelRowCount = model.getRowCount();
+        }
+    }
+}
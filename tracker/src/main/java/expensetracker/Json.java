@@ -0,0 +1,223 @@
+package expensetracker;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.*;
+
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.parseDay;
+import static expensetracker.LedgerFormat.parseMinor;
+
+/*
+ * The little JSON the exporter and the ledger server speak. parse() turns text into
+ * LinkedHashMap / ArrayList / String / BigDecimal / Boolean / null and throws
+ * IllegalArgumentException on anything malformed. Expenses travel as
+ * {"id":1,"date":"2024-05-01","category":"Food","amount":12.50,"description":"..."}.
+ */
+final class Json {
+    private final String text;
+    private int pos;
+
+    private Json(String text) { this.text = text; }
+
+    static Object parse(String text) {
+        Json p = new Json(text);
+        Object v = p.value();
+        p.skipSpace();
+        if (p.pos != text.length()) throw p.error("trailing characters");
+        return v;
+    }
+
+    static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    static void writeExpense(StringBuilder sb, Expense e) {
+        sb.append("{\"id\":").append(e.id).append(",\"date\":\"").append(formatDay(e.day)).append("\",\"category\":");
+        quote(sb, e.category);
+        sb.append(",\"amount\":").append(formatMinor(e.amount)).append(",\"description\":");
+        quote(sb, e.description);
+        sb.append('}');
+    }
+
+    /** An expense object; id is optional (0 when absent). */
+    static Expense readExpense(Object json) {
+        Map<?, ?> o = object(json);
+        try {
+            Expense e = new Expense(parseDay(string(o, "date")), string(o, "category"),
+                    parseMinor(number(o.get("amount"), "amount").toPlainString()),
+                    o.get("description") == null ? "" : string(o, "description"));
+            if (o.get("id") != null) e.id = number(o.get("id"), "id").longValueExact();
+            return e;
+        } catch (ParseException | ArithmeticException | NumberFormatException ex) {
+            throw new IllegalArgumentException("bad expense " + o + ": " + ex.getMessage());
+        }
+    }
+
+    static Map<?, ?> object(Object json) {
+        if (!(json instanceof Map)) throw new IllegalArgumentException("expected a JSON object");
+        return (Map<?, ?>) json;
+    }
+
+    static String string(Map<?, ?> o, String key) {
+        Object v = o.get(key);
+        if (!(v instanceof String)) throw new IllegalArgumentException("\"" + key + "\" must be a string");
+        return (String) v;
+    }
+
+    static BigDecimal number(Object v, String what) {
+        if (!(v instanceof BigDecimal)) throw new IllegalArgumentException("\"" + what + "\" must be a number");
+        return (BigDecimal) v;
+    }
+
+    static long[] longs(Object v, String what) {
+        if (!(v instanceof List)) throw new IllegalArgumentException("\"" + what + "\" must be an array");
+        List<?> list = (List<?>) v;
+        long[] out = new long[list.size()];
+        try {
+            for (int i = 0; i < out.length; i++) out[i] = number(list.get(i), what).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("\"" + what + "\" must hold whole numbers");
+        }
+        return out;
+    }
+
+    private Object value() {
+        skipSpace();
+        if (pos == text.length()) throw error("unexpected end");
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default: return number();
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        pos++;
+        skipSpace();
+        if (peek() == '}') {
+            pos++;
+            return out;
+        }
+        while (true) {
+            skipSpace();
+            if (peek() != '"') throw error("expected a key");
+            String key = string();
+            skipSpace();
+            expect(':');
+            out.put(key, value());
+            skipSpace();
+            if (peek() == ',') pos++;
+            else {
+                expect('}');
+                return out;
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> out = new ArrayList<>();
+        pos++;
+        skipSpace();
+        if (peek() == ']') {
+            pos++;
+            return out;
+        }
+        while (true) {
+            out.add(value());
+            skipSpace();
+            if (peek() == ',') pos++;
+            else {
+                expect(']');
+                return out;
+            }
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length()) throw error("unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length()) throw error("unterminated string");
+            char esc = text.charAt(pos++);
+            switch (esc) {
+                case '"': case '\\': case '/': sb.append(esc); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) throw error("bad \\u escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("bad \\u escape");
+                    }
+                    pos += 4;
+                    break;
+                default: throw error("bad escape");
+            }
+        }
+    }
+
+    private BigDecimal number() {
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+        try {
+            return new BigDecimal(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("unexpected character");
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) throw error("unexpected character");
+        pos += word.length();
+        return value;
+    }
+
+    private char peek() { return pos < text.length() ? text.charAt(pos) : 0; }
+
+    private void expect(char c) {
+        if (peek() != c) throw error("expected '" + c + "'");
+        pos++;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    private IllegalArgumentException error(String what) {
+        return new IllegalArgumentException("bad JSON at " + pos + ": " + what);
+    }
+}
@@ -0,0 +1,48 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/*
+ * Where the UI's table model keeps its expenses: the journal in the working directory
+ * (PersistenceWriter) or a ledger server shared with other clients (RemoteLedger).
+ * Mutations arrive as listener calls on the EDT and are saved in the background; status
+ * and peer changes may be reported from any thread.
+ */
+interface Ledger extends ExpenseTableModel.MutationListener {
+    enum Status { PENDING, SAVED, FAILED }
+
+    /** Changes other clients of a shared ledger made. */
+    interface PeerListener {
+        void changed(List<ExpenseStore.Change> oldestFirst);
+        /** The whole ledger, after falling too far behind to catch up change by change. */
+        void reloaded(List<Expense> newestFirst);
+        /** Rows saved under provisional ids now have these (old id to new). */
+        default void renumbered(Map<Long, Long> ids) { }
+    }
+
+    void setStatusListener(Consumer<Status> l);
+
+    default void setPeerListener(PeerListener l) { }
+
+    /** An id for a new row; must not block, as the model asks for it on the EDT. */
+    long allocateId();
+
+    /** Edits not saved yet, for the status line; they are retried until they are. */
+    default int unsent() { return 0; }
+
+    /**
+     * Streams the recent months of the ledger to the sink (newest first) and the summaries of
+     * the others to {@code cold}; completes with the number of rows streamed.
+     */
+    Future<Integer> recover(Consumer<List<Expense>> sink, Consumer<BinarySnapshot.Summary> cold);
+
+    /** One month as saved, newest first; for paging in months recover() left out. */
+    List<Expense> readMonth(int month) throws IOException;
+
+    /** Saves what is queued and releases the ledger. */
+    void close();
+}
@@ -0,0 +1,112 @@
+package expensetracker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/** Dates are epoch days and amounts minor units (paise) everywhere below the UI; these are their text forms. */
+final class LedgerFormat {
+    private static final ThreadLocal<SimpleDateFormat> DAY_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+
+    private LedgerFormat() { }
+
+    static String formatDay(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    static int parseDay(String s) throws ParseException {
+        try {
+            return (int) LocalDate.parse(s).toEpochDay();
+        } catch (DateTimeParseException e) {
+            // lenient forms such as 2024-1-5, as SimpleDateFormat always accepted
+            return toEpochDay(DAY_FORMAT.get().parse(s));
+        }
+    }
+
+    static int toEpochDay(Date d) {
+        return (int) d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+    }
+
+    /** year * 12 + (month - 1) for an epoch day, without allocating (civil-from-days). */
+    static int monthKey(int epochDay) {
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int y = yoe + era * 400;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int m = mp < 10 ? mp + 3 : mp - 9;
+        if (m <= 2) y++;
+        return y * 12 + (m - 1);
+    }
+
+    static int firstDayOfMonth(int monthKey) {
+        return (int) LocalDate.of(Math.floorDiv(monthKey, 12), Math.floorMod(monthKey, 12) + 1, 1).toEpochDay();
+    }
+
+    static String formatMinor(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        if (minor < 0) sb.append('-');
+        long abs = Math.abs(minor);
+        sb.append(abs / 100).append('.');
+        long frac = abs % 100;
+        if (frac < 10) sb.append('0');
+        return sb.append(frac).toString();
+    }
+
+    static long parseMinor(String s) {
+        try {
+            return new BigDecimal(s.trim()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("amount out of range: " + s);
+        }
+    }
+
+    static String escapeCSV(String s) {
+        if (s == null) return "";
+        if (s.contains(",") || s.contains("\n") || s.contains("\"")) {
+            s = s.replace("\"", "\"\"");
+            return "\"" + s + "\"";
+        }
+        return s;
+    }
+
+    /**
+     * Splits one record written with escapeCSV into at most {@code limit} fields; the last
+     * field takes the rest of the line. A field is quoted only if it starts with a quote and
+     * the closing quote ends it, so other quotes are kept as they are.
+     */
+    static String[] splitCSV(String line, int limit) {
+        List<String> fields = new ArrayList<>(limit);
+        StringBuilder field = new StringBuilder();
+        int i = 0, n = line.length();
+        while (true) {
+            boolean last = fields.size() == limit - 1;
+            field.setLength(0);
+            int start = i;
+            if (i < n && line.charAt(i) == '"') {
+                for (i++; i < n; i++) {
+                    char c = line.charAt(i);
+                    if (c != '"') field.append(c);
+                    else if (i + 1 < n && line.charAt(i + 1) == '"') { field.append(c); i++; }
+                    else { i++; break; }
+                }
+                // escapeCSV ends a quoted field at a comma or the end; anything else was never quoted
+                if (i < n && line.charAt(i) != ',') {
+                    field.setLength(0);
+                    i = start;
+                }
+            }
+            while (i < n && (last || line.charAt(i) != ',')) field.append(line.charAt(i++));
+            fields.add(field.toString());
+            if (i >= n) return fields.toArray(new String[0]);
+            i++; // the comma
+        }
+    }
+}
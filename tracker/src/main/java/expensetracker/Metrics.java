@@ -0,0 +1,209 @@
+package expensetracker;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * Process-wide latency histograms and gauges, read by the diagnostics dialog. An operation
+ * is timed with try (Metrics.Span s = Metrics.span("filter")) { ... }: closing the span
+ * records into that operation's histogram and commits an expensetracker.Operation JFR event,
+ * so a flight recording lines the app's own operations up with GC and I/O. Recording is
+ * lock-free and allocates one span, cheap enough to leave on for every filter and paint.
+ */
+final class Metrics {
+    /** Microsecond latencies in log-linear buckets: exact below 16 us, then 8 per power of two. */
+    static final class Histogram {
+        private static final int SUB_BUCKETS = 8, LINEAR = 16;
+        private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (64 - 4) * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder(), sum = new LongAdder(), rows = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long micros, long rowCount) {
+            counts.incrementAndGet(bucket(Math.max(0, micros)));
+            count.increment();
+            sum.add(micros);
+            rows.add(rowCount);
+            max.accumulateAndGet(micros, Math::max);
+        }
+
+        long count() { return count.sum(); }
+        long totalMicros() { return sum.sum(); }
+        long maxMicros() { return max.get(); }
+        long rows() { return rows.sum(); }
+
+        /** Upper bound of the bucket holding the q-quantile, within 12.5%. */
+        long percentile(double q) {
+            long n = count(), seen = 0, rank = (long) Math.ceil(q * n);
+            if (n == 0) return 0;
+            for (int b = 0; b < counts.length(); b++) {
+                seen += counts.get(b);
+                if (seen >= Math.max(1, rank)) return Math.min(upperBound(b), maxMicros());
+            }
+            return maxMicros();
+        }
+
+        void reset() {
+            for (int b = 0; b < counts.length(); b++) counts.set(b, 0);
+            count.reset();
+            sum.reset();
+            rows.reset();
+            max.set(0);
+        }
+
+        private static int bucket(long v) {
+            if (v < LINEAR) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v); // >= 4
+            int sub = (int) (v >>> (exp - 3)) & (SUB_BUCKETS - 1);
+            return LINEAR + (exp - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int b) {
+            if (b < LINEAR) return b;
+            int exp = (b - LINEAR) / SUB_BUCKETS + 4, sub = (b - LINEAR) % SUB_BUCKETS;
+            return (((long) SUB_BUCKETS + sub + 1) << (exp - 3)) - 1;
+        }
+    }
+
+    /** Times one operation; see the class comment. */
+    static final class Span implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final OperationEvent event = new OperationEvent();
+        private long rows;
+
+        private Span(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        /** Rows the operation touched, for the per-row figures. */
+        Span rows(long n) {
+            rows = n;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            long micros = (System.nanoTime() - start) / 1000;
+            histogram(name).record(micros, rows);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.rows = rows;
+                event.commit();
+            }
+        }
+    }
+
+    @Name("expensetracker.Operation")
+    @Label("Expense Tracker Operation")
+    @Category("Expense Tracker")
+    @Description("A timed load, save, export, filter, aggregate or paint")
+    static final class OperationEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Rows") long rows;
+    }
+
+    @Name("expensetracker.EdtStall")
+    @Label("EDT Stall")
+    @Category("Expense Tracker")
+    @Description("The event dispatch thread did not answer a heartbeat in time")
+    @StackTrace(false) // committed by the watchdog; the EDT's stack is in the field
+    static final class EdtStallEvent extends Event {
+        @Label("EDT Stack Sample") String stack;
+    }
+
+    /** One EDT stall the watchdog saw, with the EDT's stack when it crossed the threshold. */
+    static final class Stall {
+        final Instant at;
+        final long millis;
+        final String stack;
+        Stall(Instant at, long millis, String stack) { this.at = at; this.millis = millis; this.stack = stack; }
+    }
+
+    static final String ROWS_GAUGE = "rows in memory"; // heap per row divides by this
+    private static final int KEPT_STALLS = 20;
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static final Deque<Stall> stalls = new ArrayDeque<>();
+
+    private Metrics() { }
+
+    static Span span(String operation) { return new Span(operation); }
+
+    /** Times {@code body} as one span, for work with no row count to report. */
+    static void time(String operation, Runnable body) {
+        Span s = span(operation);
+        try {
+            body.run();
+        } finally {
+            s.close();
+        }
+    }
+
+    static Histogram histogram(String operation) {
+        return histograms.computeIfAbsent(operation, k -> new Histogram());
+    }
+
+    /** A value read each time a report is built, such as the row count. */
+    static void gauge(String name, LongSupplier value) { gauges.put(name, value); }
+
+    static void stall(Stall s) {
+        synchronized (stalls) {
+            if (stalls.size() == KEPT_STALLS) stalls.removeFirst();
+            stalls.addLast(s);
+        }
+    }
+
+    static void reset() {
+        for (Histogram h : histograms.values()) h.reset();
+        synchronized (stalls) { stalls.clear(); }
+    }
+
+    /** Plain-text report: latencies, gauges, heap per row and recent stalls. */
+    static String report() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("Expense Tracker diagnostics, ").append(Instant.now()).append("\n\n");
+        sb.append(String.format("%-14s %9s %10s %10s %10s %10s %12s %10s%n",
+                "operation", "count", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms", "us/row"));
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            Histogram h = e.getValue();
+            if (h.count() == 0) continue;
+            sb.append(String.format("%-14s %9d %10.2f %10.2f %10.2f %10.2f %12.1f %10s%n", e.getKey(), h.count(),
+                    h.percentile(0.5) / 1000.0, h.percentile(0.9) / 1000.0, h.percentile(0.99) / 1000.0,
+                    h.maxMicros() / 1000.0, h.totalMicros() / 1000.0,
+                    h.rows() == 0 ? "-" : String.format("%.3f", h.totalMicros() / (double) h.rows())));
+        }
+        sb.append('\n');
+        long rows = 0;
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(gauges).entrySet()) {
+            long v = e.getValue().getAsLong();
+            if (e.getKey().equals(ROWS_GAUGE)) rows = v;
+            sb.append(String.format("%-22s %,d%n", e.getKey(), v));
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        sb.append(String.format("%-22s %,d MB of %,d MB%n", "heap used", heap.getUsed() >> 20, heap.getMax() >> 20));
+        if (rows > 0) sb.append(String.format("%-22s %,d bytes (whole heap / rows in memory)%n", "heap per row", heap.getUsed() / rows));
+        List<Stall> recent;
+        synchronized (stalls) { recent = new ArrayList<>(stalls); }
+        sb.append("\nEDT stalls: ").append(recent.size()).append(recent.isEmpty() ? "\n" : " (newest last)\n");
+        for (Stall s : recent) {
+            sb.append("\n").append(s.at).append(": ").append(s.millis).append(" ms\n").append(s.stack);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package expensetracker;
+
+import javax.swing.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+
+/*
+ * Which months of the ledger the table model holds. Recovery streams the recent months,
+ * which stay for the session; the rest start cold, known only by their partition summaries.
+ * load() reads cold months in the background and appends them, and months paged in that
+ * way are evicted least recently used first once their estimated size passes the budget.
+ * Everything except the reads runs on the EDT.
+ */
+class MonthCache {
+    private final ExpenseTableModel model;
+    private final Ledger writer;
+    private final long budgetBytes;
+    private final Consumer<Exception> onError;
+    private final TreeMap<Integer, BinarySnapshot.Summary> cold = new TreeMap<>();
+    private final LinkedHashMap<Integer, BinarySnapshot.Summary> paged = new LinkedHashMap<>(16, 0.75f, true); // LRU first
+    private final Set<Integer> loading = new HashSet<>();
+    private final List<Map.Entry<Collection<Integer>, Runnable>> waiting = new ArrayList<>(); // loads held up by another's read
+    private long pagedBytes;
+
+    MonthCache(ExpenseTableModel model, Ledger writer, long budgetBytes, Consumer<Exception> onError) {
+        this.model = model;
+        this.writer = writer;
+        this.budgetBytes = budgetBytes;
+        this.onError = onError;
+    }
+
+    /** A month recovery left on disk; its totals go into the model's aggregates now. */
+    void addCold(BinarySnapshot.Summary s) {
+        cold.put(s.month, s);
+        model.addColdMonth(s);
+    }
+
+    /** Cold months, newest first. */
+    NavigableSet<Integer> coldMonths() { return cold.descendingKeySet(); }
+
+    boolean isLoading() { return !loading.isEmpty(); }
+
+    /** Rows the cold months hold, for progress reporting. */
+    long coldRows() {
+        long n = 0;
+        for (BinarySnapshot.Summary s : cold.values()) n += s.rows;
+        return n;
+    }
+
+    /**
+     * Makes sure the months are in the model, then runs {@code then} on the EDT (not at all
+     * if a read fails). Months already present only count as used, and months another call
+     * is still reading are waited for.
+     */
+    void load(Collection<Integer> months, Runnable then) {
+        List<Integer> todo = new ArrayList<>();
+        boolean busy = false;
+        for (int m : months) {
+            if (paged.containsKey(m)) paged.get(m); // touch
+            else if (loading.contains(m)) busy = true;
+            else if (cold.containsKey(m)) todo.add(m);
+        }
+        if (todo.isEmpty()) {
+            if (busy) waiting.add(new AbstractMap.SimpleEntry<>(months, then));
+            else then.run();
+            return;
+        }
+        loading.addAll(todo);
+        new SwingWorker<List<List<Expense>>, Void>() {
+            @Override
+            protected List<List<Expense>> doInBackground() throws Exception {
+                List<List<Expense>> out = new ArrayList<>();
+                for (int m : todo) out.add(writer.readMonth(m));
+                return out;
+            }
+            @Override
+            protected void done() {
+                loading.removeAll(todo);
+                try {
+                    List<List<Expense>> rows = get();
+                    for (int i = 0; i < todo.size(); i++) {
+                        int m = todo.get(i);
+                        model.appendMonth(m, rows.get(i));
+                        BinarySnapshot.Summary s = cold.remove(m);
+                        paged.put(m, s);
+                        pagedBytes += s.residentBytes();
+                    }
+                    evict(new HashSet<>(months));
+                } catch (InterruptedException | ExecutionException e) {
+                    onError.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                    retryWaiting();
+                    return;
+                }
+                load(months, then); // runs it now, unless another call is still reading some of them
+                retryWaiting();
+            }
+        }.execute();
+    }
+
+    private void retryWaiting() {
+        List<Map.Entry<Collection<Integer>, Runnable>> w = new ArrayList<>(waiting);
+        waiting.clear();
+        for (Map.Entry<Collection<Integer>, Runnable> e : w) load(e.getKey(), e.getValue());
+    }
+
+    // sizes are taken from the rows as they are now, since edits may have added or removed some
+    private void evict(Set<Integer> keep) {
+        pagedBytes = 0;
+        for (Map.Entry<Integer, BinarySnapshot.Summary> e : paged.entrySet()) {
+            e.setValue(summarize(e.getKey()));
+            pagedBytes += e.getValue().residentBytes();
+        }
+        for (Iterator<Map.Entry<Integer, BinarySnapshot.Summary>> it = paged.entrySet().iterator();
+             it.hasNext() && pagedBytes > budgetBytes; ) {
+            Map.Entry<Integer, BinarySnapshot.Summary> e = it.next();
+            if (keep.contains(e.getKey())) continue;
+            it.remove();
+            model.evictMonth(e.getKey());
+            if (e.getValue().rows > 0) cold.put(e.getKey(), e.getValue()); // totals stay in the aggregates
+            pagedBytes -= e.getValue().residentBytes();
+        }
+    }
+
+    // the month as the model holds it, which is what storage holds once the writer catches up
+    private BinarySnapshot.Summary summarize(int month) {
+        List<Expense> rows = new ArrayList<>();
+        for (int r : model.rowsBetween(firstDayOfMonth(month), firstDayOfMonth(month + 1) - 1)) rows.add(model.expenseAt(r));
+        return BinarySnapshot.Summary.of(month, rows);
+    }
+}
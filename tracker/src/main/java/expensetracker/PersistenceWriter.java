@@ -0,0 +1,157 @@
+package expensetracker;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Takes journal I/O off the EDT. Model mutations are queued and drained by one background
+ * thread; everything arriving within LINGER_MS of the first event is appended and committed
+ * as a single group, so a 500-row delete costs one fsync rather than 500. Bulk model calls
+ * arrive as one mutation each.
+ */
+class PersistenceWriter implements Ledger {
+    private static final long LINGER_MS = 25;
+
+    private static final class Mutation {
+        final char kind; // 'I'nsert, 'D'elete or 'C'ategory change
+        final List<Expense> inserted;
+        final long[] ids;
+        final int[] days; // of the rows in ids, so the journal knows their months
+        final String category;
+        Mutation(char kind, List<Expense> inserted, long[] ids, int[] days, String category) {
+            this.kind = kind; this.inserted = inserted; this.ids = ids; this.days = days; this.category = category;
+        }
+    }
+
+    private final ExpenseJournal journal;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "expense-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object lock = new Object();
+    private List<Mutation> pending = new ArrayList<>();
+    private boolean drainScheduled;
+    private volatile Consumer<Status> statusListener = s -> {};
+
+    PersistenceWriter(ExpenseJournal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void setStatusListener(Consumer<Status> l) { statusListener = l; }
+
+    @Override
+    public long allocateId() { return journal.allocateId(); }
+
+    @Override
+    public Future<Integer> recover(Consumer<List<Expense>> sink, Consumer<BinarySnapshot.Summary> cold) {
+        return executor.submit(() -> {
+            try (Metrics.Span span = Metrics.span("load")) {
+                int rows = journal.recover(sink, cold);
+                span.rows(rows);
+                return rows;
+            }
+        });
+    }
+
+    // Read on the writer thread after what is queued, so a month evicted right after an edit
+    // comes back with it.
+    @Override
+    public List<Expense> readMonth(int month) throws IOException {
+        try (Metrics.Span span = Metrics.span("page in")) {
+            List<Expense> rows = executor.submit(() -> {
+                drain();
+                return journal.readMonth(month);
+            }).get();
+            span.rows(rows.size());
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("page in interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void inserted(List<Expense> batch) { enqueue(new Mutation('I', batch, null, null, null)); }
+
+    @Override
+    public void removed(long[] ids, int[] days) { enqueue(new Mutation('D', null, ids, days, null)); }
+
+    @Override
+    public void recategorized(long[] ids, int[] days, String category) { enqueue(new Mutation('C', null, ids, days, category)); }
+
+    private void enqueue(Mutation m) {
+        boolean schedule;
+        synchronized (lock) {
+            pending.add(m);
+            schedule = !drainScheduled;
+            drainScheduled = true;
+        }
+        if (schedule) {
+            statusListener.accept(Status.PENDING);
+            executor.schedule(this::drain, LINGER_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        List<Mutation> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new ArrayList<>();
+            drainScheduled = false;
+        }
+        if (batch.isEmpty()) return;
+        try (Metrics.Span span = Metrics.span("save")) {
+            long records = 0;
+            for (Mutation m : batch) {
+                switch (m.kind) {
+                    case 'I':
+                        for (Expense e : m.inserted) journal.appendInsert(e);
+                        records += m.inserted.size();
+                        break;
+                    case 'D':
+                        for (int i = 0; i < m.ids.length; i++) journal.appendDelete(m.ids[i], m.days[i]);
+                        records += m.ids.length;
+                        break;
+                    case 'C':
+                        for (int i = 0; i < m.ids.length; i++) journal.appendRecategorize(m.ids[i], m.days[i], m.category);
+                        records += m.ids.length;
+                        break;
+                }
+            }
+            journal.commit();
+            span.rows(records);
+            boolean idle;
+            synchronized (lock) { idle = !drainScheduled; }
+            if (idle) statusListener.accept(Status.SAVED);
+        } catch (IOException e) {
+            e.printStackTrace();
+            statusListener.accept(Status.FAILED);
+        }
+    }
+
+    /** Blocks until every queued mutation has been committed. */
+    void flush() throws InterruptedException, ExecutionException {
+        executor.submit(this::drain).get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+            executor.submit(() -> { journal.close(); return null; }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+        executor.shutdown();
+    }
+}
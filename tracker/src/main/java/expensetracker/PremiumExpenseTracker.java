@@ -0,0 +1,1396 @@
+/*
+Project layout (Maven):
+
+PersonalExpenseTracker/
+├─ pom.xml
+├─ tracker/                              <-- the application
+│  └─ src/main/java/expensetracker/
+│     ├─ PremiumExpenseTracker.java      <-- this file (Swing UI)
+│     ├─ ExpenseTableModel.java, ...     <-- model: columns, aggregates, date index, sorter
+│     └─ ExpenseJournal.java, ...        <-- persistence: snapshot, journal, CSV, export
+├─ bench/                                <-- JMH benchmarks (see bench/BASELINE.md)
+└─ README.md
+
+expenses.months/ and expenses.journal are created at runtime in the working dir;
+budget rules are read from expenses.budgets there.
+
+To build & run (from project root):
+  mvn -B package
+  java -jar tracker/target/expense-tracker-1.0-SNAPSHOT.jar
+  java -jar tracker/target/expense-tracker-1.0-SNAPSHOT.jar connect http://localhost:8765/ TOKEN
+
+-------------------------------------------------------------
+PremiumExpenseTracker.java
+A Java Swing application (Premium Look) implementing:
+ - Add Expense dialog (popup), multi-level undo / redo
+ - Table view with sorting
+ - Category & monthly totals, spending trends chart (day / week / month / year)
+ - Description search with category and month filters
+ - Ad-hoc queries: group by category / month / weekday with sums, averages, percentiles
+ - Month-partitioned binary storage + journal, older months paged in on demand
+ - CSV import, background CSV / JSON Lines export (optionally gzipped)
+ - Duplicate detection on add and import, and a bulk pass that selects the repeats
+ - Budget rules per category and month, with alerts kept up to date on every edit
+ - Server mode: one ledger shared by several windows over a localhost HTTP API
+ - Diagnostics: operation timings, memory per row, EDT stall watchdog, JFR events
+ - Modern/premium-ish styling (fonts, spacing, icons-ish via shapes)
+
+This file holds the UI and its cell renderers; model and persistence classes sit beside it
+in the same package.
+-------------------------------------------------------------
+*/
+
+package expensetracker;
+
+import javax.swing.*;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.parseDay;
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.parseMinor;
+import static expensetracker.LedgerFormat.monthKey;
+
+public class PremiumExpenseTracker {
+    private static final String[] CATEGORIES = {"Food","Travel","Shopping","Bills","Others"};
+    private static final int EXPORT_SLICE = 16_384; // rows per write, and per progress step
+    private static final int ALERT_LINES = 8; // budget alerts listed in the summary
+    private final JFrame frame;
+    private final ExpenseTableModel tableModel;
+    private final Ledger writer;
+    private final MonthCache monthCache;
+    private final JLabel totalLabel;
+    private final JLabel saveStatusLabel;
+    private final JLabel monthLabel;
+    private final JTable table;
+    private final JComboBox<String> monthFilterCombo;
+    private final JComboBox<String> categoryFilterCombo;
+    private final JTextField searchField;
+    private final IndexedRowSorter sorter;
+    private final TrendsChart trendsChart;
+    private final JTextField fromDayField;
+    private final JTextField toDayField;
+    private final JButton addButton;
+    private final JButton importButton;
+    private final JButton exportButton;
+    private final JButton deleteButton;
+    private final JButton categoryButton;
+    private final JButton undoButton;
+    private final JButton redoButton;
+    private final JButton duplicatesButton;
+    private final BudgetRules budgets;
+    private boolean editingEnabled;
+    private boolean undoPending; // months for an undo / redo are being paged in
+    private JPanel categoryPanel;
+    private JPanel alertPanel;
+    private long alertChanges = -1; // budgets.changeCount() when alertList was taken
+    private List<BudgetRules.Alert> alertList = Collections.emptyList();
+    private long alertsSeen; // budgets.firedCount() at the last refresh
+    private int selectedMonth = -1; // month key (year * 12 + month - 1), -1 for all months
+    private int rangeFrom = Integer.MIN_VALUE, rangeTo = Integer.MAX_VALUE; // epoch days, inclusive
+    private String selectedCategory; // null for all categories
+    private String searchText = "";
+    private boolean totalsRefreshPending;
+    private JDialog diagnosticsDialog;
+    private JDialog queryDialog;
+
+    public PremiumExpenseTracker() {
+        this(new PersistenceWriter(ExpenseJournal.inDirectory(Path.of(""), // working dir
+                ExpenseJournal.SyncMode.fromProperty(System.getProperty("expense.fsync")))));
+    }
+
+    // the ledger is the local journal, or a server shared with other windows (connect URL TOKEN)
+    PremiumExpenseTracker(Ledger ledger) {
+        tableModel = new ExpenseTableModel();
+        writer = ledger;
+        tableModel.setMutationListener(writer);
+        tableModel.setIdSource(writer::allocateId);
+        tableModel.setUndoHistory(new EditHistory());
+        // rules are compiled before the rows arrive and follow every change to the totals after
+        budgets = new BudgetRules(tableModel::categoryName);
+        try {
+            budgets.setRules(BudgetRules.load(Path.of(BudgetRules.FILE)), tableModel.aggregates());
+        } catch (IOException | IllegalArgumentException ex) {
+            JOptionPane.showMessageDialog(null, "Could not read " + BudgetRules.FILE + ": " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        tableModel.aggregates().setListener(budgets);
+        // EXIT_ON_CLOSE ends in System.exit, which still runs shutdown hooks
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::close, "expense-flush"));
+        frame = new JFrame("Premium Expense Tracker");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // months outside the recent few are paged in on demand; -Dexpense.cacheMb bounds them
+        monthCache = new MonthCache(tableModel, writer, Long.getLong("expense.cacheMb", 256) << 20,
+                ex -> {
+                    undoPending = false;
+                    JOptionPane.showMessageDialog(frame, "Could not read month: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                });
+        frame.setSize(900, 600);
+        frame.setLocationRelativeTo(null);
+        frame.setLayout(new BorderLayout());
+
+        // Set a modern-ish look
+        applyPremiumStyle();
+
+        // Top panel: header
+        JPanel header = new JPanel(new BorderLayout());
+        header.setBackground(new Color(32, 44, 61));
+        header.setBorder(new EmptyBorder(18, 18, 18, 18));
+
+        JLabel title = new JLabel("Expense Tracker");
+        title.setForeground(Color.WHITE);
+        title.setFont(new Font("SansSerif", Font.BOLD, 26));
+
+        JLabel subtitle = new JLabel("Smart. Clean. Interview-ready.");
+        subtitle.setForeground(new Color(180, 190, 200));
+        subtitle.setFont(new Font("SansSerif", Font.PLAIN, 12));
+
+        JPanel titleBox = new JPanel(new GridLayout(2,1));
+        titleBox.setOpaque(false);
+        titleBox.add(title);
+        titleBox.add(subtitle);
+
+        header.add(titleBox, BorderLayout.WEST);
+
+        // Action buttons on header
+        JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        actions.setOpaque(false);
+
+        addButton = createPrimaryButton("+ Add Expense");
+        addButton.addActionListener(e -> openAddDialog());
+
+        importButton = createSecondaryButton("Import CSV");
+        importButton.addActionListener(e -> importCSV());
+
+        exportButton = createSecondaryButton("Export...");
+        exportButton.addActionListener(e -> exportRows());
+
+        deleteButton = createTertiaryButton("Delete Selected");
+        deleteButton.addActionListener(e -> deleteSelectedRows());
+
+        categoryButton = createSecondaryButton("Set Category");
+        categoryButton.addActionListener(e -> recategorizeSelectedRows());
+
+        undoButton = createTertiaryButton("Undo");
+        undoButton.addActionListener(e -> undoOrRedo(true));
+        redoButton = createTertiaryButton("Redo");
+        redoButton.addActionListener(e -> undoOrRedo(false));
+
+        // ids are handed out once the journal has been recovered
+        setEditingEnabled(false);
+
+        actions.add(addButton);
+        actions.add(importButton);
+        actions.add(exportButton);
+        actions.add(categoryButton);
+        actions.add(deleteButton);
+        actions.add(undoButton);
+        actions.add(redoButton);
+
+        header.add(actions, BorderLayout.EAST);
+
+        frame.add(header, BorderLayout.NORTH);
+
+        // Center: Table inside a nice panel
+        table = new JTable(tableModel) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                Metrics.time("paint table", () -> super.paintComponent(g));
+            }
+        };
+        table.setRowHeight(30);
+        table.setShowGrid(false);
+        table.setIntercellSpacing(new Dimension(0,0));
+        table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+
+        // Renderers for the typed date and amount columns
+        table.getColumnModel().getColumn(0).setCellRenderer(new DayCellRenderer());
+        table.getColumnModel().getColumn(2).setCellRenderer(new AmountCellRenderer());
+
+        // Center panel wrapper
+        JPanel center = new JPanel(new BorderLayout());
+        center.setBorder(new EmptyBorder(12, 12, 12, 12));
+        center.setBackground(new Color(242, 246, 250));
+
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setBorder(BorderFactory.createLineBorder(new Color(220,220,220)));
+
+        center.add(scroll, BorderLayout.CENTER);
+        scroll.getVerticalScrollBar().addAdjustmentListener(e -> pageInOnScroll((JScrollBar) e.getAdjustable()));
+
+        // Right: quick summary
+        JPanel right = new JPanel();
+        right.setPreferredSize(new Dimension(260, 0));
+        right.setBackground(new Color(248, 250, 252));
+        right.setLayout(new BoxLayout(right, BoxLayout.Y_AXIS));
+        right.setBorder(new EmptyBorder(12,12,12,12));
+
+        monthLabel = new JLabel("Showing: All months");
+        monthLabel.setFont(new Font("SansSerif", Font.BOLD, 12));
+        monthLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        totalLabel = new JLabel("Total: ₹0.00");
+        totalLabel.setFont(new Font("SansSerif", Font.BOLD, 20));
+        totalLabel.setBorder(new EmptyBorder(12,0,12,0));
+        totalLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        right.add(monthLabel);
+        right.add(totalLabel);
+        right.add(Box.createVerticalStrut(12));
+
+        right.add(createSummaryBox());
+        right.add(Box.createVerticalStrut(16));
+
+        JLabel trendsHeading = new JLabel("Trends");
+        trendsHeading.setFont(new Font("SansSerif", Font.BOLD, 14));
+        trendsHeading.setAlignmentX(Component.LEFT_ALIGNMENT);
+        right.add(trendsHeading);
+        right.add(Box.createVerticalStrut(8));
+        trendsChart = new TrendsChart(tableModel);
+        trendsChart.setAlignmentX(Component.LEFT_ALIGNMENT);
+        trendsChart.setPreferredSize(new Dimension(236, 170));
+        trendsChart.setMaximumSize(new Dimension(Integer.MAX_VALUE, 170));
+        right.add(trendsChart);
+
+        center.add(right, BorderLayout.EAST);
+
+        frame.add(center, BorderLayout.CENTER);
+
+        // Bottom: filter and status
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.setBorder(new EmptyBorder(8,12,12,12));
+        bottom.setBackground(new Color(255,255,255));
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 6));
+        filters.setOpaque(false);
+
+        monthFilterCombo = new JComboBox<>();
+        monthFilterCombo.addItem("All months");
+        populateMonths();
+        monthFilterCombo.addActionListener(e -> applyMonthFilter());
+
+        fromDayField = new JTextField(8);
+        toDayField = new JTextField(8);
+        fromDayField.setToolTipText("yyyy-mm-dd, blank for no lower bound");
+        toDayField.setToolTipText("yyyy-mm-dd, blank for no upper bound");
+        fromDayField.addActionListener(e -> applyDateRange());
+        toDayField.addActionListener(e -> applyDateRange());
+        JButton rangeBtn = createTertiaryButton("Apply range");
+        rangeBtn.addActionListener(e -> applyDateRange());
+
+        categoryFilterCombo = new JComboBox<>();
+        categoryFilterCombo.addItem("All categories");
+        for (String c : CATEGORIES) categoryFilterCombo.addItem(c);
+        categoryFilterCombo.addActionListener(e -> {
+            int i = categoryFilterCombo.getSelectedIndex();
+            selectedCategory = i <= 0 ? null : categoryFilterCombo.getItemAt(i);
+            trendsChart.setCategory(selectedCategory);
+            applyFilters();
+        });
+
+        // filters as you type, once typing pauses
+        searchField = new JTextField(12);
+        searchField.setToolTipText("Words that start description words, e.g. \"gro sup\"");
+        Timer searchDelay = new Timer(150, e -> {
+            searchText = searchField.getText().trim();
+            applyFilters();
+        });
+        searchDelay.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchDelay.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchDelay.restart(); }
+            public void changedUpdate(DocumentEvent e) { searchDelay.restart(); }
+        });
+
+        filters.add(new JLabel("Filter:"));
+        filters.add(monthFilterCombo);
+        filters.add(new JLabel("From:"));
+        filters.add(fromDayField);
+        filters.add(new JLabel("To:"));
+        filters.add(toDayField);
+        filters.add(rangeBtn);
+        filters.add(categoryFilterCombo);
+        filters.add(new JLabel("Search:"));
+        filters.add(searchField);
+
+        bottom.add(filters, BorderLayout.WEST);
+
+        saveStatusLabel = new JLabel("Loading...");
+        saveStatusLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        saveStatusLabel.setForeground(new Color(120,130,140));
+        duplicatesButton = createTertiaryButton("Duplicates");
+        duplicatesButton.setToolTipText("Select expenses that repeat another within " + DuplicateIndex.WINDOW_DAYS + " days");
+        duplicatesButton.addActionListener(e -> findDuplicates());
+        JButton budgetsBtn = createTertiaryButton("Budgets...");
+        budgetsBtn.setToolTipText("Spending limits per category and month");
+        budgetsBtn.addActionListener(e -> openBudgets());
+        JButton queryBtn = createTertiaryButton("Query...");
+        queryBtn.setToolTipText("Group-by totals, averages and percentiles over the whole ledger");
+        queryBtn.addActionListener(e -> openQuery());
+        JButton diagnosticsBtn = createTertiaryButton("Diagnostics");
+        diagnosticsBtn.setToolTipText("Timings, memory and UI stalls (F12)");
+        diagnosticsBtn.addActionListener(e -> openDiagnostics());
+        frame.getRootPane().registerKeyboardAction(e -> openDiagnostics(), KeyStroke.getKeyStroke("F12"),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+        int menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        frame.getRootPane().registerKeyboardAction(e -> undoOrRedo(true), KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+        frame.getRootPane().registerKeyboardAction(e -> undoOrRedo(false), KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuKey),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+        frame.getRootPane().registerKeyboardAction(e -> undoOrRedo(false),
+                KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey | InputEvent.SHIFT_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        JPanel status = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 6));
+        status.setOpaque(false);
+        status.add(saveStatusLabel);
+        status.add(duplicatesButton);
+        status.add(budgetsBtn);
+        status.add(queryBtn);
+        status.add(diagnosticsBtn);
+        bottom.add(status, BorderLayout.EAST);
+        writer.setStatusListener(s -> SwingUtilities.invokeLater(() -> showSaveStatus(s)));
+        writer.setPeerListener(new Ledger.PeerListener() {
+            @Override
+            public void changed(List<ExpenseStore.Change> oldestFirst) {
+                SwingUtilities.invokeLater(() -> applyPeerChanges(oldestFirst));
+            }
+            @Override
+            public void reloaded(List<Expense> newestFirst) {
+                SwingUtilities.invokeLater(() -> {
+                    tableModel.applyPeer(() -> {
+                        BitSet all = new BitSet();
+                        all.set(0, tableModel.getRowCount());
+                        tableModel.removeRows(all);
+                        tableModel.appendLoaded(newestFirst);
+                    });
+                    tableModel.clearUndoHistory(); // its steps refer to rows that may be gone or changed
+                    updateUndoButtons();
+                    populateMonths();
+                });
+            }
+            @Override
+            public void renumbered(Map<Long, Long> ids) {
+                SwingUtilities.invokeLater(() -> tableModel.renumber(ids));
+            }
+        });
+
+        frame.add(bottom, BorderLayout.SOUTH);
+
+        // Sorting
+        sorter = new IndexedRowSorter(tableModel);
+        table.setRowSorter(sorter);
+
+        tableModel.addTableModelListener(e -> scheduleRefreshTotals());
+        tableModel.addTableModelListener(e -> updateUndoButtons());
+        refreshTotals();
+
+        // read on the EDT whenever the diagnostics report is built
+        Metrics.gauge(Metrics.ROWS_GAUGE, tableModel::getRowCount);
+        Metrics.gauge("rows on disk only", monthCache::coldRows);
+        Metrics.gauge("months on disk only", () -> monthCache.coldMonths().size());
+        Metrics.gauge("rows in view", sorter::getViewRowCount);
+        new EdtWatchdog(Long.getLong("expense.stallMs", 200)).start();
+
+        frame.setVisible(true);
+
+        // Load data (off the EDT)
+        loadFromCSV();
+    }
+
+    private void applyPremiumStyle() {
+        try {
+            UIManager.put("Button.background", new Color(52,152,219));
+            UIManager.put("Panel.background", Color.WHITE);
+            UIManager.put("Table.font", new Font("SansSerif", Font.PLAIN, 13));
+            UIManager.put("TableHeader.font", new Font("SansSerif", Font.BOLD, 13));
+        } catch (Exception ignored) {}
+    }
+
+    private JPanel createSummaryBox() {
+        JPanel p = new JPanel();
+        p.setLayout(new BoxLayout(p, BoxLayout.Y_AXIS));
+        p.setOpaque(false);
+
+        JLabel heading = new JLabel("Category Totals");
+        heading.setFont(new Font("SansSerif", Font.BOLD, 14));
+        heading.setAlignmentX(Component.LEFT_ALIGNMENT);
+        p.add(heading);
+        p.add(Box.createVerticalStrut(8));
+
+        // dynamic area
+        JPanel catPanel = new JPanel();
+        catPanel.setLayout(new BoxLayout(catPanel, BoxLayout.Y_AXIS));
+        catPanel.setOpaque(false);
+        catPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+
+        // filled by refreshTotals()
+        categoryPanel = catPanel;
+
+        p.add(catPanel);
+
+        JLabel alertHeading = new JLabel("Budget Alerts");
+        alertHeading.setFont(new Font("SansSerif", Font.BOLD, 14));
+        alertHeading.setAlignmentX(Component.LEFT_ALIGNMENT);
+        alertHeading.setBorder(new EmptyBorder(12, 0, 0, 0));
+        p.add(alertHeading);
+        p.add(Box.createVerticalStrut(8));
+        alertPanel = new JPanel();
+        alertPanel.setLayout(new BoxLayout(alertPanel, BoxLayout.Y_AXIS));
+        alertPanel.setOpaque(false);
+        alertPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        p.add(alertPanel);
+        return p;
+    }
+
+    private void populateMonths() {
+        // months come straight from the running aggregates, newest first
+        int[] months = tableModel.aggregates().activeMonths();
+        for (int i = months.length - 1; i >= 0; i--) {
+            populateMonthsIfNeeded(firstDayOfMonth(months[i]));
+        }
+    }
+
+    private void applyMonthFilter() {
+        String sel = (String) monthFilterCombo.getSelectedItem();
+        if (sel == null || sel.equals("All months")) {
+            selectedMonth = -1;
+        } else {
+            LocalDate first = LocalDate.parse(sel + "-01");
+            selectedMonth = (int) (first.getYear() * 12L + first.getMonthValue() - 1);
+        }
+        applyFilters();
+    }
+
+    private void applyDateRange() {
+        try {
+            String from = fromDayField.getText().trim(), to = toDayField.getText().trim();
+            rangeFrom = from.isEmpty() ? Integer.MIN_VALUE : parseDay(from);
+            rangeTo = to.isEmpty() ? Integer.MAX_VALUE : parseDay(to);
+        } catch (ParseException pe) {
+            JOptionPane.showMessageDialog(frame, "Invalid date format. Use yyyy-mm-dd", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        applyFilters();
+    }
+
+    // The month selection and the date range intersect into one inclusive day range; the
+    // category and search text narrow it further. Months of the range still on disk are
+    // paged in first.
+    private void applyFilters() {
+        int lo = rangeFrom, hi = rangeTo;
+        if (selectedMonth >= 0) {
+            lo = Math.max(lo, firstDayOfMonth(selectedMonth));
+            hi = Math.min(hi, firstDayOfMonth(selectedMonth + 1) - 1);
+        }
+        if (lo != Integer.MIN_VALUE || hi != Integer.MAX_VALUE) {
+            List<Integer> needed = new ArrayList<>();
+            for (int m : monthCache.coldMonths()) {
+                if (firstDayOfMonth(m + 1) - 1 >= lo && firstDayOfMonth(m) <= hi) needed.add(m);
+            }
+            if (!needed.isEmpty()) {
+                monthLabel.setText(String.format("Loading %d month%s...", needed.size(), needed.size() == 1 ? "" : "s"));
+                monthCache.load(needed, this::applyFilters);
+                return;
+            }
+        }
+        sorter.setDayRange(lo, hi);
+        sorter.setCategory(selectedCategory);
+        sorter.setQuery(searchText);
+
+        String text = selectedMonth < 0 ? "All months" : formatDay(firstDayOfMonth(selectedMonth)).substring(0, 7);
+        if (rangeFrom != Integer.MIN_VALUE || rangeTo != Integer.MAX_VALUE) {
+            text += " (" + (rangeFrom == Integer.MIN_VALUE ? "..." : formatDay(rangeFrom))
+                    + " to " + (rangeTo == Integer.MAX_VALUE ? "..." : formatDay(rangeTo)) + ")";
+        }
+        if (selectedCategory != null) text += ", " + selectedCategory;
+        if (!searchText.isEmpty()) text += ", \"" + searchText + "\"";
+        monthLabel.setText("Showing: " + text);
+        refreshTotals();
+    }
+
+    // Reaching the end of the unfiltered table pages in the newest month still on disk.
+    private void pageInOnScroll(JScrollBar bar) {
+        if (selectedMonth >= 0 || rangeFrom != Integer.MIN_VALUE || rangeTo != Integer.MAX_VALUE) return;
+        if (monthCache.isLoading() || monthCache.coldMonths().isEmpty()) return;
+        if (bar.getValue() + bar.getVisibleAmount() < bar.getMaximum() - table.getRowHeight()) return;
+        monthCache.load(Collections.singletonList(monthCache.coldMonths().first()), () -> { });
+    }
+
+    private void deleteSelectedRows() {
+        int[] rows = table.getSelectedRows();
+        if (rows.length == 0) {
+            JOptionPane.showMessageDialog(frame, "No rows selected", "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        int confirm = JOptionPane.showConfirmDialog(frame, "Delete selected expenses?","Confirm",JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        tableModel.removeRows(selectedModelRows(rows));
+    }
+
+    // convert view rows to model rows
+    private BitSet selectedModelRows(int[] viewRows) {
+        BitSet out = new BitSet(tableModel.getRowCount());
+        for (int v : viewRows) out.set(table.convertRowIndexToModel(v));
+        return out;
+    }
+
+    private void recategorizeSelectedRows() {
+        int[] rows = table.getSelectedRows();
+        if (rows.length == 0) {
+            JOptionPane.showMessageDialog(frame, "No rows selected", "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        Object cat = JOptionPane.showInputDialog(frame, "Move " + rows.length + " expense(s) to category:", "Set Category",
+                JOptionPane.QUESTION_MESSAGE, null, CATEGORIES, CATEGORIES[0]);
+        if (cat == null) return;
+        tableModel.reassignCategory(selectedModelRows(rows), (String) cat);
+    }
+
+    // Rows from the file get fresh ids and land on top of the table like added expenses.
+    private void importCSV() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Expenses from CSV");
+        if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+        Path f = chooser.getSelectedFile().toPath();
+        new SwingWorker<List<Expense>, Void>() {
+            @Override
+            protected List<Expense> doInBackground() throws IOException {
+                try (Metrics.Span span = Metrics.span("import")) {
+                    List<Expense> rows = new ArrayList<>();
+                    CsvLoader.read(f, false, rows::addAll);
+                    for (Expense e : rows) e.id = 0;
+                    span.rows(rows.size());
+                    return rows;
+                }
+            }
+            @Override
+            protected void done() {
+                try {
+                    List<Expense> rows = get();
+                    monthCache.load(neighbourMonths(rows), () -> addImported(rows));
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame, "Import failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    // rows that repeat recorded expenses (a statement imported twice, overlapping exports) are
+    // skipped unless the user says otherwise; repeats within the file itself are kept
+    private void addImported(List<Expense> rows) {
+        List<Expense> fresh = new ArrayList<>(rows.size());
+        for (Expense e : rows) if (tableModel.duplicatesOf(e) == 0) fresh.add(e);
+        int repeats = rows.size() - fresh.size();
+        List<Expense> add = rows;
+        if (repeats > 0) {
+            Object[] options = {"Skip them", "Import all", "Cancel"};
+            int choice = JOptionPane.showOptionDialog(frame, String.format("%,d of %,d rows look like expenses already recorded\n"
+                            + "(same amount, category and description within %d days).", repeats, rows.size(), DuplicateIndex.WINDOW_DAYS),
+                    "Possible Duplicates", JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+            if (choice != 0 && choice != 1) return;
+            if (choice == 0) add = fresh;
+        }
+        tableModel.addExpenses(add);
+        populateMonths();
+        String skipped = add == fresh && repeats > 0 ? String.format(" Skipped %,d duplicates.", repeats) : "";
+        JOptionPane.showMessageDialog(frame, String.format("Imported %,d expenses.", add.size()) + skipped, "Done", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    // months a row could find its duplicates in; duplicates on disk are missed unless paged in
+    private static Set<Integer> neighbourMonths(List<Expense> rows) {
+        Set<Integer> months = new TreeSet<>();
+        for (Expense e : rows) {
+            months.add(monthKey(e.day - DuplicateIndex.WINDOW_DAYS));
+            months.add(monthKey(e.day + DuplicateIndex.WINDOW_DAYS));
+        }
+        return months;
+    }
+
+    /*
+     * The bulk duplicate pass over the rows in memory, in the background on a snapshot. The
+     * repeats it finds are selected in the table (the earliest of each group is left out), so
+     * Delete Selected removes them and Undo brings them back.
+     */
+    private void findDuplicates() {
+        ExpenseColumns.Snapshot snapshot = tableModel.snapshot();
+        duplicatesButton.setEnabled(false);
+        new SwingWorker<DuplicateIndex.Found, Void>() {
+            @Override
+            protected DuplicateIndex.Found doInBackground() {
+                return DuplicateIndex.find(snapshot);
+            }
+            @Override
+            protected void done() {
+                duplicatesButton.setEnabled(true);
+                DuplicateIndex.Found found;
+                try {
+                    found = get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame, "Duplicate search failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (found.ids.length == 0) {
+                    JOptionPane.showMessageDialog(frame, String.format("No likely duplicates among the %,d loaded expenses.", snapshot.size()),
+                            "Duplicates", JOptionPane.INFORMATION_MESSAGE);
+                    return;
+                }
+                // by id: rows may have moved since the snapshot
+                BitSet modelRows = tableModel.rowsWithIds(idSet(found.ids));
+                ListSelectionModel selection = table.getSelectionModel();
+                selection.setValueIsAdjusting(true);
+                selection.clearSelection();
+                int hidden = 0;
+                for (int r = modelRows.nextSetBit(0); r >= 0; r = modelRows.nextSetBit(r + 1)) {
+                    int v = sorter.convertRowIndexToView(r);
+                    if (v < 0) hidden++;
+                    else selection.addSelectionInterval(v, v);
+                }
+                selection.setValueIsAdjusting(false);
+                String more = hidden == 0 ? "" : String.format("\n%,d of them are hidden by the current filters.", hidden);
+                JOptionPane.showMessageDialog(frame, String.format("Found %,d likely duplicates in %,d groups and selected them;\n"
+                        + "the earliest expense of each group is not selected.", modelRows.cardinality(), found.groups) + more,
+                        "Duplicates", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+
+    /*
+     * Streams the whole ledger, or exactly the rows the table currently shows in their current
+     * order, to CSV or JSON Lines (optionally gzipped) in the background. The rows come from a
+     * copy-on-write snapshot of the model taken when the export starts, read one slice at a
+     * time off the EDT; the captured view order indexes that snapshot, not the live model, so
+     * editing and month eviction go on while it is written and need no hold. Months that were
+     * on disk at the start are read one at a time after the snapshot, skipping any of their
+     * rows the snapshot already had.
+     */
+    private void exportRows() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Expenses");
+        JComboBox<RowExporter.Format> formatBox = new JComboBox<>(RowExporter.Format.values());
+        JCheckBox gzipBox = new JCheckBox("Compress (gzip)");
+        JCheckBox viewBox = new JCheckBox("Only rows in view", sorter.getViewRowCount() != tableModel.getRowCount());
+        JPanel options = new JPanel(new GridLayout(0, 1, 0, 4));
+        options.setBorder(new EmptyBorder(0, 8, 0, 0));
+        options.add(new JLabel("Format:"));
+        options.add(formatBox);
+        options.add(gzipBox);
+        options.add(viewBox);
+        chooser.setAccessory(options);
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+
+        RowExporter.Format format = (RowExporter.Format) formatBox.getSelectedItem();
+        boolean gzip = gzipBox.isSelected();
+        Path f = chooser.getSelectedFile().toPath();
+        String ext = format.extension + (gzip ? ".gz" : "");
+        if (!f.getFileName().toString().endsWith(ext)) f = f.resolveSibling(f.getFileName() + ext);
+        Path target = f;
+        int total;
+        int[] order; // view -> model, null to export the model as is
+        List<Integer> onDisk = new ArrayList<>();
+        if (viewBox.isSelected()) {
+            total = sorter.getViewRowCount();
+            order = new int[total];
+            for (int v = 0; v < total; v++) order[v] = sorter.convertRowIndexToModel(v);
+        } else {
+            total = tableModel.getRowCount();
+            order = null;
+            onDisk.addAll(monthCache.coldMonths());
+        }
+        long grandTotal = total + (onDisk.isEmpty() ? 0 : monthCache.coldRows());
+
+        JProgressBar bar = new JProgressBar(0, 100);
+        bar.setStringPainted(true);
+        JButton cancelBtn = createTertiaryButton("Cancel");
+        JDialog progress = new JDialog(frame, "Exporting " + target.getFileName(), false);
+        JPanel body = new JPanel(new BorderLayout(0, 10));
+        body.setBorder(new EmptyBorder(14, 14, 14, 14));
+        body.add(new JLabel(String.format("Writing %,d rows...", grandTotal)), BorderLayout.NORTH);
+        body.add(bar, BorderLayout.CENTER);
+        JPanel south = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        south.add(cancelBtn);
+        body.add(south, BorderLayout.SOUTH);
+        progress.setContentPane(body);
+        progress.setSize(360, 150);
+        progress.setLocationRelativeTo(frame);
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // the rows as they are now; editing can go on while they are written
+        ExpenseColumns.Snapshot snapshot = tableModel.snapshot();
+        exportButton.setEnabled(false);
+        SwingWorker<Long, Void> worker = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                List<Expense> slice = new ArrayList<>(EXPORT_SLICE);
+                long written = 0;
+                try (Metrics.Span span = Metrics.span("export"); RowExporter out = new RowExporter(target, format, gzip)) {
+                    for (int from = 0; from < total; from += EXPORT_SLICE) {
+                        if (cancelled.get()) break;
+                        int end = Math.min(total, from + EXPORT_SLICE);
+                        slice.clear();
+                        for (int i = from; i < end; i++) slice.add(snapshot.get(order == null ? i : order[i]));
+                        out.write(slice);
+                        written = end;
+                        setProgress((int) (100L * written / grandTotal));
+                    }
+                    // rows of a disk month paged in or added this session are in the snapshot and already written
+                    Map<Integer, Set<Long>> present = presentIds(snapshot, onDisk);
+                    for (int m : onDisk) {
+                        if (cancelled.get()) break;
+                        List<Expense> rows = writer.readMonth(m);
+                        rows.removeIf(e -> present.get(m).contains(e.id));
+                        out.write(rows);
+                        written += rows.size();
+                        setProgress((int) Math.min(100, 100L * written / grandTotal));
+                    }
+                    span.rows(written);
+                }
+                if (!cancelled.get()) return written;
+                Files.deleteIfExists(target);
+                return -1L;
+            }
+            @Override
+            protected void done() {
+                progress.dispose();
+                exportButton.setEnabled(editingEnabled);
+                try {
+                    long n = get();
+                    if (n >= 0) JOptionPane.showMessageDialog(frame, String.format("Exported %,d rows.", n), "Done", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException | ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    try { Files.deleteIfExists(target); } catch (IOException ignored) { }
+                    JOptionPane.showMessageDialog(frame, "Export failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) bar.setValue((Integer) e.getNewValue());
+        });
+        cancelBtn.addActionListener(e -> { cancelled.set(true); cancelBtn.setEnabled(false); });
+        progress.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        progress.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) { cancelled.set(true); }
+        });
+        progress.setVisible(true);
+        worker.execute();
+    }
+
+    // ids the snapshot holds in each of the months, to skip when those months are read from disk
+    private static Map<Integer, Set<Long>> presentIds(ExpenseColumns.Snapshot snapshot, Collection<Integer> months) {
+        Map<Integer, Set<Long>> present = new HashMap<>();
+        for (int m : months) present.put(m, new HashSet<>());
+        for (int r = 0; !months.isEmpty() && r < snapshot.size(); r++) {
+            Set<Long> ids = present.get(monthKey(snapshot.day(r)));
+            if (ids != null) ids.add(snapshot.id(r));
+        }
+        return present;
+    }
+
+    /*
+     * Ad-hoc group-by over the whole ledger (ExpenseQuery). Runs on a snapshot of the rows on
+     * the common fork/join pool, so editing goes on meanwhile; months still on disk that the
+     * date range reaches are read for the run and dropped again, not paged into the table.
+     */
+    private void openQuery() {
+        if (queryDialog != null) {
+            queryDialog.toFront();
+            return;
+        }
+        JDialog d = new JDialog(frame, "Query", false);
+        JTextField fromF = new JTextField(10), toF = new JTextField(10);
+        JTextField minF = new JTextField(8), maxF = new JTextField(8);
+        JTextField textF = new JTextField(14);
+        JList<String> catList = new JList<>(CATEGORIES);
+        catList.setVisibleRowCount(CATEGORIES.length);
+        catList.setToolTipText("None selected for all categories");
+        JComboBox<ExpenseQuery.GroupBy> groupBox = new JComboBox<>(ExpenseQuery.GroupBy.values());
+        groupBox.setSelectedItem(ExpenseQuery.GroupBy.CATEGORY);
+        JCheckBox pctBox = new JCheckBox("Percentiles");
+        fromF.setToolTipText("yyyy-mm-dd, blank for no lower bound");
+        toF.setToolTipText("yyyy-mm-dd, blank for no upper bound");
+
+        JPanel form = new JPanel(new GridBagLayout());
+        form.setBorder(new EmptyBorder(10, 10, 4, 10));
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(4, 6, 4, 6);
+        c.anchor = GridBagConstraints.WEST;
+        c.gridx = 0; c.gridy = 0; form.add(new JLabel("From:"), c);
+        c.gridx = 1; form.add(fromF, c);
+        c.gridx = 2; form.add(new JLabel("To:"), c);
+        c.gridx = 3; form.add(toF, c);
+        c.gridx = 0; c.gridy = 1; form.add(new JLabel("Amount from:"), c);
+        c.gridx = 1; form.add(minF, c);
+        c.gridx = 2; form.add(new JLabel("to:"), c);
+        c.gridx = 3; form.add(maxF, c);
+        c.gridx = 0; c.gridy = 2; form.add(new JLabel("Description:"), c);
+        c.gridx = 1; c.gridwidth = 3; form.add(textF, c);
+        c.gridx = 0; c.gridy = 3; c.gridwidth = 1; form.add(new JLabel("Group by:"), c);
+        c.gridx = 1; form.add(groupBox, c);
+        c.gridx = 2; c.gridwidth = 2; form.add(pctBox, c);
+        c.gridx = 4; c.gridy = 0; c.gridwidth = 1; c.gridheight = 4; c.anchor = GridBagConstraints.NORTHWEST;
+        form.add(new JScrollPane(catList), c);
+
+        String[] columns = {"Group", "Count", "Sum", "Average", "Min", "Max", "P50", "P90", "P99"};
+        javax.swing.table.DefaultTableModel results = new javax.swing.table.DefaultTableModel(columns, 0) {
+            @Override
+            public Class<?> getColumnClass(int col) { return col == 0 ? String.class : Long.class; }
+            @Override
+            public boolean isCellEditable(int row, int col) { return false; }
+        };
+        JTable resultTable = new JTable(results);
+        resultTable.setAutoCreateRowSorter(true);
+        for (int col = 2; col < columns.length; col++) resultTable.getColumnModel().getColumn(col).setCellRenderer(new AmountCellRenderer());
+
+        JLabel statusL = new JLabel(" ");
+        statusL.setForeground(new Color(120, 130, 140));
+        JButton runBtn = createPrimaryButton("Run");
+        JButton closeBtn = createTertiaryButton("Close");
+        closeBtn.addActionListener(e -> d.dispose());
+        runBtn.addActionListener(e -> {
+            ExpenseQuery q = new ExpenseQuery();
+            try {
+                if (!fromF.getText().isBlank()) q.fromDay = parseDay(fromF.getText().trim());
+                if (!toF.getText().isBlank()) q.toDay = parseDay(toF.getText().trim());
+                if (!minF.getText().isBlank()) q.minAmount = parseMinor(minF.getText().trim());
+                if (!maxF.getText().isBlank()) q.maxAmount = parseMinor(maxF.getText().trim());
+            } catch (ParseException pe) {
+                JOptionPane.showMessageDialog(d, "Invalid date format. Use yyyy-mm-dd", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            } catch (NumberFormatException ne) {
+                JOptionPane.showMessageDialog(d, "Invalid number for amount", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (!catList.isSelectionEmpty()) q.categories = new HashSet<>(catList.getSelectedValuesList());
+            q.text = textF.getText().trim();
+            q.groupBy = (ExpenseQuery.GroupBy) groupBox.getSelectedItem();
+            q.percentiles = pctBox.isSelected();
+
+            ExpenseColumns.Snapshot snapshot = tableModel.snapshot();
+            List<Integer> onDisk = new ArrayList<>();
+            for (int m : monthCache.coldMonths()) {
+                if (firstDayOfMonth(m) <= q.toDay && firstDayOfMonth(m + 1) - 1 >= q.fromDay) onDisk.add(m);
+            }
+            runBtn.setEnabled(false);
+            statusL.setText(onDisk.isEmpty() ? "Running..." : String.format("Reading %,d months from disk...", onDisk.size()));
+            new SwingWorker<ExpenseQuery.Result, Void>() {
+                @Override
+                protected ExpenseQuery.Result doInBackground() throws Exception {
+                    Map<Integer, Set<Long>> present = presentIds(snapshot, onDisk);
+                    List<List<Expense>> diskRows = new ArrayList<>();
+                    for (int m : onDisk) {
+                        List<Expense> rows = writer.readMonth(m);
+                        rows.removeIf(ex -> present.get(m).contains(ex.id));
+                        diskRows.add(rows);
+                    }
+                    return q.run(snapshot, diskRows, ForkJoinPool.commonPool());
+                }
+                @Override
+                protected void done() {
+                    runBtn.setEnabled(true);
+                    try {
+                        ExpenseQuery.Result r = get();
+                        results.setRowCount(0);
+                        for (ExpenseQuery.Row row : r.rows) {
+                            Object[] cells = new Object[columns.length];
+                            cells[0] = row.group;
+                            cells[1] = row.count;
+                            cells[2] = row.sum;
+                            cells[3] = row.average();
+                            cells[4] = row.min;
+                            cells[5] = row.max;
+                            for (int i = 0; row.percentiles != null && i < row.percentiles.length; i++) cells[6 + i] = row.percentiles[i];
+                            results.addRow(cells);
+                        }
+                        statusL.setText(String.format("%,d of %,d rows matched in %,d ms", r.matched, r.scanned, r.micros / 1000));
+                    } catch (InterruptedException | ExecutionException ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        statusL.setText(" ");
+                        JOptionPane.showMessageDialog(d, "Query failed: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        });
+        d.getRootPane().setDefaultButton(runBtn);
+
+        JPanel foot = new JPanel(new BorderLayout());
+        foot.setBorder(new EmptyBorder(4, 12, 8, 12));
+        foot.add(statusL, BorderLayout.WEST);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        buttons.add(closeBtn);
+        buttons.add(runBtn);
+        foot.add(buttons, BorderLayout.EAST);
+        d.setLayout(new BorderLayout());
+        d.add(form, BorderLayout.NORTH);
+        d.add(new JScrollPane(resultTable), BorderLayout.CENTER);
+        d.add(foot, BorderLayout.SOUTH);
+        d.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) { queryDialog = null; }
+        });
+        d.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        d.setSize(820, 520);
+        d.setLocationRelativeTo(frame);
+        queryDialog = d;
+        d.setVisible(true);
+    }
+
+    // The rules as text, one per line; saving recompiles them against the current totals.
+    private void openBudgets() {
+        JTextArea text = new JTextArea(14, 40);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        StringBuilder sb = new StringBuilder("# Category [yyyy-mm] > amount, e.g. Food > 10000 or * 2026-03 > 50000\n");
+        for (BudgetRules.Rule r : budgets.rules()) sb.append(r).append('\n');
+        text.setText(sb.toString());
+        while (true) {
+            int choice = JOptionPane.showConfirmDialog(frame, new JScrollPane(text), "Budgets",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (choice != JOptionPane.OK_OPTION) return;
+            List<BudgetRules.Rule> rules;
+            try {
+                rules = BudgetRules.parseAll(text.getText());
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(frame, ex.getMessage(), "Invalid budget", JOptionPane.ERROR_MESSAGE);
+                continue;
+            }
+            try (Metrics.Span span = Metrics.span("budget rules")) {
+                span.rows(rules.size());
+                budgets.setRules(rules, tableModel.aggregates());
+            }
+            try {
+                BudgetRules.save(Path.of(BudgetRules.FILE), rules);
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(frame, "Could not save budgets: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            alertsSeen = budgets.firedCount();
+            refreshTotals();
+            return;
+        }
+    }
+
+    // Live report from Metrics, refreshed every second while the dialog is open.
+    private void openDiagnostics() {
+        if (diagnosticsDialog != null) {
+            diagnosticsDialog.toFront();
+            return;
+        }
+        JDialog d = new JDialog(frame, "Diagnostics", false);
+        JTextArea text = new JTextArea(Metrics.report());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        Timer refresh = new Timer(1000, e -> {
+            Point at = text.getVisibleRect().getLocation();
+            text.setText(Metrics.report());
+            text.scrollRectToVisible(new Rectangle(at, text.getVisibleRect().getSize()));
+        });
+
+        JButton resetBtn = createTertiaryButton("Reset");
+        resetBtn.addActionListener(e -> {
+            Metrics.reset();
+            text.setText(Metrics.report());
+        });
+        JButton dumpBtn = createSecondaryButton("Dump to file...");
+        dumpBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Save Diagnostics");
+            chooser.setSelectedFile(new File("expense-diagnostics.txt"));
+            if (chooser.showSaveDialog(d) != JFileChooser.APPROVE_OPTION) return;
+            try {
+                Files.writeString(chooser.getSelectedFile().toPath(), Metrics.report());
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(d, "Could not write file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        JButton closeBtn = createTertiaryButton("Close");
+        closeBtn.addActionListener(e -> d.dispose());
+
+        JPanel foot = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        foot.add(resetBtn);
+        foot.add(dumpBtn);
+        foot.add(closeBtn);
+        d.setLayout(new BorderLayout());
+        d.add(new JScrollPane(text), BorderLayout.CENTER);
+        d.add(foot, BorderLayout.SOUTH);
+        d.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refresh.stop();
+                diagnosticsDialog = null;
+            }
+        });
+        d.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        d.setSize(760, 480);
+        d.setLocationRelativeTo(frame);
+        diagnosticsDialog = d;
+        refresh.start();
+        d.setVisible(true);
+    }
+
+    private void setEditingEnabled(boolean on) {
+        editingEnabled = on;
+        addButton.setEnabled(on);
+        importButton.setEnabled(on);
+        exportButton.setEnabled(on);
+        deleteButton.setEnabled(on);
+        categoryButton.setEnabled(on);
+        updateUndoButtons();
+    }
+
+    private void updateUndoButtons() {
+        String undo = tableModel.undoLabel(), redo = tableModel.redoLabel();
+        undoButton.setEnabled(editingEnabled && undo != null);
+        redoButton.setEnabled(editingEnabled && redo != null);
+        undoButton.setToolTipText(undo == null ? "Nothing to undo" : "Undo " + undo + " (Ctrl+Z)");
+        redoButton.setToolTipText(redo == null ? "Nothing to redo" : "Redo " + redo + " (Ctrl+Y)");
+    }
+
+    // The model replays the inverse edit, which is saved like any other. The months it touched
+    // are paged in first, as the cache may have evicted them since the edit was made.
+    private void undoOrRedo(boolean undo) {
+        if (!editingEnabled || undoPending || !(undo ? tableModel.canUndo() : tableModel.canRedo())) return;
+        int[] months = undo ? tableModel.undoMonths() : tableModel.redoMonths();
+        List<Integer> needed = new ArrayList<>(months.length);
+        for (int m : months) needed.add(m);
+        undoPending = true;
+        monthCache.load(needed, () -> {
+            undoPending = false;
+            if (!(undo ? tableModel.undo() : tableModel.redo())) {
+                JOptionPane.showMessageDialog(frame, "Some of the expenses this step changed are no longer in the ledger, so it "
+                        + "cannot be " + (undo ? "undone" : "redone") + ". It has been removed from the history.",
+                        undo ? "Undo" : "Redo", JOptionPane.WARNING_MESSAGE);
+            }
+            updateUndoButtons();
+            populateMonths();
+        });
+    }
+
+    private void openAddDialog() {
+        JDialog d = new JDialog(frame, "Add Expense", true);
+        d.setSize(420, 320);
+        d.setLocationRelativeTo(frame);
+        d.setLayout(new BorderLayout());
+
+        JPanel form = new JPanel();
+        form.setBorder(new EmptyBorder(12,12,12,12));
+        form.setLayout(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(8,8,8,8);
+        c.anchor = GridBagConstraints.WEST;
+
+        JLabel dateL = new JLabel("Date (yyyy-mm-dd):");
+        JLabel catL = new JLabel("Category:");
+        JLabel amtL = new JLabel("Amount:");
+        JLabel descL = new JLabel("Description:");
+
+        JTextField dateF = new JTextField(new SimpleDateFormat("yyyy-MM-dd").format(new Date()), 18);
+        JComboBox<String> catF = new JComboBox<>(CATEGORIES);
+        JTextField amtF = new JTextField(10);
+        JTextArea descF = new JTextArea(4, 18);
+        descF.setLineWrap(true);
+        descF.setWrapStyleWord(true);
+
+        c.gridx=0; c.gridy=0; form.add(dateL, c);
+        c.gridx=1; form.add(dateF, c);
+        c.gridx=0; c.gridy=1; form.add(catL, c);
+        c.gridx=1; form.add(catF, c);
+        c.gridx=0; c.gridy=2; form.add(amtL, c);
+        c.gridx=1; form.add(amtF, c);
+        c.gridx=0; c.gridy=3; form.add(descL, c);
+        c.gridx=1; form.add(new JScrollPane(descF), c);
+
+        d.add(form, BorderLayout.CENTER);
+
+        JPanel foot = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        foot.setBorder(new EmptyBorder(8,12,8,12));
+        JButton save = createPrimaryButton("Save");
+        JButton cancel = createTertiaryButton("Cancel");
+        save.addActionListener(ev -> {
+            String dateStr = dateF.getText().trim();
+            String category = (String) catF.getSelectedItem();
+            String amtStr = amtF.getText().trim();
+            String desc = descF.getText().trim();
+            if (dateStr.isEmpty() || amtStr.isEmpty()) {
+                JOptionPane.showMessageDialog(d, "Please enter required fields", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            try {
+                int day = parseDay(dateStr);
+                long amount = parseMinor(amtStr);
+                Expense ex = new Expense(day, category, amount, desc);
+                monthCache.load(neighbourMonths(Collections.singletonList(ex)), () -> {
+                    if (tableModel.duplicatesOf(ex) > 0 && JOptionPane.showConfirmDialog(d,
+                            "An expense with the same amount, category and description is already recorded\n"
+                                    + "within " + DuplicateIndex.WINDOW_DAYS + " days of this date. Add it anyway?",
+                            "Possible Duplicate", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) return;
+                    tableModel.addExpense(ex);
+                    populateMonthsIfNeeded(day);
+                    d.dispose();
+                });
+            } catch (ParseException pe) {
+                JOptionPane.showMessageDialog(d, "Invalid date format. Use yyyy-mm-dd", "Error", JOptionPane.ERROR_MESSAGE);
+            } catch (NumberFormatException ne) {
+                JOptionPane.showMessageDialog(d, "Invalid number for amount", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        cancel.addActionListener(ev -> d.dispose());
+
+        foot.add(cancel);
+        foot.add(save);
+        d.add(foot, BorderLayout.SOUTH);
+
+        d.setVisible(true);
+    }
+
+    private void populateMonthsIfNeeded(int day) {
+        String s = formatDay(day).substring(0, 7);
+        boolean found = false;
+        for (int i=0;i<monthFilterCombo.getItemCount();i++) {
+            if (s.equals(monthFilterCombo.getItemAt(i))) { found = true; break; }
+        }
+        if (!found) monthFilterCombo.addItem(s);
+    }
+
+    private JButton createPrimaryButton(String text) {
+        JButton b = new JButton(text);
+        b.setForeground(Color.WHITE);
+        b.setBackground(new Color(52,152,219));
+        b.setFocusPainted(false);
+        b.setBorder(new RoundedBorder(8));
+        b.setPreferredSize(new Dimension(120,34));
+        return b;
+    }
+    private JButton createSecondaryButton(String text) {
+        JButton b = new JButton(text);
+        b.setForeground(new Color(32,44,61));
+        b.setBackground(new Color(220,230,240));
+        b.setFocusPainted(false);
+        b.setBorder(new RoundedBorder(8));
+        b.setPreferredSize(new Dimension(120,34));
+        return b;
+    }
+    private JButton createTertiaryButton(String text) {
+        JButton b = new JButton(text);
+        b.setForeground(new Color(90,90,90));
+        b.setBackground(new Color(245,245,245));
+        b.setFocusPainted(false);
+        b.setBorder(new RoundedBorder(8));
+        b.setPreferredSize(new Dimension(120,34));
+        return b;
+    }
+
+    // Called on every model change; coalesced so a burst of row events costs one redraw.
+    private void scheduleRefreshTotals() {
+        if (totalsRefreshPending) return;
+        totalsRefreshPending = true;
+        SwingUtilities.invokeLater(() -> {
+            totalsRefreshPending = false;
+            refreshTotals();
+        });
+    }
+
+    // Reads the running aggregates for the month being shown: O(categories), not O(rows).
+    // A search has no aggregate, so its totals are summed over the matching rows.
+    private void refreshTotals() {
+        try (Metrics.Span span = Metrics.span("aggregate")) {
+            ExpenseAggregates.Bucket b;
+            if (!searchText.isEmpty()) {
+                b = new ExpenseAggregates.Bucket();
+                span.rows(sorter.getViewRowCount());
+                for (int v = 0; v < sorter.getViewRowCount(); v++) {
+                    int r = sorter.convertRowIndexToModel(v);
+                    b.apply(tableModel.categoryId(r), tableModel.amount(r), 1);
+                }
+            } else if (rangeFrom != Integer.MIN_VALUE || rangeTo != Integer.MAX_VALUE) {
+                b = tableModel.totalsBetween(sorter.dayFrom(), sorter.dayTo());
+            } else {
+                ExpenseAggregates agg = tableModel.aggregates();
+                b = selectedMonth < 0 ? agg.all() : agg.month(selectedMonth);
+            }
+            int onlyCategory = selectedCategory == null ? -1 : tableModel.findCategory(selectedCategory);
+            long total = b == null ? 0 : selectedCategory == null ? b.total : onlyCategory < 0 ? 0 : b.total(onlyCategory);
+            totalLabel.setText("Total: ₹" + formatMinor(total));
+
+            categoryPanel.removeAll();
+            if (b != null) {
+                for (int c = 0; c < b.categorySlots(); c++) {
+                    if (b.count(c) == 0 || (selectedCategory != null && c != onlyCategory)) continue;
+                    JLabel lbl = new JLabel(tableModel.categoryName(c) + " : ₹" + formatMinor(b.total(c)));
+                    lbl.setAlignmentX(Component.LEFT_ALIGNMENT);
+                    categoryPanel.add(lbl);
+                }
+            }
+            categoryPanel.revalidate();
+            categoryPanel.repaint();
+            refreshAlerts();
+            trendsChart.repaint();
+        }
+    }
+
+    // The alerts are already worked out by the rules as edits happen; this only reads the first
+    // few (again only when one has turned on or off) and their month totals.
+    private void refreshAlerts() {
+        if (budgets.changeCount() != alertChanges) {
+            alertChanges = budgets.changeCount();
+            alertList = budgets.activeAlerts(ALERT_LINES);
+        }
+        if (budgets.firedCount() > alertsSeen && editingEnabled) Toolkit.getDefaultToolkit().beep(); // not for what loading turns up
+        alertsSeen = budgets.firedCount();
+        alertPanel.removeAll();
+        if (alertList.isEmpty()) {
+            JLabel none = new JLabel(budgets.rules().isEmpty() ? "No budgets set" : "All within budget");
+            none.setForeground(new Color(120,130,140));
+            alertPanel.add(none);
+        }
+        ExpenseAggregates agg = tableModel.aggregates();
+        for (BudgetRules.Alert a : alertList) {
+            ExpenseAggregates.Bucket b = agg.month(a.month);
+            int cat = a.rule.category == null ? -1 : tableModel.findCategory(a.rule.category);
+            long spent = b == null ? 0 : cat < 0 ? b.total : b.total(cat);
+            JLabel lbl = new JLabel((a.rule.category == null ? "All" : a.rule.category) + " " + BudgetRules.monthText(a.month)
+                    + " : ₹" + formatMinor(spent) + " of ₹" + formatMinor(a.rule.limit));
+            lbl.setForeground(new Color(192,57,43));
+            lbl.setAlignmentX(Component.LEFT_ALIGNMENT);
+            alertPanel.add(lbl);
+        }
+        if (budgets.activeCount() > alertList.size()) alertPanel.add(new JLabel(String.format("and %,d more", budgets.activeCount() - alertList.size())));
+        alertPanel.revalidate();
+        alertPanel.repaint();
+    }
+
+    // on the EDT; edits another client made to a shared ledger
+    private void applyPeerChanges(List<ExpenseStore.Change> oldestFirst) {
+        tableModel.applyPeer(() -> {
+            for (ExpenseStore.Change c : oldestFirst) {
+                switch (c.kind) {
+                    case 'I': tableModel.addExpenses(c.inserted); break;
+                    case 'D': tableModel.removeIds(idSet(c.ids)); break;
+                    case 'C': tableModel.reassignCategory(tableModel.rowsWithIds(idSet(c.ids)), c.category); break;
+                }
+            }
+        });
+        populateMonths();
+    }
+
+    private static Set<Long> idSet(long[] ids) {
+        Set<Long> out = new HashSet<>(ids.length * 2);
+        for (long id : ids) out.add(id);
+        return out;
+    }
+
+    private void showSaveStatus(Ledger.Status status) {
+        switch (status) {
+            case PENDING:
+                saveStatusLabel.setText("Saving...");
+                saveStatusLabel.setForeground(new Color(120,130,140));
+                break;
+            case SAVED:
+                saveStatusLabel.setText("All changes saved");
+                saveStatusLabel.setForeground(new Color(39,174,96));
+                break;
+            case FAILED:
+                int unsent = writer.unsent();
+                saveStatusLabel.setText(unsent > 0 ? String.format("Not saved: %,d changes waiting to retry", unsent) : "Save failed - see console");
+                saveStatusLabel.setForeground(new Color(192,57,43));
+                break;
+        }
+    }
+
+    // Recovery runs on the writer thread, so edits made while it is in flight queue up behind it.
+    // Rows of the recent months arrive newest first, one chunk at a time, and are appended as
+    // they come; older months arrive as summaries and stay on disk until needed.
+    private void loadFromCSV() {
+        new SwingWorker<Integer, List<Expense>>() {
+            @Override
+            protected Integer doInBackground() throws Exception {
+                return writer.recover(batch -> publish(batch),
+                        summary -> SwingUtilities.invokeLater(() -> monthCache.addCold(summary))).get();
+            }
+            @Override
+            protected void process(List<List<Expense>> batches) {
+                for (List<Expense> b : batches) tableModel.appendLoaded(b);
+                saveStatusLabel.setText(String.format("Loading... %,d rows", tableModel.getRowCount()));
+            }
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    showSaveStatus(Ledger.Status.SAVED);
+                    setEditingEnabled(true);
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                    showSaveStatus(Ledger.Status.FAILED);
+                }
+                populateMonths();
+            }
+        }.execute();
+    }
+
+    // Date column: LocalDate values, text from a cache of yyyy-MM-dd strings per epoch day.
+    private static class DayCellRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private final ValueCache<String> text = new ValueCache<>(4096);
+        @Override
+        protected void setValue(Object value) {
+            setText(value instanceof LocalDate
+                    ? text.get(((LocalDate) value).toEpochDay(), d -> formatDay((int) d)) : "");
+        }
+    }
+
+    // Amount column: minor units, right aligned, text from a cache of formatted amounts.
+    private static class AmountCellRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private final ValueCache<String> text = new ValueCache<>(8192);
+        AmountCellRenderer() { setHorizontalAlignment(SwingConstants.RIGHT); }
+        @Override
+        protected void setValue(Object value) {
+            setText(value instanceof Long ? text.get((Long) value, LedgerFormat::formatMinor) : "");
+        }
+    }
+
+    // small rounded border for buttons
+    private static class RoundedBorder extends javax.swing.border.AbstractBorder {
+        private static final long serialVersionUID = 1L;
+        private final int radius;
+        RoundedBorder(int r) { radius = r; }
+        @Override
+        public void paintBorder(Component c, Graphics g, int x, int y, int width, int height) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(new Color(200,200,200));
+            g2.drawRoundRect(x, y, width-1, height-1, radius, radius);
+            g2.dispose();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("connect")) { // a window on a ledger server, with the token serve printed
+            URI server = URI.create(args[1]);
+            SwingUtilities.invokeLater(() -> new PremiumExpenseTracker(new RemoteLedger(server, args[2])));
+            return;
+        }
+        if (args.length > 0) { // import / summary / serve without a window
+            System.exit(ExpenseCli.run(args));
+        }
+        // Run GUI on EDT
+        SwingUtilities.invokeLater(() -> new PremiumExpenseTracker());
+    }
+}
@@ -0,0 +1,357 @@
+package expensetracker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+
+/*
+ * The UI's side of a ledger server (PremiumExpenseTracker connect URL). Edits are queued and
+ * sent in order by one background thread, so the UI never waits on the network; an edit the
+ * server did not take stays at the head of the queue and is retried with backoff, while one
+ * it refused outright is dropped and the next poll reloads the ledger, so the table no
+ * longer shows it. Ids come from blocks reserved on the server by the same thread before
+ * the current one runs out, so rows keep the id the model gave them; with none to hand (the
+ * server unreachable) a row gets a negative provisional id, is sent without one and is
+ * renumbered to the id the server stores it under. Every POLL_MS, once the queue is empty,
+ * the same thread asks for changes made by other clients and hands them to the peer
+ * listener.
+ */
+class RemoteLedger implements Ledger {
+    private static final long POLL_MS = 1000;
+    private static final int ID_BLOCK = 1024;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    // one edit waiting for the server
+    private static final class Mutation {
+        final String method;
+        final List<Expense> rows; // POST
+        final long[] ids; // DELETE, PATCH
+        final String category; // PATCH
+        Mutation(String method, List<Expense> rows, long[] ids, String category) {
+            this.method = method; this.rows = rows; this.ids = ids; this.category = category;
+        }
+    }
+
+    /** The server refused the request itself (a 4xx other than auth or throttling); sending it again will not help. */
+    private static final class Rejected extends IOException {
+        private static final long serialVersionUID = 1L;
+        Rejected(String message) { super(message); }
+    }
+
+    private final URI base;
+    private final String token;
+    private final String clientId = UUID.randomUUID().toString();
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "expense-remote");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object lock = new Object();
+    private final ArrayDeque<Mutation> unsent = new ArrayDeque<>(); // oldest first, guarded by lock
+    private boolean draining; // a drain is scheduled or running, guarded by lock
+    private long nextId, idsLeft, spareId, sparesLeft; // the block in use and the next one, guarded by lock
+    private boolean refilling; // guarded by lock
+    private long lastProvisional; // guarded by lock
+    private final Map<Long, Long> provisional = new HashMap<>(); // provisional id -> stored id, on the executor
+    private long backoffMs; // on the executor
+    private boolean resync; // the server refused an edit the model still shows, on the executor
+    private volatile Consumer<Status> statusListener = s -> {};
+    private volatile PeerListener peerListener;
+    private long since = -1, epoch; // on the executor thread; -1 until recovered
+
+    RemoteLedger(URI base, String token) {
+        this.base = base.getPath().endsWith("/") ? base : URI.create(base + "/");
+        this.token = token;
+    }
+
+    @Override
+    public void setStatusListener(Consumer<Status> l) { statusListener = l; }
+
+    @Override
+    public void setPeerListener(PeerListener l) { peerListener = l; }
+
+    @Override
+    public long allocateId() {
+        synchronized (lock) {
+            if (idsLeft == 0 && sparesLeft > 0) {
+                nextId = spareId;
+                idsLeft = sparesLeft;
+                sparesLeft = 0;
+            }
+            if (sparesLeft == 0 && idsLeft <= ID_BLOCK / 2 && !refilling && !executor.isShutdown()) {
+                refilling = true;
+                executor.execute(this::reserveIds);
+            }
+            if (idsLeft == 0) return --lastProvisional;
+            idsLeft--;
+            return nextId++;
+        }
+    }
+
+    @Override
+    public int unsent() {
+        synchronized (lock) { return unsent.size(); }
+    }
+
+    // on the executor; a failure leaves rows to provisional ids until the next try
+    private void reserveIds() {
+        try {
+            Map<?, ?> block = Json.object(Json.parse(send("POST", "ids?count=" + ID_BLOCK, null).body()));
+            long first = Json.number(block.get("first"), "first").longValueExact();
+            long count = Json.number(block.get("count"), "count").longValueExact();
+            synchronized (lock) {
+                spareId = first;
+                sparesLeft = count;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("could not reserve ids from " + base + ": " + e);
+        } finally {
+            synchronized (lock) { refilling = false; }
+        }
+    }
+
+    /** The whole ledger arrives as rows; a server keeps no month cold. Polling starts once it is in. */
+    @Override
+    public Future<Integer> recover(Consumer<List<Expense>> sink, Consumer<BinarySnapshot.Summary> cold) {
+        return executor.submit(() -> {
+            try (Metrics.Span span = Metrics.span("load")) {
+                reserveIds();
+                List<Expense> rows = fetchAll();
+                sink.accept(rows);
+                span.rows(rows.size());
+                executor.scheduleWithFixedDelay(this::poll, POLL_MS, POLL_MS, TimeUnit.MILLISECONDS);
+                return rows.size();
+            }
+        });
+    }
+
+    @Override
+    public List<Expense> readMonth(int month) throws IOException {
+        try (Metrics.Span span = Metrics.span("page in")) {
+            List<Expense> rows = rows(Json.parse(send("GET", "expenses?from=" + formatDay(firstDayOfMonth(month))
+                    + "&to=" + formatDay(firstDayOfMonth(month + 1) - 1), null).body()));
+            span.rows(rows.size());
+            return rows;
+        }
+    }
+
+    @Override
+    public void inserted(List<Expense> batch) {
+        List<Expense> copy = new ArrayList<>(batch.size());
+        for (Expense e : batch) {
+            Expense c = new Expense(e.day, e.category, e.amount, e.description);
+            c.id = e.id;
+            copy.add(c);
+        }
+        enqueue(new Mutation("POST", copy, null, null));
+    }
+
+    @Override
+    public void removed(long[] ids, int[] days) {
+        enqueue(new Mutation("DELETE", null, ids, null));
+    }
+
+    @Override
+    public void recategorized(long[] ids, int[] days, String category) {
+        enqueue(new Mutation("PATCH", null, ids, category));
+    }
+
+    private void enqueue(Mutation m) {
+        synchronized (lock) {
+            unsent.add(m);
+            if (!draining) {
+                draining = true;
+                executor.execute(this::drain);
+            }
+        }
+        statusListener.accept(Status.PENDING);
+    }
+
+    // Sends the queue in order. An edit leaves it only once the server has taken it (or
+    // refused it outright); when the server cannot be reached the drain comes back later.
+    // A refusal is not reported as saved: the status stays FAILED until the next edit.
+    private void drain() {
+        boolean refused = false;
+        while (true) {
+            Mutation m;
+            synchronized (lock) {
+                m = unsent.peek();
+                if (m == null) {
+                    draining = false;
+                    break;
+                }
+            }
+            try (Metrics.Span span = Metrics.span("save")) {
+                span.rows(m.rows != null ? m.rows.size() : m.ids.length);
+                send(m);
+                backoffMs = 0;
+            } catch (Rejected e) {
+                System.err.println("ledger server refused an edit, reloading: " + e.getMessage());
+                refused = resync = true;
+                statusListener.accept(Status.FAILED);
+            } catch (IOException | RuntimeException e) {
+                backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(500, backoffMs * 2));
+                System.err.println("ledger server: " + e + "; retrying in " + backoffMs + " ms");
+                statusListener.accept(Status.FAILED);
+                if (!executor.isShutdown()) executor.schedule(this::drain, backoffMs, TimeUnit.MILLISECONDS);
+                else synchronized (lock) { draining = false; }
+                return;
+            }
+            synchronized (lock) { unsent.poll(); }
+        }
+        statusListener.accept(refused ? Status.FAILED : Status.SAVED);
+    }
+
+    private void send(Mutation m) throws IOException {
+        if (m.rows == null) {
+            StringBuilder sb = new StringBuilder("{\"ids\":[");
+            int n = 0;
+            for (long id : m.ids) {
+                if (id < 0 && (id = provisional.getOrDefault(id, 0L)) == 0) continue; // never stored
+                sb.append(n++ == 0 ? "" : ",").append(id);
+            }
+            sb.append(']');
+            if (m.category != null) {
+                sb.append(",\"category\":");
+                Json.quote(sb, m.category);
+            }
+            if (n > 0) send(m.method, "expenses", sb.append('}').toString());
+            return;
+        }
+        StringBuilder sb = new StringBuilder(m.rows.size() * 100);
+        sb.append('[');
+        for (int i = 0; i < m.rows.size(); i++) {
+            Expense e = m.rows.get(i);
+            if (i > 0) sb.append(',');
+            long id = e.id;
+            if (id < 0) e.id = 0; // the server picks the id
+            Json.writeExpense(sb, e);
+            e.id = id;
+        }
+        List<Expense> stored = rows(Json.parse(send("POST", "expenses", sb.append(']').toString()).body()));
+        Map<Long, Long> renumbered = new HashMap<>();
+        for (int i = 0; i < m.rows.size(); i++) {
+            if (m.rows.get(i).id < 0) renumbered.put(m.rows.get(i).id, stored.get(i).id);
+        }
+        if (renumbered.isEmpty()) return;
+        provisional.putAll(renumbered);
+        PeerListener l = peerListener;
+        if (l != null) l.renumbered(renumbered);
+    }
+
+    // on the executor, so it never overtakes this client's own queued edits; not while any
+    // are unsent, as the server's view would not show them yet
+    private void poll() {
+        PeerListener l = peerListener;
+        if (l == null) return;
+        synchronized (lock) {
+            if (!unsent.isEmpty()) return;
+        }
+        try {
+            if (resync) {
+                l.reloaded(fetchAll());
+                resync = false;
+                return;
+            }
+            HttpResponse<String> r = exchange("GET", "changes?since=" + since, null);
+            if (r.statusCode() == 410) {
+                l.reloaded(fetchAll());
+                return;
+            }
+            check(r);
+            Map<?, ?> o = Json.object(Json.parse(r.body()));
+            long serverEpoch = Json.number(o.get("epoch"), "epoch").longValueExact();
+            if (serverEpoch != epoch) { // the server restarted: versions began again
+                epoch = serverEpoch;
+                l.reloaded(fetchAll());
+                return;
+            }
+            List<ExpenseStore.Change> changes = new ArrayList<>();
+            for (Object c : (List<?>) o.get("changes")) {
+                Map<?, ?> m = Json.object(c);
+                String kind = Json.string(m, "kind");
+                changes.add(new ExpenseStore.Change(Json.number(m.get("version"), "version").longValueExact(), kind.charAt(0), null,
+                        m.get("rows") == null ? null : rows(m.get("rows")),
+                        m.get("ids") == null ? null : Json.longs(m.get("ids"), "ids"),
+                        m.get("category") == null ? null : Json.string(m, "category")));
+            }
+            since = Json.number(o.get("version"), "version").longValueExact();
+            if (!changes.isEmpty()) l.changed(changes);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("ledger server poll failed: " + e.getMessage());
+        }
+    }
+
+    // also resets the change feed to the version the rows were read at
+    private List<Expense> fetchAll() throws IOException {
+        HttpResponse<String> r = send("GET", "expenses", null);
+        since = r.headers().firstValueAsLong(ExpenseServer.VERSION_HEADER).orElse(0);
+        if (epoch == 0) {
+            Map<?, ?> o = Json.object(Json.parse(send("GET", "changes?since=" + since, null).body()));
+            epoch = Json.number(o.get("epoch"), "epoch").longValueExact();
+        }
+        return rows(Json.parse(r.body()));
+    }
+
+    private static List<Expense> rows(Object json) {
+        if (!(json instanceof List)) throw new IllegalArgumentException("expected a JSON array of expenses");
+        List<?> list = (List<?>) json;
+        List<Expense> out = new ArrayList<>(list.size());
+        for (Object o : list) out.add(Json.readExpense(o));
+        return out;
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException {
+        return check(exchange(method, path, body));
+    }
+
+    private static HttpResponse<String> check(HttpResponse<String> r) throws IOException {
+        if (r.statusCode() / 100 == 2) return r;
+        String message = r.request().method() + " " + r.uri() + ": HTTP " + r.statusCode() + " " + r.body().trim();
+        int status = r.statusCode();
+        boolean retry = status / 100 != 4 || status == 401 || status == 403 || status == 408 || status == 429;
+        throw retry ? new IOException(message) : new Rejected(message);
+    }
+
+    private HttpResponse<String> exchange(String method, String path, String body) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(path))
+                .timeout(TIMEOUT)
+                .header(ExpenseServer.CLIENT_HEADER, clientId)
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        try {
+            return http.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int n = unsent();
+        if (n > 0) System.err.println(n + " unsent changes to " + base + " dropped");
+    }
+}
@@ -0,0 +1,139 @@
+package expensetracker;
+
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.*;
+
+import static expensetracker.LedgerFormat.firstDayOfMonth;
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.monthKey;
+
+/*
+ * Spending cube for the trends chart: amount per (day, week, month, year) x category,
+ * kept in step with the table model like ExpenseAggregates, so every mutation costs one
+ * add per level and a chart query costs O(buckets drawn) whatever the span. Months still
+ * on disk are counted from the daily totals in their partition summaries.
+ */
+class Rollups {
+    enum Level {
+        DAY, WEEK, MONTH, YEAR;
+
+        int bucket(int day) {
+            switch (this) {
+                case DAY: return day;
+                case WEEK: return Math.floorDiv(day + 3, 7); // weeks start on Monday; epoch day 0 is a Thursday
+                case MONTH: return monthKey(day);
+                default: return Math.floorDiv(monthKey(day), 12);
+            }
+        }
+
+        int firstDay(int bucket) {
+            switch (this) {
+                case DAY: return bucket;
+                case WEEK: return bucket * 7 - 3;
+                case MONTH: return firstDayOfMonth(bucket);
+                default: return firstDayOfMonth(bucket * 12);
+            }
+        }
+
+        String label(int bucket) {
+            switch (this) {
+                case DAY: return formatDay(bucket);
+                case WEEK: return "Week of " + formatDay(firstDay(bucket));
+                case MONTH:
+                    LocalDate d = LocalDate.ofEpochDay(firstDay(bucket));
+                    return d.getMonth().getDisplayName(TextStyle.SHORT, Locale.ENGLISH) + " " + d.getYear();
+                default: return String.valueOf(bucket);
+            }
+        }
+
+        /**
+         * The finest level that splits the days into at most {@code maxBuckets} buckets, which
+         * is how the chart downsamples: a decade is drawn from ~120 months, not 3650 days.
+         */
+        static Level forSpan(int fromDay, int toDay, int maxBuckets) {
+            for (Level l : values()) {
+                if (l.bucket(toDay) - l.bucket(fromDay) + 1 <= maxBuckets) return l;
+            }
+            return YEAR;
+        }
+    }
+
+    // One level: amounts indexed by bucket - base, per category and in total.
+    private static final class Series {
+        int base;
+        long[] total = new long[0];
+        long[][] byCategory = new long[0][];
+
+        void add(int bucket, int cat, long amount) {
+            if (bucket < base || bucket - base >= total.length) grow(bucket);
+            if (cat >= byCategory.length) byCategory = Arrays.copyOf(byCategory, Math.max(cat + 1, byCategory.length * 2));
+            if (byCategory[cat] == null) byCategory[cat] = new long[total.length];
+            total[bucket - base] += amount;
+            byCategory[cat][bucket - base] += amount;
+        }
+
+        long get(int bucket, int cat) {
+            int i = bucket - base;
+            if (i < 0 || i >= total.length) return 0;
+            if (cat < 0) return total[i];
+            return cat < byCategory.length && byCategory[cat] != null ? byCategory[cat][i] : 0;
+        }
+
+        private void grow(int bucket) {
+            int front = 0, length = total.length;
+            if (length == 0) {
+                base = bucket;
+                length = 1;
+            } else if (bucket < base) {
+                front = Math.max(base - bucket, length / 2 + 1);
+                length += front;
+            } else {
+                length = Math.max(bucket - base + 1, length + length / 2 + 1);
+            }
+            total = resize(total, front, length);
+            for (int c = 0; c < byCategory.length; c++) {
+                if (byCategory[c] != null) byCategory[c] = resize(byCategory[c], front, length);
+            }
+            base -= front;
+        }
+
+        private static long[] resize(long[] a, int front, int length) {
+            long[] out = new long[length];
+            System.arraycopy(a, 0, out, front, a.length);
+            return out;
+        }
+    }
+
+    private final Series[] levels = new Series[Level.values().length];
+    private int firstDay = Integer.MAX_VALUE, lastDay = Integer.MIN_VALUE;
+
+    Rollups() {
+        for (int i = 0; i < levels.length; i++) levels[i] = new Series();
+    }
+
+    void add(int day, int cat, long amount) {
+        for (Level l : Level.values()) levels[l.ordinal()].add(l.bucket(day), cat, amount);
+        if (day < firstDay) firstDay = day;
+        if (day > lastDay) lastDay = day;
+    }
+
+    void remove(int day, int cat, long amount) { add(day, cat, -amount); }
+
+    boolean isEmpty() { return firstDay > lastDay; }
+
+    /** First and last day ever recorded (removals do not shrink the span). */
+    int firstDay() { return firstDay; }
+    int lastDay() { return lastDay; }
+
+    /**
+     * Amounts of buckets {@code from..to} (inclusive) at one level.
+     * @param cat category id, or -1 for all categories
+     */
+    long[] series(Level level, int from, int to, int cat) {
+        Series s = levels[level.ordinal()];
+        long[] out = new long[Math.max(0, to - from + 1)];
+        for (int i = 0; i < out.length; i++) out[i] = s.get(from + i, cat);
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static expensetracker.LedgerFormat.formatDay;
+import static expensetracker.LedgerFormat.formatMinor;
+import static expensetracker.LedgerFormat.escapeCSV;
+
+/*
+ * Encoder behind Export. Each slice of rows is formatted into one reusable buffer and goes
+ * out as a single large write, straight to the FileChannel or through a gzip stream
+ * layered on it.
+ */
+class RowExporter implements Closeable {
+    enum Format {
+        CSV("CSV", ".csv"),
+        JSON_LINES("JSON Lines", ".jsonl");
+
+        final String label;
+        final String extension;
+        Format(String label, String extension) { this.label = label; this.extension = extension; }
+        @Override public String toString() { return label; }
+    }
+
+    private final Format format;
+    private final OutputStream out;
+    private final StringBuilder sb = new StringBuilder(1 << 20);
+
+    RowExporter(Path file, Format format, boolean gzip) throws IOException {
+        this.format = format;
+        OutputStream raw = Channels.newOutputStream(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        out = gzip ? new GZIPOutputStream(raw, 1 << 16) : raw;
+        if (format == Format.CSV) sb.append("date,category,amount,description\n");
+    }
+
+    void write(List<Expense> slice) throws IOException {
+        for (Expense e : slice) {
+            if (format == Format.CSV) {
+                sb.append(formatDay(e.day)).append(',').append(escapeCSV(e.category)).append(',')
+                  .append(formatMinor(e.amount)).append(',').append(escapeCSV(e.description)).append('\n');
+            } else {
+                sb.append("{\"date\":\"").append(formatDay(e.day)).append("\",\"category\":");
+                Json.quote(sb, e.category);
+                sb.append(",\"amount\":").append(formatMinor(e.amount)).append(",\"description\":");
+                Json.quote(sb, e.description);
+                sb.append("}\n");
+            }
+        }
+        flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close(); // finishes the gzip trailer and closes the channel
+        }
+    }
+
+    private void flush() throws IOException {
+        if (sb.length() == 0) return;
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        sb.setLength(0);
+    }
+}
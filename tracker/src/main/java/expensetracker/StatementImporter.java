@@ -0,0 +1,289 @@
+package expensetracker;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static expensetracker.LedgerFormat.parseDay;
+import static expensetracker.LedgerFormat.parseMinor;
+
+/*
+ * Streaming importer for bank statements and card exports. A file is read once through a
+ * quote-aware record reader, each record is mapped to an Expense by a Schema, and the
+ * results go to the sink in batches. Rows that do not map are reported and skipped; they
+ * never stop the file. An importer holds only its configuration, so one instance can
+ * work on several files at once.
+ */
+class StatementImporter {
+    /**
+     * Where each field comes from: a header name (case-insensitive) or a 1-based column
+     * position. The defaults read the tracker's own CSV export.
+     */
+    static final class Schema {
+        char delimiter = ',';
+        boolean header = true;
+        String date = "date";
+        DateTimeFormatter dateFormat; // null: yyyy-MM-dd and its lenient forms
+        String amount = "amount";
+        boolean negateAmounts; // statements that list spending as negative numbers
+        boolean skipCredits;   // drop rows whose (negated) amount is zero or below
+        String category = "category"; // optional
+        String defaultCategory = "Others";
+        String description = "description"; // optional
+
+        /** Reads a schema from a properties file; missing keys keep their defaults. */
+        static Schema load(Path file) throws IOException {
+            Properties p = new Properties();
+            try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                p.load(r);
+            }
+            Schema s = new Schema();
+            String delim = p.getProperty("delimiter", ",");
+            if (delim.isEmpty()) throw new IOException(file + ": delimiter is empty; use tab for tabs");
+            s.delimiter = delim.equals("\\t") || delim.equalsIgnoreCase("tab") ? '\t' : delim.charAt(0);
+            s.header = Boolean.parseBoolean(p.getProperty("header", "true"));
+            s.date = p.getProperty("date", s.date).trim();
+            String fmt = p.getProperty("dateFormat", "").trim();
+            try {
+                // strict, so 31/02 is a bad row rather than 29/02; 'u' keeps yyyy working without an era
+                s.dateFormat = fmt.isEmpty() ? null : DateTimeFormatter.ofPattern(fmt.replace('y', 'u'), Locale.ROOT)
+                        .withResolverStyle(ResolverStyle.STRICT);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ": bad dateFormat '" + fmt + "': " + e.getMessage());
+            }
+            s.amount = p.getProperty("amount", s.amount).trim();
+            s.negateAmounts = Boolean.parseBoolean(p.getProperty("negateAmounts", "false"));
+            s.skipCredits = Boolean.parseBoolean(p.getProperty("skipCredits", "false"));
+            s.category = p.getProperty("category", s.category).trim();
+            s.defaultCategory = p.getProperty("defaultCategory", s.defaultCategory).trim();
+            s.description = p.getProperty("description", s.description).trim();
+            return s;
+        }
+    }
+
+    /** Per-file outcome. Every record is counted exactly once as imported, skipped or bad. */
+    static final class FileReport {
+        final Path file;
+        long imported, skipped, bad;
+        String failure; // set when the file could not be read at all
+
+        FileReport(Path file) { this.file = file; }
+    }
+
+    private final Schema schema;
+    private final int batchSize;
+    private final PrintStream errors;
+    private final int maxErrorsPerFile;
+
+    StatementImporter(Schema schema, int batchSize, PrintStream errors, int maxErrorsPerFile) {
+        this.schema = schema;
+        this.batchSize = batchSize;
+        this.errors = errors;
+        this.maxErrorsPerFile = maxErrorsPerFile;
+    }
+
+    /**
+     * Streams one file (gzipped if it ends in .gz) to the sink in lists of up to batchSize.
+     * Expenses come out without ids. A file that cannot be opened or lacks a required
+     * column is reported as a failure rather than thrown.
+     */
+    FileReport importFile(Path file, Consumer<List<Expense>> sink) {
+        FileReport report = new FileReport(file);
+        InputStream raw = null;
+        try {
+            raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+            if (file.getFileName().toString().endsWith(".gz")) raw = new GZIPInputStream(raw, 1 << 16);
+            RecordReader in = new RecordReader(new InputStreamReader(raw, StandardCharsets.UTF_8), schema.delimiter);
+            List<String> fields = new ArrayList<>();
+            List<String> names = null;
+            if (schema.header) {
+                if (!in.next(fields)) return report;
+                if (!fields.isEmpty()) fields.set(0, stripBom(fields.get(0)));
+                names = new ArrayList<>(fields);
+            }
+            int date = column(schema.date, names, true);
+            int amount = column(schema.amount, names, true);
+            int category = column(schema.category, names, false);
+            int description = column(schema.description, names, false);
+            int needed = Math.max(date, amount) + 1;
+
+            List<Expense> batch = new ArrayList<>(batchSize);
+            while (in.next(fields)) {
+                if (fields.size() == 1 && fields.get(0).isBlank()) continue; // blank line
+                if (fields.size() < needed) {
+                    bad(report, in.recordLine(), "expected at least " + needed + " columns, found " + fields.size());
+                    continue;
+                }
+                Expense e;
+                try {
+                    e = map(fields, date, amount, category, description);
+                } catch (ParseException | DateTimeParseException ex) {
+                    bad(report, in.recordLine(), "bad date '" + fields.get(date) + "'");
+                    continue;
+                } catch (NumberFormatException ex) {
+                    bad(report, in.recordLine(), "bad amount '" + fields.get(amount) + "'");
+                    continue;
+                }
+                if (e == null) {
+                    report.skipped++;
+                    continue;
+                }
+                batch.add(e);
+                report.imported++;
+                if (batch.size() == batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) sink.accept(batch);
+        } catch (NoSuchFileException e) {
+            report.failure = "no such file";
+        } catch (IOException e) {
+            report.failure = e.getMessage();
+        } finally {
+            if (raw != null) try { raw.close(); } catch (IOException ignored) { }
+        }
+        return report;
+    }
+
+    private Expense map(List<String> f, int date, int amount, int category, int description) throws ParseException {
+        String d = f.get(date).trim();
+        int day = schema.dateFormat == null ? parseDay(d) : (int) LocalDate.parse(d, schema.dateFormat).toEpochDay();
+        long minor = parseAmount(f.get(amount));
+        if (schema.negateAmounts) minor = -minor;
+        if (schema.skipCredits && minor <= 0) return null;
+        String cat = category >= 0 && category < f.size() ? f.get(category).trim() : "";
+        String desc = description >= 0 && description < f.size() ? f.get(description).trim() : "";
+        return new Expense(day, cat.isEmpty() ? schema.defaultCategory : cat, minor, desc);
+    }
+
+    // Statement amounts carry currency signs, thousands separators and (1,234.00) negatives.
+    private static long parseAmount(String s) {
+        String t = s.trim();
+        boolean negative = t.startsWith("(") && t.endsWith(")");
+        StringBuilder sb = new StringBuilder(t.length());
+        for (int i = 0; i < t.length(); i++) {
+            char c = t.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+') sb.append(c);
+        }
+        if (sb.length() == 0) throw new NumberFormatException("empty amount");
+        long minor = parseMinor(sb.toString());
+        return negative ? -minor : minor;
+    }
+
+    private static int column(String spec, List<String> names, boolean required) throws IOException {
+        if (spec == null || spec.isEmpty()) {
+            if (required) throw new IOException("schema does not name a required column");
+            return -1;
+        }
+        if (spec.chars().allMatch(Character::isDigit)) {
+            int position = spec.length() > 9 ? 0 : Integer.parseInt(spec);
+            if (position < 1) throw new IOException("bad column position '" + spec + "': columns count from 1");
+            return position - 1;
+        }
+        if (names != null) {
+            for (int i = 0; i < names.size(); i++) if (names.get(i).trim().equalsIgnoreCase(spec)) return i;
+        }
+        if (!required) return -1;
+        throw new IOException(names == null ? "column '" + spec + "' needs a header row; use a position instead"
+                : "no column '" + spec + "' in header " + names);
+    }
+
+    private void bad(FileReport report, long line, String reason) {
+        if (report.bad++ < maxErrorsPerFile) errors.println(report.file + ":" + line + ": " + reason);
+    }
+
+    private static String stripBom(String s) {
+        return s.startsWith("\uFEFF") ? s.substring(1) : s;
+    }
+
+    // RFC 4180 records: quoted fields may hold delimiters, doubled quotes and line breaks.
+    private static final class RecordReader {
+        private final Reader in;
+        private final char delimiter;
+        private final char[] buf = new char[1 << 16];
+        private int pos, len;
+        private final StringBuilder field = new StringBuilder();
+        private long line = 1;
+        private long recordLine;
+
+        RecordReader(Reader in, char delimiter) {
+            this.in = in;
+            this.delimiter = delimiter;
+        }
+
+        /** Line on which the record last returned by {@link #next} started. */
+        long recordLine() { return recordLine; }
+
+        boolean next(List<String> out) throws IOException {
+            out.clear();
+            recordLine = line;
+            int c = read();
+            if (c < 0) return false;
+            boolean inQuotes = false, quoted = false;
+            while (true) {
+                if (inQuotes) {
+                    if (c < 0) { // unterminated quote: keep what there is
+                        out.add(field.toString());
+                        field.setLength(0);
+                        return true;
+                    }
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            field.append('"');
+                        } else {
+                            inQuotes = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0 && !quoted) {
+                    inQuotes = quoted = true;
+                } else if (c == delimiter) {
+                    out.add(field.toString());
+                    field.setLength(0);
+                    quoted = false;
+                } else if (c == '\n' || c < 0) {
+                    int n = field.length();
+                    if (n > 0 && field.charAt(n - 1) == '\r') field.setLength(n - 1);
+                    out.add(field.toString());
+                    field.setLength(0);
+                    if (c == '\n') line++;
+                    return true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pos == len && !fill()) return -1;
+            return buf[pos++];
+        }
+
+        private int peek() throws IOException {
+            if (pos == len && !fill()) return -1;
+            return buf[pos];
+        }
+
+        private boolean fill() throws IOException {
+            len = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (len < 0) len = 0;
+            return len > 0;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package expensetracker;
+
+import java.util.*;
+
+/*
+ * Description search index: lower-cased token -> ordinals of the rows containing it, kept
+ * in a sorted dictionary so a prefix query is one subMap walk. Ordinals work as in
+ * DateIndex (logical row = ordinal + prepends), except that removals are incremental:
+ * removed ordinals go into a sorted tombstone array and every live ordinal is shifted
+ * down by the tombstones below it. When tombstones reach a sixteenth of the postings,
+ * the lists are compacted in one pass. The index is built on the first search, so
+ * loading does not pay for it.
+ */
+class TextIndex {
+    // Longer digit runs (references, card numbers) would bloat the dictionary, so they are
+    // posted under their first digits and longer digit queries are checked per candidate.
+    private static final int MAX_DIGIT_TOKEN = 4;
+
+    private static final class Postings {
+        int[] ordinals = new int[2];
+        int size;
+
+        void add(int ordinal) {
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            ordinals[size++] = ordinal;
+        }
+    }
+
+    private final ExpenseColumns rows;
+    private final TreeMap<String, Postings> tokens = new TreeMap<>();
+    private boolean built;
+    private int prepends;
+    private int nextBack; // ordinal of the next appended row
+    private int[] tombstones = new int[0];
+    private int tombstoneCount;
+    private long postingCount;
+    private final List<String> scratch = new ArrayList<>();
+
+    TextIndex(ExpenseColumns rows) { this.rows = rows; }
+
+    void prepended(String description) {
+        if (!built) return;
+        prepends++;
+        add(description, -prepends);
+    }
+
+    void appended(String description) {
+        if (!built) return;
+        add(description, nextBack++);
+    }
+
+    /** Call before the rows leave the store. */
+    void removing(BitSet modelRows) {
+        if (!built) return;
+        int[] doomed = new int[modelRows.cardinality()];
+        int n = 0, j = 0;
+        for (int r = modelRows.nextSetBit(0); r >= 0; r = modelRows.nextSetBit(r + 1)) {
+            // the ordinal whose row is r: skip over tombstones at or below it
+            int o = r - prepends + j;
+            while (j < tombstoneCount && tombstones[j] <= o) o = r - prepends + ++j;
+            doomed[n++] = o;
+        }
+        int[] merged = new int[Math.max(16, tombstoneCount + n)];
+        int a = 0, b = 0, k = 0;
+        while (a < tombstoneCount || b < n) {
+            merged[k++] = b == n || (a < tombstoneCount && tombstones[a] < doomed[b]) ? tombstones[a++] : doomed[b++];
+        }
+        tombstones = merged;
+        tombstoneCount = k;
+        if (tombstoneCount > 1024 && tombstoneCount > postingCount / 16) compact(rows.size() - n);
+    }
+
+    /**
+     * Model rows whose description has, for every query word, a word starting with it.
+     * @return null when the query has no words (no filter)
+     */
+    BitSet search(String query) {
+        List<String> terms = tokenize(query, new ArrayList<>());
+        if (terms.isEmpty()) return null;
+        if (!built) build();
+        BitSet result = null;
+        for (String term : terms) {
+            String key = key(term);
+            BitSet match = new BitSet(rows.size());
+            for (Postings p : tokens.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+                for (int i = 0; i < p.size; i++) {
+                    int row = row(p.ordinals[i]);
+                    if (row >= 0) match.set(row);
+                }
+            }
+            if (!key.equals(term)) verify(term, match);
+            if (result == null) result = match;
+            else result.and(match);
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+
+    // live row of an ordinal, or -1 if it was removed
+    private int row(int ordinal) {
+        int rank = Arrays.binarySearch(tombstones, 0, tombstoneCount, ordinal);
+        if (rank >= 0) return -1;
+        return ordinal + prepends - (-rank - 1);
+    }
+
+    // drops candidates that share only the indexed digits with the term
+    private void verify(String term, BitSet match) {
+        List<String> words = new ArrayList<>();
+        for (int r = match.nextSetBit(0); r >= 0; r = match.nextSetBit(r + 1)) {
+            boolean found = false;
+            for (String w : tokenize(rows.description(r), words)) found |= w.startsWith(term);
+            if (!found) match.clear(r);
+        }
+    }
+
+    private void add(String description, int ordinal) {
+        List<String> keys = tokenize(description, scratch);
+        keys.replaceAll(TextIndex::key);
+        if (keys.size() > 1) Collections.sort(keys); // a word repeated in one description is posted once
+        String last = null;
+        for (String key : keys) {
+            if (key.equals(last)) continue;
+            tokens.computeIfAbsent(key, k -> new Postings()).add(ordinal);
+            postingCount++;
+            last = key;
+        }
+    }
+
+    private void build() {
+        tokens.clear();
+        postingCount = 0;
+        built = true;
+        prepends = 0;
+        nextBack = 0;
+        tombstoneCount = 0;
+        for (int r = 0; r < rows.size(); r++) appended(rows.description(r));
+    }
+
+    // rewrite every list in the row numbers the store will have once the removal is done
+    private void compact(int remaining) {
+        postingCount = 0;
+        for (Iterator<Postings> it = tokens.values().iterator(); it.hasNext(); ) {
+            Postings p = it.next();
+            int k = 0;
+            for (int i = 0; i < p.size; i++) {
+                int row = row(p.ordinals[i]);
+                if (row >= 0) p.ordinals[k++] = row;
+            }
+            p.size = k;
+            postingCount += k;
+            if (k == 0) it.remove();
+        }
+        prepends = 0;
+        nextBack = remaining;
+        tombstoneCount = 0;
+    }
+
+    private static String key(String word) {
+        if (word.length() <= MAX_DIGIT_TOKEN) return word;
+        for (int i = 0; i < word.length(); i++) if (!Character.isDigit(word.charAt(i))) return word;
+        return word.substring(0, MAX_DIGIT_TOKEN);
+    }
+
+    /** Lower-cased letter/digit runs of {@code s}, into {@code out} (cleared first). */
+    static List<String> tokenize(String s, List<String> out) {
+        out.clear();
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) start = i;
+            else if (!word && start >= 0) {
+                out.add(s.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
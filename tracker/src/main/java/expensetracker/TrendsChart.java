@@ -0,0 +1,173 @@
+package expensetracker;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+
+import static expensetracker.LedgerFormat.formatMinor;
+
+/*
+ * Spending over time, drawn from the model's Rollups. The level (day, week, month, year)
+ * is picked from the span and the width so there is at most one bar per MIN_BAR_PX
+ * pixels; painting a decade reads ~100 precomputed buckets, not a decade of rows. The
+ * wheel zooms around the pointer, dragging pans and a double-click shows everything.
+ */
+class TrendsChart extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final int MIN_BAR_PX = 3;
+    private static final int MIN_SPAN_DAYS = 14;
+    private static final Color BAR = new Color(52, 152, 219);
+    private static final Color NEGATIVE = new Color(39, 174, 96); // refunds
+    private static final Color GRID = new Color(220, 220, 220);
+    private static final Color TEXT = new Color(120, 130, 140);
+
+    private final ExpenseTableModel model;
+    private String category; // null: all
+    private boolean fitted = true; // follow the data's span
+    private int viewFrom, viewTo; // epoch days, when not fitted
+    private int dragX, dragFrom, dragTo;
+    // what the last paint drew, for tooltips
+    private Rollups.Level level;
+    private int firstBucket;
+    private long[] values = new long[0];
+    private final Rectangle plot = new Rectangle();
+
+    TrendsChart(ExpenseTableModel model) {
+        this.model = model;
+        setFont(new Font("SansSerif", Font.PLAIN, 11));
+        setToolTipText(""); // registers with the tooltip manager; text comes from getToolTipText(MouseEvent)
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) { zoom(e.getX(), e.getWheelRotation() < 0 ? 0.8 : 1.25); }
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragFrom = from();
+                dragTo = to();
+            }
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (plot.width <= 0) return;
+                int shift = (int) ((long) (dragX - e.getX()) * (dragTo - dragFrom) / plot.width);
+                show(dragFrom + shift, dragTo + shift);
+            }
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    fitted = true;
+                    repaint();
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    void setCategory(String category) {
+        this.category = category;
+        repaint();
+    }
+
+    private int from() { return fitted ? model.rollups().firstDay() : viewFrom; }
+    private int to() { return fitted ? model.rollups().lastDay() : viewTo; }
+
+    private void zoom(int x, double factor) {
+        Rollups r = model.rollups();
+        if (r.isEmpty() || plot.width <= 0) return;
+        int from = from(), to = to();
+        double at = from + (double) (Math.min(Math.max(x, plot.x), plot.x + plot.width) - plot.x) / plot.width * (to - from);
+        long span = Math.max(MIN_SPAN_DAYS, Math.round((to - from) * factor));
+        if (span >= r.lastDay() - r.firstDay()) {
+            fitted = true;
+            repaint();
+            return;
+        }
+        int lo = (int) Math.round(at - (at - from) * span / Math.max(1, to - from));
+        show(lo, (int) (lo + span));
+    }
+
+    private void show(int from, int to) {
+        fitted = false;
+        viewFrom = from;
+        viewTo = to;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g0) {
+        Metrics.time("paint chart", () -> draw((Graphics2D) g0.create()));
+    }
+
+    private void draw(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        FontMetrics fm = g.getFontMetrics();
+        int line = fm.getHeight();
+        plot.setBounds(0, line + 2, getWidth() - 1, getHeight() - 2 * line - 5);
+        g.setColor(Color.WHITE);
+        g.fillRect(plot.x, plot.y, plot.width, plot.height);
+        g.setColor(GRID);
+        g.drawRect(plot.x, plot.y, plot.width, plot.height);
+
+        Rollups r = model.rollups();
+        int cat = category == null ? -1 : model.findCategory(category);
+        if (r.isEmpty() || plot.width < MIN_BAR_PX || (category != null && cat < 0)) {
+            values = new long[0];
+            g.setColor(TEXT);
+            g.drawString("No expenses yet", plot.x + 6, plot.y + line);
+            g.dispose();
+            return;
+        }
+        int from = from(), to = to();
+        level = Rollups.Level.forSpan(from, to, plot.width / MIN_BAR_PX);
+        firstBucket = level.bucket(from);
+        values = r.series(level, firstBucket, level.bucket(to), cat);
+
+        long max = 0, min = 0;
+        for (long v : values) {
+            max = Math.max(max, v);
+            min = Math.min(min, v);
+        }
+        double scale = (plot.height - 2) / (double) Math.max(1, max - min);
+        int zeroY = plot.y + 1 + (int) Math.round(max * scale);
+        int n = values.length;
+        for (int i = 0; i < n; i++) {
+            if (values[i] == 0) continue;
+            int x0 = plot.x + 1 + (int) ((long) i * (plot.width - 1) / n);
+            int x1 = plot.x + 1 + (int) ((long) (i + 1) * (plot.width - 1) / n);
+            int h = (int) Math.max(1, Math.round(Math.abs(values[i]) * scale));
+            g.setColor(values[i] > 0 ? BAR : NEGATIVE);
+            g.fillRect(x0, values[i] > 0 ? zeroY - h : zeroY, Math.max(1, x1 - x0 - 1), h);
+        }
+
+        g.setColor(TEXT);
+        String title = levelName(level) + (category == null ? "" : " · " + category);
+        g.drawString(title, 0, fm.getAscent());
+        String peak = "max ₹" + formatMinor(max);
+        g.drawString(peak, getWidth() - fm.stringWidth(peak), fm.getAscent());
+        int axisY = plot.y + plot.height + 2 + fm.getAscent();
+        g.drawString(level.label(firstBucket), 0, axisY);
+        String last = level.label(firstBucket + n - 1);
+        g.drawString(last, getWidth() - fm.stringWidth(last), axisY);
+        g.dispose();
+    }
+
+    private static String levelName(Rollups.Level level) {
+        switch (level) {
+            case DAY: return "Daily";
+            case WEEK: return "Weekly";
+            case MONTH: return "Monthly";
+            default: return "Yearly";
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        if (values.length == 0 || !plot.contains(e.getPoint())) return "Wheel to zoom, drag to pan, double-click to show all";
+        int i = (int) ((long) (e.getX() - plot.x) * values.length / Math.max(1, plot.width));
+        i = Math.min(values.length - 1, Math.max(0, i));
+        return level.label(firstBucket + i) + ": ₹" + formatMinor(values[i]);
+    }
+}
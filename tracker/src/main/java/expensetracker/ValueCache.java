@@ -0,0 +1,30 @@
+package expensetracker;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+// Direct-mapped cache keyed by a long; a miss simply overwrites the slot.
+final class ValueCache<T> {
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    ValueCache(int size) { // power of two
+        keys = new long[size];
+        values = new Object[size];
+        mask = size - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(long key, LongFunction<T> compute) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        Object v = values[slot];
+        if (v != null && keys[slot] == key) return (T) v;
+        T fresh = compute.apply(key);
+        keys[slot] = key;
+        values[slot] = fresh;
+        return fresh;
+    }
+
+    void clear() { Arrays.fill(values, null); }
+}
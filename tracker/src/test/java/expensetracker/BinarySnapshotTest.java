@@ -0,0 +1,95 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Snapshots and partitions read back exactly what was written, in either order and across
+ * batches; a partition's summary agrees with its rows; and a flipped byte anywhere in the
+ * rows is rejected before a row is handed out.
+ */
+class BinarySnapshotTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void ledgerRoundTripsInBothOrders() throws IOException {
+        List<Expense> rows = rows(150_000, 0); // more than two batches
+        Path file = dir.resolve("ledger.bin");
+        BinarySnapshot.write(file, rows);
+
+        assertEquals(text(rows), text(read(file, false)));
+        List<Expense> reversed = new ArrayList<>(rows);
+        Collections.reverse(reversed);
+        assertEquals(text(reversed), text(read(file, true)));
+    }
+
+    @Test
+    void partitionSummaryMatchesItsRows() throws IOException {
+        int march = LedgerFormat.monthKey((int) java.time.LocalDate.of(2024, 3, 1).toEpochDay());
+        List<Expense> rows = rows(1000, LedgerFormat.firstDayOfMonth(march));
+        Path file = dir.resolve("2024-03.bin");
+        BinarySnapshot.Summary written = BinarySnapshot.writePartition(file, march, rows);
+        BinarySnapshot.Summary read = BinarySnapshot.readSummary(file);
+
+        assertEquals(march, read.month);
+        assertEquals(1000, read.rows);
+        assertEquals(rows.stream().mapToLong(e -> e.amount).sum(), read.total);
+        assertEquals(1000, read.maxId);
+        assertArrayEquals(written.totals, read.totals);
+        assertArrayEquals(written.daily, read.daily);
+        assertEquals(text(rows), text(read(file, false)));
+    }
+
+    @Test
+    void damagedSnapshotIsRejected() throws IOException {
+        Path file = dir.resolve("ledger.bin");
+        BinarySnapshot.write(file, rows(500, 0));
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, 2000);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            ch.write(b, 2000);
+        }
+        List<Expense> seen = new ArrayList<>();
+        IOException e = assertThrows(IOException.class, () -> BinarySnapshot.read(file, false, seen::addAll));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+        assertTrue(seen.isEmpty());
+    }
+
+    // days within the month starting at firstDay (or spread over years from day 0), a few
+    // categories, and descriptions with non-ASCII text, quotes, line breaks and empty ones
+    private static List<Expense> rows(int n, int firstDay) {
+        List<Expense> out = new ArrayList<>(n);
+        Random random = new Random(n);
+        for (int i = 0; i < n; i++) {
+            int day = firstDay == 0 ? 18_000 + i / 100 : firstDay + random.nextInt(28);
+            String desc = i % 7 == 0 ? "" : "café " + i + (i % 3 == 0 ? ", \"quoted\"\n" : "");
+            Expense e = new Expense(day, "Cat " + random.nextInt(5), random.nextInt(2_000_000) - 1000, desc);
+            e.id = i + 1;
+            out.add(e);
+        }
+        return out;
+    }
+
+    private static List<Expense> read(Path file, boolean newestFirst) throws IOException {
+        List<Expense> out = new ArrayList<>();
+        BinarySnapshot.read(file, newestFirst, out::addAll);
+        return out;
+    }
+
+    private static List<String> text(List<Expense> rows) {
+        List<String> out = new ArrayList<>(rows.size());
+        for (Expense e : rows) out.add(e.id + "|" + e.day + "|" + e.category + "|" + e.amount + "|" + e.description);
+        return out;
+    }
+}
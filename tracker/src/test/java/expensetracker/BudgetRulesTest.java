@@ -0,0 +1,87 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Budget alerts are on while a total is strictly above the limit: reaching the limit
+ * exactly does not fire one, and falling back to it clears it. Alerts are compared as
+ * "rule @ month", newest month first.
+ */
+class BudgetRulesTest {
+    private static final String[] CATEGORIES = {"Food", "Travel", "Bills"};
+    private static final int MARCH = day("2024-03-10"), APRIL = day("2024-04-10");
+
+    private final ExpenseAggregates totals = new ExpenseAggregates();
+    private final BudgetRules budgets = new BudgetRules(c -> CATEGORIES[c]);
+
+    @Test
+    void firesAboveTheLimitAndClearsAtIt() {
+        budgets.setRules(BudgetRules.parseAll("Food > 100\nFood 2024-03 > 50\n* > 150\nTravel > 100"), totals);
+        totals.setListener(budgets);
+
+        totals.add(MARCH, 0, 10_000); // Food at exactly 100
+        assertEquals(List.of("Food 2024-03 > 50.00 @ 2024-03"), alerts());
+        totals.add(MARCH, 0, 1);
+        assertEquals(List.of("Food > 100.00 @ 2024-03", "Food 2024-03 > 50.00 @ 2024-03"), alerts());
+        totals.remove(MARCH, 0, 1);
+        assertEquals(List.of("Food 2024-03 > 50.00 @ 2024-03"), alerts());
+
+        // one edit crossing several limits at once, both ways
+        totals.add(MARCH, 1, 20_000);
+        assertEquals(List.of("Food 2024-03 > 50.00 @ 2024-03", "* > 150.00 @ 2024-03", "Travel > 100.00 @ 2024-03"), alerts());
+        totals.add(MARCH, 1, -20_000); // a refund
+        assertEquals(List.of("Food 2024-03 > 50.00 @ 2024-03"), alerts());
+        assertEquals(4, budgets.firedCount());
+    }
+
+    @Test
+    void monthRulesStayInTheirMonthAndNewestMonthComesFirst() {
+        budgets.setRules(BudgetRules.parseAll("Food 2024-03 > 50\nFood > 60"), totals);
+        totals.setListener(budgets);
+
+        totals.add(APRIL, 0, 5_001);
+        assertEquals(List.of(), alerts());
+        totals.add(MARCH, 0, 7_000);
+        totals.add(APRIL, 0, 1_000);
+        assertEquals(List.of("Food > 60.00 @ 2024-04", "Food 2024-03 > 50.00 @ 2024-03", "Food > 60.00 @ 2024-03"), alerts());
+    }
+
+    @Test
+    void setRulesCountsWhatIsAlreadyOverAsNothingNew() {
+        totals.add(MARCH, 2, 5_000);
+        totals.add(MARCH, 0, 9_000);
+        totals.setListener(budgets);
+        budgets.setRules(BudgetRules.parseAll("# limits\nBills > 49.99\n\nFood > 90"), totals);
+
+        assertEquals(List.of("Bills > 49.99 @ 2024-03"), alerts());
+        assertEquals(0, budgets.firedCount());
+        totals.add(MARCH, 0, 1);
+        assertEquals(List.of("Bills > 49.99 @ 2024-03", "Food > 90.00 @ 2024-03"), alerts());
+        assertEquals(1, budgets.firedCount());
+    }
+
+    @Test
+    void badRulesNameTheirLine() {
+        assertEquals("* 2026-03 > 1000.00", BudgetRules.Rule.parse("* 2026-03 > 1,000").toString());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> BudgetRules.parseAll("Food > 10\nFood 2026-13 > 5"));
+        assertEquals("line 2: bad month in: Food 2026-13 > 5", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> BudgetRules.Rule.parse("Food > -5"));
+        assertThrows(IllegalArgumentException.class, () -> BudgetRules.Rule.parse("2026-03 > 5"));
+    }
+
+    private List<String> alerts() {
+        List<String> out = new ArrayList<>();
+        for (BudgetRules.Alert a : budgets.activeAlerts(100)) out.add(a.rule + " @ " + BudgetRules.monthText(a.month));
+        return out;
+    }
+
+    private static int day(String date) {
+        return (int) LocalDate.parse(date).toEpochDay();
+    }
+}
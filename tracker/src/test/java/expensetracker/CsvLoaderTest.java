@@ -0,0 +1,72 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The two kinds of file without an id column: the old CSV ledger, which wrote descriptions
+ * raw with whatever quotes they held, and exports, which quote with escapeCSV. Both must
+ * read back row for row. Rows are compared as "day|category|amount|description".
+ */
+class CsvLoaderTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void legacyLedgerMigratesWithItsQuotesAsWritten() throws IOException {
+        Files.write(dir.resolve(ExpenseJournal.CSV_FILE), List.of(
+                "date,category,amount,description",
+                "2024-03-01,Food,10.00,\"Gift\" for mom",
+                "2024-03-02,Food,5.50,\"unmatched, and a comma",
+                "2024-03-03,Travel,7.25,train \"late\", again",
+                "2024-03-04,Bills,1.00,\"quoted all through\""), StandardCharsets.UTF_8);
+        ExpenseJournal journal = ExpenseJournal.inDirectory(dir, ExpenseJournal.SyncMode.NONE);
+        List<Expense> recovered = new ArrayList<>();
+        journal.recover(recovered::addAll, summary -> { });
+        journal.close();
+
+        assertEquals(List.of(
+                day("2024-03-01") + "|Food|1000|\"Gift\" for mom",
+                day("2024-03-02") + "|Food|550|\"unmatched, and a comma",
+                day("2024-03-03") + "|Travel|725|train \"late\", again",
+                day("2024-03-04") + "|Bills|100|quoted all through"), oldestFirst(recovered));
+        assertTrue(Files.exists(dir.resolve(ExpenseJournal.CSV_FILE + ".migrated")));
+    }
+
+    @Test
+    void exportReadsBackAsWritten() throws IOException {
+        List<Expense> rows = new ArrayList<>();
+        String[] descriptions = {"plain", "", "a, b", "say \"hi\"", "\"starts quoted\" then not",
+                "two\nlines, \"quoted\"", "\"", "ends with a quote\""};
+        for (int i = 0; i < descriptions.length; i++) {
+            rows.add(new Expense(day("2024-03-01") + i, i % 2 == 0 ? "Food, Drinks" : "\"Odd", 100 * i - 50, descriptions[i]));
+        }
+        Path file = dir.resolve("export.csv");
+        try (RowExporter out = new RowExporter(file, RowExporter.Format.CSV, false)) {
+            out.write(rows);
+        }
+        List<Expense> read = new ArrayList<>();
+        CsvLoader.read(file, false, read::addAll);
+
+        assertEquals(oldestFirst(rows), oldestFirst(read));
+    }
+
+    private static List<String> oldestFirst(List<Expense> rows) {
+        List<String> out = new ArrayList<>();
+        for (Expense e : rows) out.add(e.day + "|" + e.category + "|" + e.amount + "|" + e.description);
+        Collections.sort(out);
+        return out;
+    }
+
+    private static int day(String date) {
+        return (int) java.time.LocalDate.parse(date).toEpochDay();
+    }
+}
@@ -0,0 +1,100 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * DuplicateIndex against a brute-force count over the rows. Few distinct rows and a narrow
+ * range of days make long runs of equal fingerprints in the table, so removals have to
+ * shift entries back across them without losing one.
+ */
+class DuplicateIndexTest {
+    private static final int DAY = 19_800;
+
+    private final ExpenseColumns columns = new ExpenseColumns();
+    private final DuplicateIndex index = new DuplicateIndex(columns);
+    private long nextId = 1;
+
+    @Test
+    void matchesWithinTwoDaysEitherSide() {
+        add(new Expense(DAY, "Food", 450, "Coffee, Bean"));
+        for (int d = -4; d <= 4; d++) {
+            assertEquals(Math.abs(d) <= DuplicateIndex.WINDOW_DAYS ? 1 : 0,
+                    index.matches(new Expense(DAY + d, "Food", 450, "coffee bean")), "day " + d);
+        }
+        assertEquals(0, index.matches(new Expense(DAY, "Food", 451, "coffee bean")));
+        assertEquals(0, index.matches(new Expense(DAY, "Travel", 450, "coffee bean")));
+        assertEquals(0, index.matches(new Expense(DAY, "Food", 450, "coffeebean")));
+    }
+
+    @Test
+    void staysExactUnderAddsAndRemoves() {
+        Random random = new Random(7);
+        index.matches(probe(0, 0, 0, 0)); // built now, kept up to date from here on
+        for (int op = 0; op < 120; op++) {
+            if (random.nextInt(3) > 0 || columns.size() == 0) {
+                for (int n = random.nextInt(40); n >= 0; n--) {
+                    add(probe(random.nextInt(20), random.nextInt(3), random.nextInt(2), random.nextInt(2)));
+                }
+            } else {
+                BitSet doomed = new BitSet();
+                for (int r = 0; r < columns.size(); r++) if (random.nextInt(3) == 0) doomed.set(r);
+                index.removing(doomed);
+                columns.removeAll(doomed);
+            }
+            for (int day = -3; day < 23; day++) {
+                for (int amount = 0; amount < 3; amount++) {
+                    for (int cat = 0; cat < 2; cat++) {
+                        for (int desc = 0; desc < 2; desc++) {
+                            Expense p = probe(day, amount, cat, desc);
+                            assertEquals(bruteForce(p), index.matches(p), "after op " + op);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void bulkPassChainsRowsWithinTheWindow() {
+        long[] chain = {add(DAY, 100), add(DAY + 2, 100), add(DAY + 4, 100)};
+        add(DAY + 7, 100); // three days on: a new group
+        long sameDay = add(DAY + 7, 100);
+        add(DAY, 101);
+
+        DuplicateIndex.Found found = DuplicateIndex.find(columns.snapshot(1));
+        assertEquals(2, found.groups);
+        long[] ids = found.ids.clone();
+        Arrays.sort(ids);
+        assertArrayEquals(new long[]{chain[1], chain[2], sameDay}, ids); // the first of each group is kept
+    }
+
+    private long add(int day, long amount) {
+        Expense e = new Expense(day, "Food", amount, "lunch");
+        add(e);
+        return e.id;
+    }
+
+    private void add(Expense e) {
+        e.id = nextId++;
+        columns.addLast(e);
+        index.added(columns.size() - 1);
+    }
+
+    // days DAY..DAY+19, two spellings of each description
+    private static Expense probe(int day, int amount, int cat, int desc) {
+        return new Expense(DAY + day, cat == 0 ? "Food" : "Bills", 100 + amount, desc == 0 ? "Tea, Shop" : "tea shop!");
+    }
+
+    private int bruteForce(Expense p) {
+        int n = 0;
+        for (int r = 0; r < columns.size(); r++) {
+            Expense e = columns.get(r);
+            if (Math.abs(e.day - p.day) <= DuplicateIndex.WINDOW_DAYS && e.amount == p.amount && e.category.equals(p.category)) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,135 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * ExpenseColumns against a plain list of rows under random edits that cross chunks, wrap the
+ * ring, grow it and compact the description arena. Every snapshot taken along the way must
+ * still read exactly the rows it was taken of.
+ */
+class ExpenseColumnsTest {
+    private final Random random = new Random(3);
+    private final ExpenseColumns columns = new ExpenseColumns();
+    private final List<String> live = new ArrayList<>();
+    private long nextId = 1;
+
+    @Test
+    void matchesAListUnderRandomEdits() {
+        for (int op = 0; op < 400; op++) {
+            edit();
+            assertEquals(live, rows(columns));
+        }
+    }
+
+    @Test
+    void arenaCompactionKeepsDescriptions() {
+        for (int i = 0; i < 4000; i++) columns.addLast(wide(i));
+        BitSet doomed = new BitSet();
+        for (int r = 0; r < 4000; r++) if (r % 4 != 0) doomed.set(r);
+        columns.removeAll(doomed); // 1.5M chars of garbage: the arena is rewritten
+        for (int i = 0; i < 100; i++) columns.addFirst(expense(10_000 + i));
+
+        assertEquals(1100, columns.size());
+        for (int r = 100; r < 1100; r++) assertEquals(wide(4 * (r - 100)).description, columns.description(r));
+    }
+
+    @Test
+    void snapshotsStayUnchangedUnderLaterEdits() {
+        Map<ExpenseColumns.Snapshot, List<String>> taken = new LinkedHashMap<>();
+        for (int op = 0; op < 400; op++) {
+            edit();
+            if (op % 10 == 0) taken.put(columns.snapshot(op), new ArrayList<>(live));
+        }
+        assertEquals(live, rows(columns));
+        for (Map.Entry<ExpenseColumns.Snapshot, List<String>> t : taken.entrySet()) {
+            assertEquals(t.getValue(), rows(t.getKey()), "snapshot " + t.getKey().version);
+        }
+    }
+
+    @Test
+    void arenaCompactionLeavesSnapshotsReadable() {
+        for (int i = 0; i < 4000; i++) columns.addLast(wide(i));
+        ExpenseColumns.Snapshot before = columns.snapshot(1);
+        List<String> expected = rows(before);
+        BitSet doomed = new BitSet();
+        for (int r = 0; r < 4000; r++) if (r % 4 != 0) doomed.set(r);
+        columns.removeAll(doomed);
+        for (int i = 0; i < 100; i++) columns.addFirst(expense(10_000 + i));
+
+        assertEquals(expected, rows(before));
+    }
+
+    // one random edit, applied to the columns and to the list
+    private void edit() {
+        switch (random.nextInt(5)) {
+            case 0:
+            case 1: {
+                boolean first = random.nextBoolean();
+                for (int n = 1 + random.nextInt(1500); n > 0; n--) {
+                    Expense e = expense(nextId++);
+                    if (first) columns.addFirst(e);
+                    else columns.addLast(e);
+                    live.add(first ? 0 : live.size(), row(e));
+                }
+                break;
+            }
+            case 2: {
+                BitSet doomed = new BitSet();
+                double share = random.nextDouble();
+                for (int r = 0; r < live.size(); r++) if (random.nextDouble() < share) doomed.set(r);
+                columns.removeAll(doomed);
+                for (int r = doomed.length() - 1; r >= 0; r = doomed.previousSetBit(r - 1)) live.remove(r);
+                break;
+            }
+            case 3:
+                for (int n = 0; n < 50 && !live.isEmpty(); n++) {
+                    int r = random.nextInt(live.size());
+                    columns.setCategory(r, "Cat " + random.nextInt(40));
+                    live.set(r, row(columns.get(r)));
+                }
+                break;
+            default:
+                for (int n = 0; n < 50 && !live.isEmpty(); n++) {
+                    int r = random.nextInt(live.size());
+                    columns.setId(r, nextId++);
+                    live.set(r, row(columns.get(r)));
+                }
+        }
+    }
+
+    private Expense expense(long id) {
+        StringBuilder text = new StringBuilder();
+        for (int n = random.nextInt(12); n > 0; n--) text.append("word").append(random.nextInt(100)).append(' ');
+        if (random.nextInt(20) == 0) text.append("y".repeat(random.nextInt(3000)));
+        Expense e = new Expense(18_000 + random.nextInt(2000), "Cat " + random.nextInt(30), random.nextInt(1_000_000) - 1000, text.toString());
+        e.id = id;
+        return e;
+    }
+
+    // a row with 500 chars of text, enough of them to make the arena compact on a big removal
+    private static Expense wide(int i) {
+        Expense e = new Expense(19_000 + i % 90, "Food", i, "x".repeat(500) + i);
+        e.id = i + 1;
+        return e;
+    }
+
+    private static String row(Expense e) {
+        return e.id + "|" + e.day + "|" + e.category + "|" + e.amount + "|" + e.description;
+    }
+
+    private static List<String> rows(ExpenseColumns columns) {
+        List<String> out = new ArrayList<>(columns.size());
+        for (int r = 0; r < columns.size(); r++) out.add(row(columns.get(r)));
+        return out;
+    }
+
+    private static List<String> rows(ExpenseColumns.Snapshot snapshot) {
+        List<String> out = new ArrayList<>(snapshot.size());
+        for (int r = 0; r < snapshot.size(); r++) out.add(row(snapshot.get(r)));
+        return out;
+    }
+}
@@ -0,0 +1,144 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Recovery of the journal after a crash, fields that need escaping, and compaction running
+ * while appends go on. Rows are compared as id -> "day|category|amount|description".
+ */
+class ExpenseJournalTest {
+    private static final int MARCH = LedgerFormat.monthKey(dayOf("2024-03-05"));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tornTailIsDroppedAndAppendingResumes() throws IOException {
+        ExpenseJournal journal = open();
+        for (int i = 0; i < 3; i++) insert(journal, "Food", "lunch " + i);
+        journal.commit();
+        long intact = Files.size(journal());
+        insert(journal, "Bills, Utilities", "power\nbill \"March\""); // spans two lines on disk
+        journal.close();
+
+        // the crash: the last record is only half written, cut inside its quoted line break
+        long full = Files.size(journal());
+        try (FileChannel ch = FileChannel.open(journal(), StandardOpenOption.WRITE)) {
+            ch.truncate(intact + (full - intact) / 2);
+        }
+        ExpenseJournal recovered = open();
+        Map<Long, String> rows = rows(recovered.readMonth(MARCH));
+        assertEquals(3, rows.size());
+        assertEquals(intact, Files.size(journal()), "torn record truncated away");
+
+        long next = insert(recovered, "Travel", "train");
+        recovered.commit();
+        recovered.close();
+        rows = rows(open().readMonth(MARCH));
+        assertEquals(4, rows.size());
+        assertTrue(rows.get(next).endsWith("|Travel|" + 100 * next + "|train"));
+    }
+
+    @Test
+    void fieldsWithCommasQuotesAndLineBreaksReadBackAsWritten() throws IOException {
+        ExpenseJournal journal = open();
+        long a = insert(journal, "Food, Drinks", "line one\nline two, \"quoted\"");
+        long b = insert(journal, "\"Odd", "plain");
+        journal.appendRecategorize(b, dayOf("2024-03-05"), "A,\"B\"\nC");
+        journal.commit();
+        Map<Long, String> before = rows(journal.readMonth(MARCH));
+        journal.close();
+
+        Map<Long, String> after = rows(open().readMonth(MARCH));
+        assertEquals(before, after);
+        assertTrue(after.get(a).endsWith("|Food, Drinks|" + 100 * a + "|line one\nline two, \"quoted\""));
+        assertTrue(after.get(b).contains("|A,\"B\"\nC|"));
+    }
+
+    @Test
+    void compactionRacingAppendsLosesNothing() throws Exception {
+        ExpenseJournal journal = open();
+        Map<Long, String> expected = new TreeMap<>();
+        List<Long> ids = new ArrayList<>();
+        // enough records that this commit rotates the journal and starts a compaction
+        for (int i = 0; i < 12_000; i++) ids.add(insert(journal, "Food", "row " + i));
+        journal.commit();
+        Path partition = dir.resolve(ExpenseJournal.PARTITION_DIR).resolve("2024-03.bin");
+        assertTrue(Files.exists(rotated()) || Files.exists(partition), "commit started a compaction");
+
+        // meanwhile: deletes and category changes of rows being folded, and new rows
+        Random random = new Random(5);
+        int day = dayOf("2024-03-05");
+        Set<Long> deleted = new HashSet<>();
+        Map<Long, String> recategorized = new HashMap<>();
+        for (int round = 0; round < 200; round++) {
+            long id = ids.get(random.nextInt(ids.size()));
+            if (deleted.add(id)) journal.appendDelete(id, day);
+            long other = ids.get(random.nextInt(ids.size()));
+            if (!deleted.contains(other)) {
+                journal.appendRecategorize(other, day, "Moved " + round);
+                recategorized.put(other, "Moved " + round);
+            }
+            ids.add(insert(journal, "Late", "late " + round));
+            journal.commit();
+            if (round % 50 == 0) assertEquals(ids.size() - deleted.size(), journal.readMonth(MARCH).size());
+        }
+        for (int i = 0; i < 200 && Files.exists(rotated()); i++) Thread.sleep(50);
+        assertFalse(Files.exists(rotated()), "compaction finished");
+
+        for (long id : ids) {
+            if (deleted.contains(id)) continue;
+            String cat = recategorized.get(id);
+            if (cat == null) cat = id > 12_000 ? "Late" : "Food";
+            expected.put(id, cat);
+        }
+        assertEquals(expected, categories(journal.readMonth(MARCH)));
+        journal.close();
+        assertEquals(expected, categories(open().readMonth(MARCH)));
+    }
+
+    private ExpenseJournal open() throws IOException {
+        ExpenseJournal journal = ExpenseJournal.inDirectory(dir, ExpenseJournal.SyncMode.NONE);
+        journal.recover(batch -> { }, summary -> { });
+        return journal;
+    }
+
+    private Path journal() { return dir.resolve(ExpenseJournal.JOURNAL_FILE); }
+
+    private Path rotated() { return dir.resolve(ExpenseJournal.JOURNAL_FILE + ".old"); }
+
+    // a March row whose amount is 100 x its id, so a row can be told from its neighbours
+    private static long insert(ExpenseJournal journal, String category, String description) throws IOException {
+        long id = journal.allocateId();
+        Expense e = new Expense(dayOf("2024-03-05"), category, 100 * id, description);
+        e.id = id;
+        journal.appendInsert(e);
+        return id;
+    }
+
+    private static Map<Long, String> rows(List<Expense> list) {
+        Map<Long, String> out = new TreeMap<>();
+        for (Expense e : list) out.put(e.id, e.day + "|" + e.category + "|" + e.amount + "|" + e.description);
+        return out;
+    }
+
+    private static Map<Long, String> categories(List<Expense> list) {
+        Map<Long, String> out = new TreeMap<>();
+        for (Expense e : list) assertNull(out.put(e.id, e.category), "row " + e.id + " twice");
+        return out;
+    }
+
+    private static int dayOf(String date) {
+        return (int) java.time.LocalDate.parse(date).toEpochDay();
+    }
+}
@@ -0,0 +1,139 @@
+package expensetracker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * ExpenseQuery against a sort-and-count over the same rows. The snapshot is big enough to
+ * be split into several scans whose group tables are merged, some groups only turn up on
+ * one side of a merge, and rows from disk bring a category the snapshot does not have.
+ * Groups are compared as label -> "count|sum|min|max|percentiles".
+ */
+class ExpenseQueryTest {
+    private static final String[] CATEGORIES = {"Food", "travel", "Bills", "Rent"};
+    private static final int FIRST_DAY = (int) LocalDate.of(2023, 1, 1).toEpochDay();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4); // splits the scan even on one core
+    private final ExpenseColumns columns = new ExpenseColumns();
+    private final List<Expense> inSnapshot = new ArrayList<>();
+    private final List<List<Expense>> onDisk = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        pool.shutdown();
+    }
+
+    @Test
+    void groupsMatchABruteForceCount() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200_000; i++) {
+            // the first rows are all of 2023, so later months and categories appear in later scans only
+            int span = i < 70_000 ? 365 : 730;
+            Expense e = new Expense(FIRST_DAY + random.nextInt(span), CATEGORIES[random.nextInt(i < 70_000 ? 2 : 4)],
+                    random.nextInt(100_000) - 5_000, random.nextInt(10) == 0 ? "Taxi to " + i : "note " + i);
+            e.id = i + 1;
+            columns.addLast(e);
+            inSnapshot.add(e);
+        }
+        for (int b = 0; b < 2; b++) {
+            List<Expense> batch = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                batch.add(new Expense(FIRST_DAY - 1 - random.nextInt(200), i % 3 == 0 ? "Old" : "Food", random.nextInt(5000), "TAXI " + i));
+            }
+            onDisk.add(batch);
+        }
+
+        for (ExpenseQuery.GroupBy by : ExpenseQuery.GroupBy.values()) {
+            ExpenseQuery q = new ExpenseQuery();
+            q.groupBy = by;
+            q.percentiles = true;
+            check(q, e -> true);
+        }
+
+        ExpenseQuery q = new ExpenseQuery();
+        q.fromDay = FIRST_DAY - 50;
+        q.toDay = FIRST_DAY + 400;
+        q.minAmount = 0;
+        q.maxAmount = 50_000;
+        q.categories = Set.of("Food", "Old", "Missing");
+        q.text = "taXi";
+        q.percentiles = true;
+        check(q, e -> e.day >= FIRST_DAY - 50 && e.day <= FIRST_DAY + 400 && e.amount >= 0 && e.amount <= 50_000
+                && (e.category.equals("Food") || e.category.equals("Old")) && e.description.toLowerCase().contains("taxi"));
+    }
+
+    @Test
+    void percentilesUseTheNearestRank() {
+        long[] amounts = {500, 100, 400, 300, 200, 100, 1000, 700, 900, 800};
+        for (int i = 0; i < amounts.length; i++) {
+            Expense e = new Expense(FIRST_DAY, "Food", amounts[i], "");
+            e.id = i + 1;
+            columns.addLast(e);
+        }
+        ExpenseQuery q = new ExpenseQuery();
+        q.percentiles = true;
+        ExpenseQuery.Row row = q.run(columns.snapshot(1), List.of(), pool).rows.get(0);
+        assertArrayEquals(new long[]{400, 900, 1000}, row.percentiles); // ranks 5, 9 and 10 of 10
+        assertEquals(500, row.average());
+    }
+
+    private void check(ExpenseQuery q, Predicate<Expense> matches) {
+        ExpenseQuery.Result result = q.run(columns.snapshot(1), onDisk, pool);
+        Map<String, List<Long>> groups = new TreeMap<>();
+        Function<Expense, String> label = label(q.groupBy);
+        long matched = 0;
+        for (List<Expense> rows : List.of(inSnapshot, onDisk.get(0), onDisk.get(1))) {
+            for (Expense e : rows) {
+                if (!matches.test(e)) continue;
+                groups.computeIfAbsent(label.apply(e), k -> new ArrayList<>()).add(e.amount);
+                matched++;
+            }
+        }
+        Map<String, String> expected = new TreeMap<>();
+        for (Map.Entry<String, List<Long>> g : groups.entrySet()) {
+            List<Long> v = g.getValue();
+            Collections.sort(v);
+            StringBuilder sb = new StringBuilder();
+            sb.append(v.size()).append('|').append(v.stream().mapToLong(Long::longValue).sum())
+              .append('|').append(v.get(0)).append('|').append(v.get(v.size() - 1)).append('|');
+            for (double p : ExpenseQuery.PERCENTILES) sb.append(v.get((int) Math.ceil(p * v.size()) - 1)).append(',');
+            expected.put(g.getKey(), sb.toString());
+        }
+
+        Map<String, String> actual = new TreeMap<>();
+        for (ExpenseQuery.Row r : result.rows) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(r.count).append('|').append(r.sum).append('|').append(r.min).append('|').append(r.max).append('|');
+            for (long p : r.percentiles) sb.append(p).append(',');
+            assertNull(actual.put(r.group, sb.toString()), r.group + " twice");
+        }
+        assertEquals(expected, actual, q.groupBy.toString());
+        assertEquals(matched, result.matched);
+        assertEquals(inSnapshot.size() + 2000, result.scanned);
+        if (q.groupBy == ExpenseQuery.GroupBy.CATEGORY) {
+            List<String> names = new ArrayList<>();
+            for (ExpenseQuery.Row r : result.rows) names.add(r.group);
+            List<String> sorted = new ArrayList<>(names);
+            sorted.sort(String.CASE_INSENSITIVE_ORDER);
+            assertEquals(sorted, names);
+        }
+    }
+
+    private static Function<Expense, String> label(ExpenseQuery.GroupBy by) {
+        switch (by) {
+            case CATEGORY: return e -> e.category;
+            case MONTH: return e -> LedgerFormat.formatDay(e.day).substring(0, 7);
+            case WEEKDAY: return e -> LocalDate.ofEpochDay(e.day).getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            default: return e -> "All";
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Writers racing on the same months: each thread adds, deletes and recategorizes its own
+ * rows, so what the store ends up holding is known. The feed of changes and the calls the
+ * journal saw must each replay to the same rows. Rows are compared as
+ * id -> "day|category|amount|description".
+ */
+class ExpenseStoreTest {
+    private static final int THREADS = 4, ROUNDS = 250;
+    private static final int FIRST_DAY = (int) java.time.LocalDate.of(2024, 1, 1).toEpochDay();
+
+    @Test
+    void concurrentWritersLoseNothing() throws Exception {
+        List<Object[]> journaled = Collections.synchronizedList(new ArrayList<>());
+        ExpenseTableModel.MutationListener journal = new ExpenseTableModel.MutationListener() {
+            @Override
+            public void inserted(List<Expense> batch) { journaled.add(new Object[]{'I', batch}); }
+            @Override
+            public void removed(long[] ids, int[] days) { journaled.add(new Object[]{'D', ids}); }
+            @Override
+            public void recategorized(long[] ids, int[] days, String category) { journaled.add(new Object[]{'C', ids, category}); }
+        };
+        AtomicLong ids = new AtomicLong();
+        ExpenseStore store = new ExpenseStore(List.of(), journal, ids::incrementAndGet);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<Future<Map<Long, String>>> expected = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            expected.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                Map<Long, String> mine = new HashMap<>();
+                start.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    List<Expense> batch = new ArrayList<>();
+                    for (int n = 1 + random.nextInt(3); n > 0; n--) {
+                        batch.add(new Expense(FIRST_DAY + random.nextInt(90), "T" + thread, round, "row " + round));
+                    }
+                    for (Expense e : store.add(batch, "t" + thread)) mine.put(e.id, row(e));
+                    List<Long> held = new ArrayList<>(mine.keySet());
+                    long victim = held.get(random.nextInt(held.size()));
+                    if (random.nextInt(3) == 0) {
+                        assertEquals(1, store.delete(new long[]{victim}, "t" + thread));
+                        mine.remove(victim);
+                    } else {
+                        String category = "T" + thread + " moved " + round;
+                        assertEquals(1, store.recategorize(new long[]{victim}, category, "t" + thread));
+                        mine.put(victim, mine.get(victim).replaceFirst("\\|[^|]*\\|", "|" + category + "|"));
+                    }
+                }
+                return mine;
+            }));
+        }
+        Map<Long, String> all = new TreeMap<>();
+        for (Future<Map<Long, String>> f : expected) {
+            for (Map.Entry<Long, String> e : f.get(60, TimeUnit.SECONDS).entrySet()) assertNull(all.put(e.getKey(), e.getValue()));
+        }
+        pool.shutdown();
+
+        ExpenseStore.Snapshot snapshot = store.snapshot();
+        assertEquals(all, rows(snapshot));
+        assertEquals(all.size(), snapshot.size);
+
+        // the feed, oldest first with no gaps, and the journal calls each rebuild the same rows
+        List<ExpenseStore.Change> feed = snapshot.changesSince(0);
+        assertNotNull(feed);
+        for (int i = 0; i < feed.size(); i++) assertEquals(i + 1, feed.get(i).version);
+        Map<Long, String> replayed = new TreeMap<>();
+        for (ExpenseStore.Change c : feed) apply(replayed, c.kind, c.inserted, c.ids, c.category);
+        assertEquals(all, replayed);
+        Map<Long, String> fromJournal = new TreeMap<>();
+        for (Object[] call : journaled) {
+            char kind = (Character) call[0];
+            @SuppressWarnings("unchecked")
+            List<Expense> inserted = kind == 'I' ? (List<Expense>) call[1] : null;
+            apply(fromJournal, kind, inserted, kind == 'I' ? null : (long[]) call[1], kind == 'C' ? (String) call[2] : null);
+        }
+        assertEquals(all, fromJournal);
+    }
+
+    private static void apply(Map<Long, String> rows, char kind, List<Expense> inserted, long[] ids, String category) {
+        switch (kind) {
+            case 'I':
+                for (Expense e : inserted) assertNull(rows.put(e.id, row(e)), "id " + e.id + " stored twice");
+                break;
+            case 'D':
+                for (long id : ids) assertNotNull(rows.remove(id));
+                break;
+            default:
+                for (long id : ids) rows.put(id, rows.get(id).replaceFirst("\\|[^|]*\\|", "|" + category + "|"));
+        }
+    }
+
+    private static Map<Long, String> rows(ExpenseStore.Snapshot snapshot) {
+        Map<Long, String> out = new TreeMap<>();
+        snapshot.forEachNewestFirst(Integer.MIN_VALUE, Integer.MAX_VALUE, e -> {
+            assertNull(out.put(e.id, row(e)), "id " + e.id + " held twice");
+            return true;
+        });
+        return out;
+    }
+
+    private static String row(Expense e) {
+        return e.day + "|" + e.category + "|" + e.amount + "|" + e.description;
+    }
+}
@@ -0,0 +1,46 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * The model's cell values after the rows under an id change: a reload from a ledger server
+ * brings the same ids back with other text, and renumbering gives provisional rows the ids
+ * the server stored them under.
+ */
+class ExpenseTableModelTest {
+    private static final int DAY = 19_800;
+
+    private final ExpenseTableModel model = new ExpenseTableModel();
+
+    @Test
+    void descriptionsFollowAReload() {
+        model.appendLoaded(List.of(expense(2, "second"), expense(1, "first")));
+        assertEquals("first", model.getValueAt(1, 3));
+
+        BitSet all = new BitSet();
+        all.set(0, model.getRowCount());
+        model.removeRows(all);
+        model.appendLoaded(List.of(expense(1, "edited elsewhere")));
+        assertEquals("edited elsewhere", model.getValueAt(0, 3));
+    }
+
+    @Test
+    void descriptionsFollowRenumbering() {
+        model.appendLoaded(List.of(expense(-1, "provisional"), expense(7, "stored")));
+        assertEquals("stored", model.getValueAt(1, 3));
+        assertEquals("provisional", model.getValueAt(0, 3));
+
+        model.renumber(Map.of(-1L, 7L)); // an id the cache already holds other text under
+        assertEquals("provisional", model.getValueAt(0, 3));
+    }
+
+    private static Expense expense(long id, String description) {
+        Expense e = new Expense(DAY, "Food", 100, description);
+        e.id = id;
+        return e;
+    }
+}
@@ -0,0 +1,171 @@
+package expensetracker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * A month edited, evicted and paged in again must come back with the edits, the totals
+ * must not move on the way, and undo must still reach it. Six months on disk: recovery
+ * streams the newest three, the rest start cold. The cache budget is one byte, so every
+ * page-in evicts whatever else was paged in. Model and cache calls run on the EDT, as in
+ * the app.
+ */
+class MonthCacheTest {
+    private static final int JAN = month("2024-01-01"), FEB = month("2024-02-01");
+    private static final int ROWS_PER_MONTH = 40;
+
+    @TempDir
+    Path dir;
+
+    private PersistenceWriter writer;
+    private ExpenseTableModel model;
+    private MonthCache cache;
+    private final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void open() throws Exception {
+        List<Expense> oldestFirst = new ArrayList<>();
+        for (int m = 0; m < 6; m++) {
+            for (int i = 0; i < ROWS_PER_MONTH; i++) {
+                Expense e = new Expense((int) LocalDate.of(2024, 1 + m, 1 + i % 28).toEpochDay(),
+                        "Cat " + i % 3, 100 + i, "row " + m + "-" + i);
+                e.id = oldestFirst.size() + 1;
+                oldestFirst.add(e);
+            }
+        }
+        BinarySnapshot.write(dir.resolve(ExpenseJournal.SNAPSHOT_FILE), oldestFirst);
+        writer = new PersistenceWriter(ExpenseJournal.inDirectory(dir, ExpenseJournal.SyncMode.NONE));
+        List<List<Expense>> batches = new ArrayList<>();
+        List<BinarySnapshot.Summary> cold = new ArrayList<>();
+        writer.recover(batches::add, cold::add).get();
+        onEdt(() -> {
+            model = new ExpenseTableModel();
+            model.setMutationListener(writer);
+            model.setIdSource(writer::allocateId);
+            model.setUndoHistory(new EditHistory());
+            cache = new MonthCache(model, writer, 1, errors::add);
+            for (List<Expense> b : batches) model.appendLoaded(b);
+            for (BinarySnapshot.Summary s : cold) cache.addCold(s);
+        });
+    }
+
+    @AfterEach
+    void close() {
+        writer.close();
+        assertEquals(List.of(), errors);
+    }
+
+    @Test
+    void evictedMonthPagesBackInWithItsEdits() throws Exception {
+        load(JAN);
+        assertEquals(ROWS_PER_MONTH, model.idsInMonth(JAN).size());
+        // the writer thread stalls after saving the first edit, so the next ones are still
+        // queued when January is evicted and read back
+        AtomicBoolean stall = new AtomicBoolean(true);
+        CountDownLatch stalled = new CountDownLatch(1);
+        writer.setStatusListener(s -> {
+            if (s != Ledger.Status.SAVED || !stall.getAndSet(false)) return;
+            stalled.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        onEdt(() -> model.removeIds(Set.of(40L)));
+        assertTrue(stalled.await(10, TimeUnit.SECONDS));
+
+        long[] janTotal = new long[1];
+        boolean[] evicted = new boolean[1];
+        long[] coldRows = new long[1];
+        Expense added = new Expense((int) LocalDate.of(2024, 1, 15).toEpochDay(), "New", 999, "added, then evicted");
+        CountDownLatch back = new CountDownLatch(1);
+        onEdt(() -> {
+            model.removeIds(Set.of(1L));
+            model.reassignCategory(model.rowsWithIds(Set.of(2L)), "Moved");
+            model.addExpense(added);
+            janTotal[0] = model.aggregates().month(JAN).total;
+            cache.load(List.of(FEB), () -> {
+                evicted[0] = model.idsInMonth(JAN).isEmpty() && model.aggregates().month(JAN).total == janTotal[0];
+                coldRows[0] = cache.coldRows();
+                cache.load(List.of(JAN), back::countDown);
+            });
+        });
+        assertTrue(back.await(10, TimeUnit.SECONDS), "month paged in");
+        assertTrue(evicted[0], "January evicted, its totals kept");
+        assertEquals(2 * ROWS_PER_MONTH - 1, coldRows[0], "January and March cold, January as edited");
+        onEdt(() -> {
+            Map<Long, Expense> jan = inMonth(JAN);
+            assertEquals(ROWS_PER_MONTH - 1, jan.size());
+            assertFalse(jan.containsKey(1L));
+            assertFalse(jan.containsKey(40L));
+            assertEquals("Moved", jan.get(2L).category);
+            assertEquals("added, then evicted", jan.get(added.id).description);
+            assertEquals(janTotal[0], jan.values().stream().mapToLong(e -> e.amount).sum());
+            assertTrue(model.idsInMonth(FEB).isEmpty());
+        });
+    }
+
+    @Test
+    void undoPagesInTheMonthItNeeds() throws Exception {
+        load(JAN);
+        onEdt(() -> model.reassignCategory(model.rowsWithIds(Set.of(3L, 4L)), "Moved"));
+        load(FEB);
+        onEdt(() -> assertArrayEquals(new int[]{JAN}, model.undoMonths()));
+
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] undone = new boolean[1];
+        onEdt(() -> cache.load(box(model.undoMonths()), () -> {
+            undone[0] = model.undo();
+            done.countDown();
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(undone[0]);
+        onEdt(() -> {
+            Map<Long, Expense> jan = inMonth(JAN);
+            assertEquals("Cat 2", jan.get(3L).category);
+            assertEquals("Cat 0", jan.get(4L).category);
+        });
+    }
+
+    private void load(int month) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        onEdt(() -> cache.load(List.of(month), done::countDown));
+        assertTrue(done.await(10, TimeUnit.SECONDS), "month paged in");
+    }
+
+    private Map<Long, Expense> inMonth(int month) {
+        Map<Long, Expense> out = new HashMap<>();
+        for (int r = 0; r < model.getRowCount(); r++) {
+            Expense e = model.expenseAt(r);
+            if (LedgerFormat.monthKey(e.day) == month) out.put(e.id, e);
+        }
+        return out;
+    }
+
+    private static List<Integer> box(int[] months) {
+        List<Integer> out = new ArrayList<>();
+        for (int m : months) out.add(m);
+        return out;
+    }
+
+    private static void onEdt(Runnable r) throws Exception {
+        SwingUtilities.invokeAndWait(r);
+    }
+
+    private static int month(String date) {
+        return LedgerFormat.monthKey((int) LocalDate.parse(date).toEpochDay());
+    }
+}
@@ -0,0 +1,52 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Schema mistakes are reported up front rather than failing on every row. */
+class StatementImporterTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void columnPositionsCountFromOne() throws IOException {
+        Path statement = dir.resolve("statement.csv");
+        Files.writeString(statement, "2024-03-05,12.50,Lunch\n");
+        assertEquals(1, importWith("header=false\ndate=1\namount=2\ndescription=3\n", statement).imported);
+        for (String position : new String[]{"0", "00", "12345678901"}) {
+            StatementImporter.FileReport report = importWith("header=false\ndate=" + position + "\namount=2\n", statement);
+            assertEquals(0, report.imported);
+            assertNotNull(report.failure, position);
+            assertTrue(report.failure.contains("count from 1"), report.failure);
+        }
+    }
+
+    @Test
+    void emptyDelimiterIsRejected() throws IOException {
+        Path schema = dir.resolve("bank.properties");
+        Files.writeString(schema, "delimiter=\n");
+        IOException e = assertThrows(IOException.class, () -> StatementImporter.Schema.load(schema));
+        assertTrue(e.getMessage().contains("delimiter is empty"), e.getMessage());
+    }
+
+    private StatementImporter.FileReport importWith(String properties, Path statement) throws IOException {
+        Path schema = dir.resolve("bank.properties");
+        Files.writeString(schema, properties);
+        StatementImporter importer = new StatementImporter(StatementImporter.Schema.load(schema), 100,
+                new PrintStream(new ByteArrayOutputStream()), 10);
+        List<Expense> rows = new ArrayList<>();
+        StatementImporter.FileReport report = importer.importFile(statement, rows::addAll);
+        assertEquals(report.imported, rows.size());
+        return report;
+    }
+}
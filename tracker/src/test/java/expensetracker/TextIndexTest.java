@@ -0,0 +1,77 @@
+package expensetracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * Description search through the model, checked against a scan of every row after
+ * prepends, appends, removals (enough of them to compact the postings) and month eviction,
+ * which all move the ordinals TextIndex maps to rows.
+ */
+class TextIndexTest {
+    private static final String[] WORDS = {"coffee", "cab", "cabbage", "rent", "Rental", "café", "groceries", "gas", "gym"};
+    private static final String[] QUERIES = {"ca", "cab", "REN", "caf", "gro gas", "12", "123456", "9", "gym coffee", "zzz"};
+
+    private final Random random = new Random(17);
+    private long nextId = 1;
+
+    @Test
+    void searchMatchesScanAsOrdinalsShift() {
+        ExpenseTableModel model = new ExpenseTableModel();
+        model.appendLoaded(batch(3000));
+        check(model); // builds the index
+
+        for (int op = 0; op < 120; op++) {
+            switch (random.nextInt(4)) {
+                case 0: model.addExpenses(batch(1 + random.nextInt(300))); break;
+                case 1: model.appendLoaded(batch(1 + random.nextInt(300))); break;
+                case 2: {
+                    BitSet doomed = new BitSet();
+                    // now and then a large removal, past the compaction threshold
+                    double share = random.nextInt(10) == 0 ? 0.6 : 0.05;
+                    for (int r = 0; r < model.getRowCount(); r++) if (random.nextDouble() < share) doomed.set(r);
+                    model.removeRows(doomed);
+                    break;
+                }
+                default:
+                    model.evictMonth(LedgerFormat.monthKey(19_000 + random.nextInt(120)));
+            }
+            check(model);
+        }
+    }
+
+    private void check(ExpenseTableModel model) {
+        for (String q : QUERIES) assertEquals(scan(model, q), model.searchRows(q), q);
+        assertNull(model.searchRows("  ,. "));
+    }
+
+    // rows whose description has, for every query word, a word starting with it
+    private static BitSet scan(ExpenseTableModel model, String query) {
+        List<String> terms = TextIndex.tokenize(query, new ArrayList<>());
+        List<String> words = new ArrayList<>();
+        BitSet out = new BitSet();
+        for (int r = 0; r < model.getRowCount(); r++) {
+            TextIndex.tokenize(model.expenseAt(r).description, words);
+            boolean all = true;
+            for (String t : terms) all &= words.stream().anyMatch(w -> w.startsWith(t));
+            if (all) out.set(r);
+        }
+        return out;
+    }
+
+    private List<Expense> batch(int n) {
+        List<Expense> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = random.nextInt(4); w >= 0; w--) text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            if (random.nextInt(3) == 0) text.append("ref ").append(random.nextInt(2_000_000));
+            Expense e = new Expense(19_000 + random.nextInt(120), "Food", 100, text.toString());
+            e.id = nextId++;
+            out.add(e);
+        }
+        return out;
+    }
+}